@@ -22,7 +22,9 @@ UBER_JAR=`echo ${CONNECTOR_SAMPLES_DIR}/target/edgent-samples-apps-*-uber.jar`
 
 # Runs the DeviceComms client
 #
-# ./runDeviceComms.sh watch | send <commandLabel> <commandArg>
+# ./runDeviceComms.sh watch [summary] | send <commandLabel> <commandArg>
+#
+# watch summary reports per topic message rates instead of the events
 #
 # no checking is done for the validity of commandLabel or commandArg
 
@@ -21,6 +21,7 @@ package org.apache.edgent.samples.apps;
 import java.io.File;
 import java.io.FileReader;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.edgent.console.server.HttpServer;
 import org.apache.edgent.providers.direct.DirectProvider;
@@ -29,6 +30,8 @@ import org.apache.edgent.topology.Topology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * An Application base class.
  * <p>
@@ -43,6 +46,7 @@ import org.slf4j.LoggerFactory;
  * <li>Support for an external configuration file</li>
  * <li>Provides a {@link TopologyProviderFactory}</li>
  * <li>Provides a {@link ApplicationUtilities}</li>
+ * <li>Warm restart of checkpointed state, see {@link StateCheckpoint}</li>
  * </ul>
  * @see AbstractMqttApplication
  */
@@ -50,16 +54,25 @@ public abstract class AbstractApplication {
     
     protected final String propsPath;
     protected final Properties props;
+    private final ConfigRegistry configRegistry;
+    private final ExecutionProfile executionProfile;
+    private final StartupTimeline startupTimeline;
+    private final StateCheckpoint stateCheckpoint;
     private final ApplicationUtilities applicationUtilities;
     private static final Logger logger = LoggerFactory.getLogger(AbstractApplication.class);
 
     protected Topology t;
     
     public AbstractApplication(String propsPath) throws Exception {
+        startupTimeline = new StartupTimeline();
         this.propsPath = propsPath;
         props = new Properties();
         props.load(new FileReader(new File(propsPath)));
-        applicationUtilities = new ApplicationUtilities(props);
+        configRegistry = new ConfigRegistry(props);
+        executionProfile = ExecutionProfile.fromConfig(props);
+        stateCheckpoint = new StateCheckpoint(props);
+        applicationUtilities = new ApplicationUtilities(props, configRegistry);
+        startupTimeline.phase("config");
     }
     
     /**
@@ -73,6 +86,7 @@ public abstract class AbstractApplication {
         TopologyProviderFactory tpFactory = new TopologyProviderFactory(props);
         
         DirectProvider tp = tpFactory.newProvider();
+        startupTimeline.phase("provider");
         
         // Create a topology for the application
         t = tp.newTopology(config().getProperty("application.name"));
@@ -81,13 +95,72 @@ public abstract class AbstractApplication {
         
         buildTopology(t);
         
+        // Optionally hot reload the registry's values when the config file changes
+        String reloadSec = props.getProperty("application.config.reload.sec");
+        if (reloadSec != null) {
+            configRegistry.watchFile(t, propsPath, Long.valueOf(reloadSec), TimeUnit.SECONDS);
+        }
+        startupTimeline.phase("build");
+        
+        // Warm restart: restore the checkpointed state before the
+        // topology starts and then keep checkpointing it
+        stateCheckpoint.restore();
+        stateCheckpoint.schedule(t);
+        startupTimeline.phase("restore");
+        
+        // Optionally report the startup timeline when the first tuple arrives
+        if (Boolean.valueOf(props.getProperty("application.startup.timing", "false"))) {
+            startupTimeline.completeOnFirstTuple(t,
+                    tp.getServices().getService(MetricRegistry.class));
+        }
+        
         // Run the topology
-        HttpServer httpServer = tp.getServices().getService(HttpServer.class);
-        if (httpServer != null) {
+        if (tp instanceof ProfiledProvider) {
+            // the provider logs a failure to start the console
+            ((ProfiledProvider) tp).console().thenAccept(httpServer -> {
+                if (httpServer != null)
+                    printConsoleUrl(httpServer);
+            });
+        }
+        else {
+            HttpServer httpServer = tp.getServices().getService(HttpServer.class);
+            if (httpServer != null)
+                printConsoleUrl(httpServer);
+        }
+        tp.submit(t);
+        startupTimeline.phase("submit");
+    }
+    
+    private static void printConsoleUrl(HttpServer httpServer) {
+        try {
             System.out.println("Edgent Console URL for the job: "
                                 + httpServer.getConsoleUrl());
         }
-        tp.submit(t);
+        catch (Exception e) {
+            logger.error("Unable to get the console URL", e);
+        }
+    }
+    
+    /**
+     * Get the application's state checkpoint.
+     * <p>
+     * State registered with the checkpoint while building the topology
+     * is restored before the topology is submitted.
+     * @return the checkpoint
+     */
+    public StateCheckpoint checkpoint() {
+        return stateCheckpoint;
+    }
+    
+    /**
+     * Get the application's startup timeline.
+     * <p>
+     * The timeline is only printed, and its metrics registered, when
+     * the {@code application.startup.timing} property is {@code true}.
+     * @return the timeline
+     */
+    public StartupTimeline startupTimeline() {
+        return startupTimeline;
     }
     
     /**
@@ -98,6 +171,22 @@ public abstract class AbstractApplication {
         return props;
     }
     
+    /**
+     * Get the application's typed configuration values.
+     * @return the registry
+     */
+    public ConfigRegistry configRegistry() {
+        return configRegistry;
+    }
+    
+    /**
+     * Get the application's topology execution profile.
+     * @return the profile
+     */
+    public ExecutionProfile executionProfile() {
+        return executionProfile;
+    }
+    
     /**
      * Get the application's 
      * @return the helper
@@ -52,10 +52,24 @@ public abstract class AbstractIotpApplication extends AbstractApplication {
 
     @Override
     protected void preBuildTopology(Topology topology) {
+        device = BatchingIotDevice.fromConfig(newIotDevice(topology), props);
+    }
+
+    /**
+     * Create the application's IotDevice.
+     * <p>
+     * The default implementation connects to the IoTF Quickstart service.
+     * A subclass can override this, e.g., to use a {@link LocalIotDevice}
+     * stand-in for benchmarking.
+     * 
+     * @param topology the application's topology
+     * @return the IotDevice
+     */
+    protected IotDevice newIotDevice(Topology topology) {
         // Add an Iotp device communication manager to the topology
         // Declare a connection to IoTF Quickstart service
         String deviceId = "qs" + Long.toHexString(new Random().nextLong());
-        device = IotpDevice.quickstart(topology, deviceId);
+        IotDevice qsDevice = IotpDevice.quickstart(topology, deviceId);
 
         // TODO replace quickstart
         // iotfDevice = new IotpDevice(topology, new File("device.cfg"));
@@ -74,10 +88,14 @@ public abstract class AbstractIotpApplication extends AbstractApplication {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return qsDevice;
     }
 
     /**
      * Get the application's IotDevice
+     * <p>
+     * Events are published in batches when configured.
+     * See {@link BatchingIotDevice}.
      * 
      * @return the IotDevice
      */
@@ -0,0 +1,289 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.edgent.function.Function;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Pipe;
+import org.apache.edgent.topology.TStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A pressure reliever whose queue is sized from the observed downstream
+ * latency and that accounts for the tuples it drops.
+ * <p>
+ * Tuples are queued and submitted downstream by a separate thread so
+ * that a slow downstream, e.g., a publish to an unreachable broker,
+ * doesn't block the upstream processing.  The time to submit each tuple
+ * is measured and the queue capacity is set so that a queued tuple
+ * is submitted within {@code maxDelay}:
+ * {@code capacity = maxDelay / latency}, bounded by
+ * {@code [1, maxCapacity]}.  When the queue is full, or the capacity
+ * shrinks below the queue size, the oldest tuples are dropped.
+ * <p>
+ * When coalescing, the queue holds only the newest tuple for each key.
+ * A tuple replaces a queued tuple with the same key, keeping the
+ * replaced tuple's position in the queue.
+ * <p>
+ * If the job has a {@code MetricRegistry} the following metrics
+ * are registered with the name {@code pressureRelief.<name>.<metric>}:
+ * <ul>
+ * <li>{@code dropped} - counter of tuples dropped because the queue was full</li>
+ * <li>{@code coalesced} - counter of tuples replaced by a newer tuple</li>
+ * <li>{@code queueHighWater} - gauge of the largest queue size</li>
+ * <li>{@code queueCapacity} - gauge of the current queue capacity</li>
+ * <li>{@code latencyMsec} - gauge of the smoothed downstream latency</li>
+ * </ul>
+ *
+ * @param <T> Tuple type
+ * @param <K> Key type
+ */
+public class AdaptivePressureReliever<T,K> extends Pipe<T,T> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePressureReliever.class);
+    private static final double LATENCY_WEIGHT = 0.2;
+    
+    private final String name;
+    private final Function<T,K> keyFn;
+    private final int maxCapacity;
+    private final long maxDelayNanos;
+    
+    // guarded by this
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private final LinkedHashMap<K,T> coalescing = new LinkedHashMap<>();
+    private boolean draining;
+    private int capacity;
+    private int highWater;
+    private double latencyNanos;
+    
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private transient ScheduledExecutorService executor;
+    private transient MetricRegistry registry;
+    private transient Counter droppedCounter;
+    private transient Counter coalescedCounter;
+    
+    /**
+     * Relieve pressure on a stream.
+     * 
+     * @param <T> Tuple type
+     * @param <K> Key type
+     * @param stream the stream
+     * @param name the name of the reliever's metrics
+     * @param keyFn the tuple's key for coalescing, null to not coalesce
+     * @param maxCapacity the maximum queue capacity
+     * @param maxDelay the target maximum time a tuple is queued
+     * @param unit the unit of {@code maxDelay}
+     * @return the relieved stream
+     */
+    public static <T,K> TStream<T> relieve(TStream<T> stream, String name,
+            Function<T,K> keyFn, int maxCapacity, long maxDelay, TimeUnit unit) {
+        return stream.pipe(new AdaptivePressureReliever<>(name, keyFn, maxCapacity, maxDelay, unit))
+                .tag(name + ".pressureRelieved");
+    }
+    
+    /**
+     * Create a pressure reliever.
+     * @param name the name of the reliever's metrics
+     * @param keyFn the tuple's key for coalescing, null to not coalesce
+     * @param maxCapacity the maximum queue capacity
+     * @param maxDelay the target maximum time a tuple is queued
+     * @param unit the unit of {@code maxDelay}
+     */
+    public AdaptivePressureReliever(String name, Function<T,K> keyFn,
+            int maxCapacity, long maxDelay, TimeUnit unit) {
+        if (maxCapacity < 1)
+            throw new IllegalArgumentException("maxCapacity");
+        this.name = name;
+        this.keyFn = keyFn;
+        this.maxCapacity = maxCapacity;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.capacity = maxCapacity;
+    }
+    
+    @Override
+    public void initialize(OpletContext<T, T> context) {
+        super.initialize(context);
+        executor = context.getService(ScheduledExecutorService.class);
+        registry = context.getService(MetricRegistry.class);
+        if (registry != null) {
+            droppedCounter = registry.counter(metricName("dropped"));
+            coalescedCounter = registry.counter(metricName("coalesced"));
+            register("queueHighWater", () -> getHighWaterMark());
+            register("queueCapacity", () -> getCapacity());
+            register("latencyMsec", () -> getLatencyMsec());
+        }
+    }
+    
+    private String metricName(String metric) {
+        return MetricRegistry.name("pressureRelief", name, metric);
+    }
+    
+    private <V> void register(String metric, Gauge<V> gauge) {
+        registry.remove(metricName(metric));
+        registry.register(metricName(metric), gauge);
+    }
+
+    @Override
+    public void accept(T tuple) {
+        boolean drain;
+        synchronized (this) {
+            if (keyFn == null) {
+                queue.add(tuple);
+                if (queue.size() > capacity) {
+                    queue.poll();
+                    drop();
+                }
+            }
+            else {
+                if (coalescing.put(keyFn.apply(tuple), tuple) != null) {
+                    coalesced.incrementAndGet();
+                    if (coalescedCounter != null)
+                        coalescedCounter.inc();
+                }
+                if (coalescing.size() > capacity) {
+                    Iterator<T> it = coalescing.values().iterator();
+                    it.next();
+                    it.remove();
+                    drop();
+                }
+            }
+            highWater = Math.max(highWater, size());
+            drain = !draining;
+            draining = true;
+        }
+        if (drain)
+            executor.submit(this::drain);
+    }
+    
+    private void drop() {
+        if (dropped.getAndIncrement() == 0)
+            logger.warn("Pressure relief {}: dropping tuples, queue capacity {}", name, capacity);
+        if (droppedCounter != null)
+            droppedCounter.inc();
+    }
+    
+    private int size() {
+        return keyFn == null ? queue.size() : coalescing.size();
+    }
+    
+    private T next() {
+        if (keyFn == null)
+            return queue.poll();
+        Iterator<T> it = coalescing.values().iterator();
+        if (!it.hasNext())
+            return null;
+        T tuple = it.next();
+        it.remove();
+        return tuple;
+    }
+    
+    private void drain() {
+        for (;;) {
+            T tuple;
+            synchronized (this) {
+                tuple = next();
+                if (tuple == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            // a failing downstream mustn't stop the draining
+            try {
+                long start = System.nanoTime();
+                submit(tuple);
+                adapt(System.nanoTime() - start);
+            }
+            catch (RuntimeException e) {
+                logger.error("Pressure relief {}: submit failed", name, e);
+            }
+        }
+    }
+    
+    private synchronized void adapt(long nanos) {
+        latencyNanos = latencyNanos == 0 ? nanos
+                : LATENCY_WEIGHT * nanos + (1 - LATENCY_WEIGHT) * latencyNanos;
+        long fits = (long) (maxDelayNanos / Math.max(1, latencyNanos));
+        capacity = (int) Math.max(1, Math.min(maxCapacity, fits));
+        // drop the oldest tuples that no longer fit
+        while (size() > capacity) {
+            next();
+            drop();
+        }
+    }
+    
+    /**
+     * Get the number of tuples dropped because the queue was full.
+     * @return the count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    /**
+     * Get the number of tuples replaced by a newer tuple with the same key.
+     * @return the count
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+    
+    /**
+     * Get the largest queue size.
+     * @return the high water mark
+     */
+    public synchronized int getHighWaterMark() {
+        return highWater;
+    }
+    
+    /**
+     * Get the current queue capacity.
+     * @return the capacity
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Get the smoothed downstream latency.
+     * @return the latency in milliseconds
+     */
+    public synchronized double getLatencyMsec() {
+        return latencyNanos / 1e6;
+    }
+
+    @Override
+    public void close() {
+        if (registry != null)
+            registry.removeMatching((metricName, metric) ->
+                    metricName.startsWith(MetricRegistry.name("pressureRelief", name) + "."));
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.edgent.connectors.file.FileWriterCycleConfig;
 import org.apache.edgent.connectors.file.FileWriterFlushConfig;
 import org.apache.edgent.connectors.file.FileWriterPolicy;
 import org.apache.edgent.connectors.file.FileWriterRetentionConfig;
+import org.apache.edgent.function.Function;
 import org.apache.edgent.function.Predicate;
 import org.apache.edgent.function.Supplier;
 import org.apache.edgent.topology.TStream;
@@ -48,10 +49,21 @@ import org.apache.edgent.topology.TStream;
  */
 public class ApplicationUtilities {
     
+    // shared so that repeated requests find the same value
+    private static final Function<String,Range<Byte>> RANGE_BYTE = Ranges::valueOfByte;
+    private static final Function<String,Range<Short>> RANGE_SHORT = Ranges::valueOfShort;
+    private static final Function<String,Range<Float>> RANGE_FLOAT = Ranges::valueOfFloat;
+    
     private final Properties props;
+    private final ConfigRegistry configRegistry;
     
     public ApplicationUtilities(Properties props) {
+        this(props, new ConfigRegistry(props));
+    }
+    
+    public ApplicationUtilities(Properties props, ConfigRegistry configRegistry) {
         this.props = props;
+        this.configRegistry = configRegistry;
     }
 
     private Properties config() {
@@ -136,12 +148,10 @@ public class ApplicationUtilities {
         return name;
     }
 
-    private String getSensorConfigValue(String sensorId, String label, String kind) {
+    private <T> T getSensorConfigValue(String sensorId, String label, String kind,
+            Function<String,T> parser) {
         String name = getSensorPropertyName(sensorId, label, kind);
-        String val = config().getProperty(name);
-        if (val==null)
-            throw new IllegalArgumentException("Missing configuration property "+name);
-        return val;
+        return configRegistry.value(name, parser).get();
     }
     
     /**
@@ -151,8 +161,7 @@ public class ApplicationUtilities {
      * @return the Range
      */
     public Range<Integer> getRangeInteger(String sensorId, String label) {
-        String val = getSensorConfigValue(sensorId, label, "range");
-        return Ranges.valueOfInteger(val);
+        return getRangeIntegerValue(sensorId, label).get();
     }
     
     /**
@@ -162,8 +171,7 @@ public class ApplicationUtilities {
      * @return the Range
      */
     public Range<Byte> getRangeByte(String sensorId, String label) {
-        String val = getSensorConfigValue(sensorId, label, "range");
-        return Ranges.valueOfByte(val);
+        return getSensorConfigValue(sensorId, label, "range", RANGE_BYTE);
     }
     
     /**
@@ -173,8 +181,7 @@ public class ApplicationUtilities {
      * @return the Range
      */
     public Range<Short> getRangeShort(String sensorId, String label) {
-        String val = getSensorConfigValue(sensorId, label, "range");
-        return Ranges.valueOfShort(val);
+        return getSensorConfigValue(sensorId, label, "range", RANGE_SHORT);
     }
     
     /**
@@ -184,8 +191,7 @@ public class ApplicationUtilities {
      * @return the Range
      */
     public Range<Float> getRangeFloat(String sensorId, String label) {
-        String val = getSensorConfigValue(sensorId, label, "range");
-        return Ranges.valueOfFloat(val);
+        return getSensorConfigValue(sensorId, label, "range", RANGE_FLOAT);
     }
     
     /**
@@ -195,8 +201,19 @@ public class ApplicationUtilities {
      * @return the Range
      */
     public Range<Double> getRangeDouble(String sensorId, String label) {
-        String val = getSensorConfigValue(sensorId, label, "range");
-        return Ranges.valueOfDouble(val);
+        return configRegistry.rangeDouble(getSensorPropertyName(sensorId, label, "range")).get();
+    }
+
+    /**
+     * Get the dynamically updatable Range for a sensor range configuration item.
+     * <p>
+     * See {@link ConfigRegistry}.
+     * @param sensorId the sensor's id
+     * @param label the range's label
+     * @return the Range value
+     */
+    public ConfigValue<Range<Integer>> getRangeIntegerValue(String sensorId, String label) {
+        return configRegistry.rangeInteger(getSensorPropertyName(sensorId, label, "range"));
     }
 
     /**
@@ -0,0 +1,186 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import static org.apache.edgent.connectors.iot.IotDevice.CMD_FORMAT;
+import static org.apache.edgent.connectors.iot.IotDevice.CMD_ID;
+import static org.apache.edgent.connectors.iot.IotDevice.CMD_PAYLOAD;
+import static org.apache.edgent.connectors.iot.IotDevice.CMD_TS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.connectors.iot.IotDevice;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.function.UnaryOperator;
+import org.apache.edgent.samples.apps.EventBatcher.Compression;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * An {@link IotDevice} that publishes events in batches.
+ * <p>
+ * Events published to the device are packed into batch envelopes by
+ * an {@link EventBatcher} and each envelope is published to the
+ * wrapped device as a single {@link #BATCH_EVENT_ID} event.
+ * <p>
+ * On the command side, a {@link #BATCH_COMMAND_ID} command whose payload
+ * is a batch envelope is unpacked into its individual commands, so
+ * applications see the same command tuples whether or not the
+ * commands were batched by the sender.
+ * <p>
+ * Configured by the application properties:
+ * <ul>
+ * <li>{@code events.batch.size} - maximum events per batch.
+ *     Batching is disabled unless greater than 1.</li>
+ * <li>{@code events.batch.msec} - maximum time an event waits for its batch
+ *     to fill. Default 1000.</li>
+ * <li>{@code events.batch.compression} - {@code none}, {@code gzip}
+ *     or {@code deflate}. Default none.</li>
+ * </ul>
+ */
+public class BatchingIotDevice implements IotDevice {
+    
+    /** The device eventId of published batch envelopes. */
+    public static final String BATCH_EVENT_ID = "batch";
+    /** The device commandId of received batch envelopes. */
+    public static final String BATCH_COMMAND_ID = "batch";
+    
+    private final IotDevice device;
+    private final int maxEvents;
+    private final long maxDelayMsec;
+    private final Compression compression;
+    
+    /**
+     * Get the application's device.
+     * @param device the device
+     * @param props application configuration properties
+     * @return {@code device} wrapped in a {@code BatchingIotDevice}
+     *         if batching is configured, otherwise {@code device}.
+     */
+    public static IotDevice fromConfig(IotDevice device, Properties props) {
+        int maxEvents = Integer.valueOf(props.getProperty("events.batch.size", "1"));
+        if (maxEvents <= 1)
+            return device;
+        long maxDelayMsec = Long.valueOf(props.getProperty("events.batch.msec", "1000"));
+        Compression compression = Compression.fromString(
+                props.getProperty("events.batch.compression"));
+        System.out.println("Batching events: size " + maxEvents + " msec " + maxDelayMsec
+                + " compression " + compression);
+        return new BatchingIotDevice(device, maxEvents, maxDelayMsec, compression);
+    }
+    
+    /**
+     * Create a batching device.
+     * @param device the device that publishes the batch envelopes
+     * @param maxEvents maximum events per batch
+     * @param maxDelayMsec maximum time an event waits for its batch to fill
+     * @param compression the envelope compression
+     */
+    public BatchingIotDevice(IotDevice device, int maxEvents, long maxDelayMsec, Compression compression) {
+        this.device = device;
+        this.maxEvents = maxEvents;
+        this.maxDelayMsec = maxDelayMsec;
+        this.compression = compression;
+    }
+    
+    @Override
+    public Topology topology() {
+        return device.topology();
+    }
+
+    @Override
+    public String getDeviceType() {
+        return device.getDeviceType();
+    }
+
+    @Override
+    public String getDeviceId() {
+        return device.getDeviceId();
+    }
+
+    @Override
+    public TSink<JsonObject> events(TStream<JsonObject> stream, Function<JsonObject, String> eventId,
+            UnaryOperator<JsonObject> payload, Function<JsonObject, Integer> qos) {
+        EventBatcher batcher = new EventBatcher(maxEvents, maxDelayMsec,
+                TimeUnit.MILLISECONDS, compression);
+        return device.events(batcher.batch(stream, eventId, payload, qos),
+                envelope -> BATCH_EVENT_ID,
+                envelope -> envelope,
+                envelope -> envelope.get(EventBatcher.KEY_QOS).getAsInt());
+    }
+
+    @Override
+    public TSink<JsonObject> events(TStream<JsonObject> stream, String eventId, int qos) {
+        return events(stream, jo -> eventId, jo -> jo, jo -> qos);
+    }
+
+    @Override
+    public TStream<JsonObject> commands(String... commands) {
+        if (commands.length == 0)
+            return unbatch(device.commands(), Collections.emptySet());
+        
+        Set<String> ids = new HashSet<>(Arrays.asList(commands));
+        List<String> withBatch = new ArrayList<>(ids);
+        withBatch.add(BATCH_COMMAND_ID);
+        return unbatch(device.commands(withBatch.toArray(new String[withBatch.size()])), ids);
+    }
+    
+    /**
+     * Unpack batched commands.
+     * @param commands the device's command tuples
+     * @param ids the requested command ids, all commands if empty
+     * @return stream of individual command tuples
+     */
+    private static TStream<JsonObject> unbatch(TStream<JsonObject> commands, Set<String> ids) {
+        return commands.flatMap(cmd -> {
+            JsonElement payload = cmd.get(CMD_PAYLOAD);
+            if (!BATCH_COMMAND_ID.equals(cmd.get(CMD_ID).getAsString())
+                    || payload == null || !payload.isJsonObject()
+                    || !EventBatcher.isEnvelope(payload.getAsJsonObject())) {
+                return ids.isEmpty() || ids.contains(cmd.get(CMD_ID).getAsString())
+                        ? Collections.singletonList(cmd) : Collections.emptyList();
+            }
+            
+            List<JsonObject> unbatched = new ArrayList<>();
+            for (JsonObject event : EventBatcher.unbatch(payload.getAsJsonObject())) {
+                String id = event.get(EventBatcher.KEY_EVENT_ID).getAsString();
+                if (!ids.isEmpty() && !ids.contains(id))
+                    continue;
+                JsonObject jo = new JsonObject();
+                jo.addProperty(CMD_ID, id);
+                jo.add(CMD_TS, cmd.get(CMD_TS));
+                jo.add(CMD_FORMAT, cmd.get(CMD_FORMAT));
+                jo.add(CMD_PAYLOAD, event.get(EventBatcher.KEY_PAYLOAD));
+                unbatched.add(jo);
+            }
+            return unbatched;
+        });
+    }
+}
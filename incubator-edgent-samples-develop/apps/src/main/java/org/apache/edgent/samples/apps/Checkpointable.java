@@ -0,0 +1,50 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Application state that is saved by a {@link StateCheckpoint}
+ * and restored when the application restarts.
+ */
+public interface Checkpointable {
+    
+    /**
+     * Write the state.
+     * <p>
+     * Called periodically while the topology is running so
+     * implementations must be thread-safe with respect to the
+     * tuple processing that updates the state.
+     * @param out the checkpoint
+     * @throws IOException on failure
+     */
+    void checkpoint(DataOutput out) throws IOException;
+    
+    /**
+     * Read the state written by {@link #checkpoint(DataOutput)}.
+     * <p>
+     * Called before the topology is submitted.
+     * @param in the checkpoint
+     * @throws IOException on failure
+     */
+    void restore(DataInput in) throws IOException;
+}
@@ -0,0 +1,103 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import static org.apache.edgent.connectors.iot.IotDevice.CMD_ID;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.edgent.connectors.iot.IotDevice;
+import org.apache.edgent.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Dispatch a device's commands to their handlers.
+ * <p>
+ * The device's commands are subscribed to once, by a single stream,
+ * and each received command is dispatched by a hash lookup of its
+ * command id.  The cost per command is independent of the number
+ * of handlers, unlike a separate {@link IotDevice#commands(String...)}
+ * stream for each command id, each filtering all of the commands.
+ * <p>
+ * Sample use:
+ * <pre>{@code
+ * CommandDispatcher dispatcher = new CommandDispatcher(device);
+ * dispatcher.handle("sensor1.setThreshold", cmd -> ...);
+ * }</pre>
+ */
+public class CommandDispatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CommandDispatcher.class);
+    
+    private final IotDevice device;
+    private final Map<String,List<Consumer<JsonObject>>> handlers = new ConcurrentHashMap<>();
+    private boolean subscribed;
+    
+    /**
+     * Create a dispatcher.
+     * @param device the device whose commands are dispatched
+     */
+    public CommandDispatcher(IotDevice device) {
+        this.device = device;
+    }
+    
+    /**
+     * Register a command handler.
+     * <p>
+     * The handler is called with the {@link IotDevice#commands(String...)}
+     * tuple of each received command with the id.  A command may have
+     * multiple handlers.
+     * 
+     * @param commandId the command id
+     * @param handler the handler
+     */
+    public void handle(String commandId, Consumer<JsonObject> handler) {
+        handlers.computeIfAbsent(commandId, k -> new CopyOnWriteArrayList<>()).add(handler);
+        subscribe();
+    }
+    
+    private synchronized void subscribe() {
+        if (subscribed)
+            return;
+        subscribed = true;
+        device.commands().tag("commandDispatcher")
+            .sink(cmd -> dispatch(cmd));
+    }
+    
+    private void dispatch(JsonObject cmd) {
+        String commandId = cmd.get(CMD_ID).getAsString();
+        List<Consumer<JsonObject>> list = handlers.get(commandId);
+        if (list == null)
+            return;
+        for (Consumer<JsonObject> handler : list) {
+            try {
+                handler.accept(cmd);
+            }
+            catch (RuntimeException e) {
+                logger.error("Command " + commandId + " handler failed", e);
+            }
+        }
+    }
+}
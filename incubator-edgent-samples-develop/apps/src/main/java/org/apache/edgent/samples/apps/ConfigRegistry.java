@@ -0,0 +1,289 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.analytics.sensors.Range;
+import org.apache.edgent.analytics.sensors.Ranges;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry of typed configuration values.
+ * <p>
+ * Configuration property values are parsed once into a {@link ConfigValue}
+ * rather than each time they're needed.  The registry supports hot reload of
+ * all of its values when the configuration file changes
+ * ({@link #watchFile(Topology, String, long, TimeUnit)}) and update of
+ * individual values, e.g., from a device command
+ * ({@link #update(String, String)}).
+ * <p>
+ * Sample use:
+ * <pre>{@code
+ * ConfigValue<Range<Integer>> range = registry.rangeInteger("sensor1.range.outside1hzMeanRange");
+ * TStream<Integer> outliers = readings.filter(reading -> !range.get().contains(reading));
+ * }</pre>
+ */
+public class ConfigRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigRegistry.class);
+    
+    // the parsers shared by the typed lookups so that they find the same value
+    private static final Function<String,Range<Integer>> RANGE_INTEGER = Ranges::valueOfInteger;
+    private static final Function<String,Range<Double>> RANGE_DOUBLE = Ranges::valueOfDouble;
+    private static final Function<String,Boolean> BOOLEAN = Boolean::valueOf;
+    private static final Function<String,Long> DURATION_MSEC = ConfigRegistry::parseDurationMsec;
+    
+    // name -> (parser, default) -> value, the parser determines the value's type
+    private final Map<String,Map<ValueKey,ConfigValue<?>>> values = new ConcurrentHashMap<>();
+    private volatile Properties props;
+    
+    /**
+     * The parser and default value of a registered value.
+     */
+    private static final class ValueKey {
+        private final Function<String,?> parser;
+        private final Object defaultValue;
+        
+        ValueKey(Function<String,?> parser, Object defaultValue) {
+            this.parser = parser;
+            this.defaultValue = defaultValue;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ValueKey))
+                return false;
+            ValueKey k = (ValueKey) o;
+            return parser == k.parser && Objects.equals(defaultValue, k.defaultValue);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parser) + Objects.hashCode(defaultValue);
+        }
+    }
+    
+    /**
+     * Create a registry.
+     * @param props the initial configuration properties
+     */
+    public ConfigRegistry(Properties props) {
+        this.props = props;
+    }
+    
+    /**
+     * Get the value for a required configuration property.
+     * <p>
+     * Repeated requests for the same property with the same parser
+     * return the same instance.
+     * @param <T> value type
+     * @param name the configuration property name
+     * @param parser function to convert the property's string value to a T
+     * @return the value
+     * @throws IllegalArgumentException if the property is missing
+     */
+    public <T> ConfigValue<T> value(String name, Function<String,T> parser) {
+        ConfigValue<T> value = value(name, parser, null);
+        if (value.get() == null)
+            throw new IllegalArgumentException("Missing configuration property "+name);
+        return value;
+    }
+    
+    /**
+     * Get the value for an optional configuration property.
+     * <p>
+     * Repeated requests for the same property with the same parser
+     * instance and default value return the same instance.  A request
+     * with a different parser, e.g., one for a different type, or a
+     * different default value gets a separate instance, which is also
+     * reloaded and updated.
+     * @param <T> value type
+     * @param name the configuration property name
+     * @param parser function to convert the property's string value to a T
+     * @param defaultValue value if the property isn't present
+     * @return the value
+     */
+    public <T> ConfigValue<T> value(String name, Function<String,T> parser, T defaultValue) {
+        // safe, the value was created with this parser
+        @SuppressWarnings("unchecked")
+        ConfigValue<T> value = (ConfigValue<T>) values
+                .computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(new ValueKey(parser, defaultValue),
+                        k -> new ConfigValue<>(name, parser, props.getProperty(name), defaultValue));
+        return value;
+    }
+    
+    /**
+     * Get the value for a required {@code Range<Integer>} property.
+     * @param name the configuration property name
+     * @return the value
+     * @see Ranges#valueOfInteger(String)
+     */
+    public ConfigValue<Range<Integer>> rangeInteger(String name) {
+        return value(name, RANGE_INTEGER);
+    }
+    
+    /**
+     * Get the value for a required {@code Range<Double>} property.
+     * @param name the configuration property name
+     * @return the value
+     * @see Ranges#valueOfDouble(String)
+     */
+    public ConfigValue<Range<Double>> rangeDouble(String name) {
+        return value(name, RANGE_DOUBLE);
+    }
+    
+    /**
+     * Get the value for an optional boolean property.
+     * @param name the configuration property name
+     * @param defaultValue value if the property isn't present
+     * @return the value
+     */
+    public ConfigValue<Boolean> booleanValue(String name, boolean defaultValue) {
+        return value(name, BOOLEAN, defaultValue);
+    }
+    
+    /**
+     * Get the value for an optional duration property.
+     * <p>
+     * See {@link #parseDurationMsec(String)} for the duration syntax.
+     * @param name the configuration property name
+     * @param defaultMsec value if the property isn't present
+     * @return the value in milliseconds
+     */
+    public ConfigValue<Long> durationMsec(String name, long defaultMsec) {
+        return value(name, DURATION_MSEC, defaultMsec);
+    }
+    
+    /**
+     * Update a registered value, e.g., from a device command.
+     * <p>
+     * All of the values registered for the property are updated.
+     * @param name the configuration property name
+     * @param value the unparsed new value
+     * @throws IllegalArgumentException if the property isn't registered
+     *         or the value can't be parsed
+     */
+    public void update(String name, String value) {
+        Map<ValueKey,ConfigValue<?>> cvs = values.get(name);
+        if (cvs == null || cvs.isEmpty())
+            throw new IllegalArgumentException("Unknown configuration property "+name);
+        for (ConfigValue<?> cv : cvs.values()) {
+            cv.update(value);
+        }
+    }
+    
+    /**
+     * Reload all registered values from new configuration properties.
+     * <p>
+     * Values whose configured value hasn't changed are left as is.
+     * @param newProps the new configuration properties
+     */
+    public void reload(Properties newProps) {
+        props = newProps;
+        for (Map<ValueKey,ConfigValue<?>> cvs : values.values()) {
+            for (ConfigValue<?> cv : cvs.values()) {
+                cv.reload(newProps.getProperty(cv.name()));
+            }
+        }
+    }
+    
+    /**
+     * Reload all registered values from a configuration file whenever
+     * it changes.
+     * @param t the topology to add the watcher to
+     * @param path pathname of the configuration properties file
+     * @param period how often to check for a change
+     * @param unit unit of {@code period}
+     * @return the watcher's sink
+     */
+    public TSink<Long> watchFile(Topology t, String path, long period, TimeUnit unit) {
+        File file = new File(path);
+        long[] lastModified = { file.lastModified() };
+        TStream<Long> changed = t.poll(() -> file.lastModified(), period, unit)
+                .tag(StartupTimeline.TRIGGER_TAG)
+                .filter(modified -> {
+                    if (modified == lastModified[0])
+                        return false;
+                    lastModified[0] = modified;
+                    return true;
+                })
+                .tag("config.changed");
+        return changed.sink(modified -> {
+                try (Reader reader = new FileReader(file)) {
+                    Properties newProps = new Properties();
+                    newProps.load(reader);
+                    logger.info("Reloading configuration from {}", path);
+                    reload(newProps);
+                }
+                catch (Exception e) {
+                    logger.error("Unable to reload configuration from {}", path, e);
+                }
+            });
+    }
+    
+    /**
+     * Parse a duration.
+     * <p>
+     * The format is a number with an optional unit suffix of
+     * {@code ms}, {@code s}, {@code m} or {@code h}.
+     * The default unit is milliseconds.  e.g., {@code "500ms"}, {@code "30s"}.
+     * @param value the duration
+     * @return the duration in milliseconds
+     * @throws IllegalArgumentException if the value can't be parsed
+     */
+    public static long parseDurationMsec(String value) {
+        String s = value.trim();
+        TimeUnit unit = TimeUnit.MILLISECONDS;
+        if (s.endsWith("ms")) {
+            s = s.substring(0, s.length() - 2);
+        }
+        else if (s.endsWith("s")) {
+            unit = TimeUnit.SECONDS;
+            s = s.substring(0, s.length() - 1);
+        }
+        else if (s.endsWith("m")) {
+            unit = TimeUnit.MINUTES;
+            s = s.substring(0, s.length() - 1);
+        }
+        else if (s.endsWith("h")) {
+            unit = TimeUnit.HOURS;
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return unit.toMillis(Long.parseLong(s.trim()));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: "+value);
+        }
+    }
+
+}
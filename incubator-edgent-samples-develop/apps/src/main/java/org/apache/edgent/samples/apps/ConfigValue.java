@@ -0,0 +1,131 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.edgent.function.Consumer;
+import org.apache.edgent.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A typed, dynamically updatable configuration value.
+ * <p>
+ * The value is parsed once, when it's created or updated, and
+ * published via a volatile field.  Hence {@link #get()} is a cheap
+ * read suitable for use in hot path predicates.
+ * <p>
+ * Values are obtained from a {@link ConfigRegistry}.
+ *
+ * @param <T> value type
+ */
+public class ConfigValue<T> {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigValue.class);
+    
+    private final String name;
+    private final Function<String,T> parser;
+    private final List<Consumer<T>> subscribers = new CopyOnWriteArrayList<>();
+    private volatile T value;
+    // the last value from the configuration properties
+    private String configured;
+    
+    ConfigValue(String name, Function<String,T> parser, String configured, T defaultValue) {
+        this.name = name;
+        this.parser = parser;
+        this.configured = configured;
+        this.value = configured == null ? defaultValue : parser.apply(configured);
+    }
+    
+    /**
+     * Get the configuration property name.
+     * @return the name
+     */
+    public String name() {
+        return name;
+    }
+    
+    /**
+     * Get the current value.
+     * @return the value
+     */
+    public T get() {
+        return value;
+    }
+    
+    /**
+     * Register a function to be called each time the value changes.
+     * @param subscriber called with the new value
+     */
+    public void subscribe(Consumer<T> subscriber) {
+        subscribers.add(subscriber);
+    }
+    
+    /**
+     * Update the value.
+     * <p>
+     * Subscribers are notified if the new value differs from the current value.
+     * 
+     * @param newValue the unparsed new value
+     * @throws IllegalArgumentException if the value can't be parsed
+     */
+    public void update(String newValue) {
+        set(parser.apply(newValue));
+    }
+    
+    /**
+     * Update the value from (re)loaded configuration properties.
+     * <p>
+     * The value is only changed if the configured value changed
+     * since it was last loaded.  That keeps a value set via
+     * {@link #update(String)}, e.g., by a device command, from being reverted
+     * by the reload of an unrelated property change.
+     * Parse errors are logged and the current value is retained.
+     * 
+     * @param newConfigured the configured value, may be null
+     */
+    synchronized void reload(String newConfigured) {
+        if (newConfigured == null || newConfigured.equals(configured))
+            return;
+        try {
+            set(parser.apply(newConfigured));
+            configured = newConfigured;
+        }
+        catch (RuntimeException e) {
+            logger.error("Ignoring invalid value for configuration property {}: {}", name, newConfigured, e);
+        }
+    }
+    
+    private synchronized void set(T newValue) {
+        if (Objects.equals(value, newValue))
+            return;
+        value = newValue;
+        for (Consumer<T> subscriber : subscribers) {
+            subscriber.accept(newValue);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return name + "=" + value;
+    }
+
+}
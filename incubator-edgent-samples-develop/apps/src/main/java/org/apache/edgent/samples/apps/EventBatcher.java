@@ -0,0 +1,277 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.edgent.function.Function;
+import org.apache.edgent.topology.TStream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Pack events into batch envelopes.
+ * <p>
+ * Up to {@code maxEvents} events, or the events collected over
+ * {@code maxDelay}, whichever comes first, are packed into a single
+ * envelope so that the per message overhead of the transport is paid once
+ * for the whole batch.  An envelope is a JsonObject:
+ * <pre>{@code
+ * { "count": 3, "qos": 0,
+ *   "batch": [ { "eventId": "...", "payload": {...} }, ... ] }
+ * }</pre>
+ * or when compressed, the batch array's UTF-8 JSON text compressed and
+ * base64 encoded:
+ * <pre>{@code
+ * { "count": 3, "qos": 0, "encoding": "gzip", "data": "H4sIAAAA..." }
+ * }</pre>
+ * The envelope's {@code qos} is the highest QoS of its events.
+ * The envelopes created by a batcher also have a {@code seq} number,
+ * assigned in the order the batches were filled, so that a receiver can
+ * order them as full and aged batches are submitted by different threads.
+ * <p>
+ * {@link #unbatch(JsonObject)} recovers the individual events.
+ */
+public class EventBatcher {
+    
+    /** Envelope key for the number of events in the batch. */
+    public static final String KEY_COUNT = "count";
+    /** Envelope key for the highest QoS of the batched events. */
+    public static final String KEY_QOS = "qos";
+    /** Envelope key for the batcher's sequence number of the envelope. */
+    public static final String KEY_SEQ = "seq";
+    /** Envelope key for the uncompressed array of events. */
+    public static final String KEY_BATCH = "batch";
+    /** Envelope key for the compression of {@link #KEY_DATA}. */
+    public static final String KEY_ENCODING = "encoding";
+    /** Envelope key for the compressed, base64 encoded, array of events. */
+    public static final String KEY_DATA = "data";
+    /** Batched event key for the event's id. */
+    public static final String KEY_EVENT_ID = "eventId";
+    /** Batched event key for the event's payload. */
+    public static final String KEY_PAYLOAD = "payload";
+    
+    /**
+     * Envelope compression.
+     */
+    public enum Compression {
+        NONE, GZIP, DEFLATE;
+        
+        /**
+         * Get the compression for a configuration value.
+         * @param value "none", "gzip" or "deflate", case insensitive.
+         *        null is {@code NONE}.
+         * @return the compression
+         */
+        public static Compression fromString(String value) {
+            return value == null ? NONE : valueOf(value.trim().toUpperCase());
+        }
+    }
+    
+    private final int maxEvents;
+    private final long maxDelayMsec;
+    private final Compression compression;
+    
+    // pending events, guarded by this
+    private List<JsonObject> pending = new ArrayList<>();
+    private int pendingQos;
+    private long pendingSinceMsec;
+    private long seq;
+    
+    /**
+     * Create a batcher.
+     * @param maxEvents maximum number of events in a batch
+     * @param maxDelay maximum time an event waits for its batch to fill
+     * @param unit the unit of {@code maxDelay}
+     * @param compression the envelope compression
+     */
+    public EventBatcher(int maxEvents, long maxDelay, TimeUnit unit, Compression compression) {
+        if (maxEvents < 1)
+            throw new IllegalArgumentException("maxEvents");
+        if (maxDelay < 1)
+            throw new IllegalArgumentException("maxDelay");
+        this.maxEvents = maxEvents;
+        this.maxDelayMsec = Math.max(1, unit.toMillis(maxDelay));
+        this.compression = compression;
+    }
+    
+    /**
+     * Batch a stream of events.
+     * <p>
+     * A stream may only be batched once by a batcher.
+     * 
+     * @param stream the events
+     * @param eventId function returning the event's id
+     * @param payload function returning the event's payload
+     * @param qos function returning the event's QoS
+     * @return stream of batch envelopes
+     */
+    public TStream<JsonObject> batch(TStream<JsonObject> stream, Function<JsonObject,String> eventId,
+            Function<JsonObject,JsonObject> payload, Function<JsonObject,Integer> qos) {
+        
+        // Full batches are emitted by the stream itself, partial
+        // batches are flushed by a periodic check of the oldest event's age.
+        // An envelope and its sequence number are created under the lock
+        // so that the sequence follows the order the batches were filled.
+        TStream<JsonObject> full = stream.map(jo -> {
+            JsonObject event = new JsonObject();
+            event.addProperty(KEY_EVENT_ID, eventId.apply(jo));
+            event.add(KEY_PAYLOAD, payload.apply(jo));
+            return add(event, qos.apply(jo), System.currentTimeMillis());
+        });
+        
+        long checkMsec = Math.max(1, maxDelayMsec / 4);
+        TStream<JsonObject> aged = stream.topology()
+                .poll(() -> flushIfOlder(System.currentTimeMillis()),
+                        checkMsec, TimeUnit.MILLISECONDS)
+                .tag(StartupTimeline.TRIGGER_TAG);
+        
+        return full.union(aged).tag("eventBatch");
+    }
+    
+    private synchronized JsonObject add(JsonObject event, int qos, long now) {
+        if (pending.isEmpty())
+            pendingSinceMsec = now;
+        pending.add(event);
+        pendingQos = Math.max(pendingQos, qos);
+        return pending.size() >= maxEvents ? flush() : null;
+    }
+    
+    private synchronized JsonObject flushIfOlder(long now) {
+        if (pending.isEmpty() || now - pendingSinceMsec < maxDelayMsec)
+            return null;
+        return flush();
+    }
+    
+    private JsonObject flush() {
+        JsonObject envelope = envelope(pending, pendingQos, compression);
+        envelope.addProperty(KEY_SEQ, seq++);
+        pending = new ArrayList<>(maxEvents);
+        pendingQos = 0;
+        return envelope;
+    }
+    
+    /**
+     * Create a batch envelope.
+     * @param events the events, each with an {@link #KEY_EVENT_ID}
+     *        and {@link #KEY_PAYLOAD}
+     * @param qos the envelope's QoS
+     * @param compression the envelope compression
+     * @return the envelope
+     */
+    public static JsonObject envelope(List<JsonObject> events, int qos, Compression compression) {
+        JsonArray batch = new JsonArray();
+        for (JsonObject event : events)
+            batch.add(event);
+        
+        JsonObject envelope = new JsonObject();
+        envelope.addProperty(KEY_COUNT, events.size());
+        envelope.addProperty(KEY_QOS, qos);
+        if (compression == Compression.NONE) {
+            envelope.add(KEY_BATCH, batch);
+        }
+        else {
+            envelope.addProperty(KEY_ENCODING, compression.name().toLowerCase());
+            envelope.addProperty(KEY_DATA, Base64.getEncoder()
+                    .encodeToString(compress(batch.toString(), compression)));
+        }
+        return envelope;
+    }
+    
+    /**
+     * Test if a JsonObject is a batch envelope.
+     * @param jo the JsonObject
+     * @return true if it's an envelope
+     */
+    public static boolean isEnvelope(JsonObject jo) {
+        return jo.has(KEY_COUNT) && (jo.has(KEY_BATCH) || jo.has(KEY_DATA));
+    }
+    
+    /**
+     * Recover the events from a batch envelope.
+     * @param envelope the envelope
+     * @return the events, each with an {@link #KEY_EVENT_ID}
+     *         and {@link #KEY_PAYLOAD}, in their original order.
+     * @throws IllegalArgumentException if the envelope can't be decoded
+     */
+    public static List<JsonObject> unbatch(JsonObject envelope) {
+        JsonArray batch;
+        if (envelope.has(KEY_BATCH)) {
+            batch = envelope.getAsJsonArray(KEY_BATCH);
+        }
+        else if (envelope.has(KEY_DATA)) {
+            Compression compression = Compression.fromString(envelope.get(KEY_ENCODING).getAsString());
+            byte[] data = Base64.getDecoder().decode(envelope.get(KEY_DATA).getAsString());
+            batch = decompress(data, compression).getAsJsonArray();
+        }
+        else {
+            return Collections.emptyList();
+        }
+        
+        List<JsonObject> events = new ArrayList<>(batch.size());
+        for (JsonElement e : batch)
+            events.add(e.getAsJsonObject());
+        return events;
+    }
+    
+    private static byte[] compress(String s, Compression compression) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream os = compression == Compression.GZIP
+                ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            os.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            // not expected for an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static JsonElement decompress(byte[] data, Compression compression) {
+        try (InputStream is = compression == Compression.GZIP
+                    ? new GZIPInputStream(new ByteArrayInputStream(data))
+                    : new InflaterInputStream(new ByteArrayInputStream(data));
+             Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode " + compression + " batch", e);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * A configuration driven topology execution profile.
+ * <p>
+ * A profile is selected by the {@code topology.profile} property:
+ * <ul>
+ * <li>{@code development} - the Edgent console is started and every oplet
+ *     is instrumented with a counter metric.
+ *     Equivalent to the {@code DevelopmentProvider}.</li>
+ * <li>{@code production} - no console, and only the oplets producing
+ *     tagged streams are instrumented. The untagged intermediate streams
+ *     of the hot paths run without instrumentation.</li>
+ * <li>{@code direct} - no console and no instrumentation.
+ *     Equivalent to the {@code DirectProvider}.</li>
+ * </ul>
+ * The profile's settings can be overridden by the properties:
+ * <ul>
+ * <li>{@code topology.console} - {@code true} or {@code false}</li>
+ * <li>{@code topology.metrics} - {@code none}, {@code sampled} or {@code all}</li>
+ * <li>{@code topology.metrics.tags.regex} - the {@code sampled} metrics
+ *     instrument the oplets producing a stream with a tag matching the regex.
+ *     Default {@code .+}, any tagged stream.</li>
+ * <li>{@code topology.queue.capacity} - the capacity of the application's
+ *     bounded queues, e.g., its pressure relievers.
+ *     See {@link #queueCapacity(int)}.</li>
+ * </ul>
+ * When {@code topology.profile} isn't set the profile isn't configured and
+ * {@link TopologyProviderFactory} uses the {@code topology.provider} class.
+ */
+public class ExecutionProfile {
+    
+    /**
+     * Oplet metrics instrumentation.
+     */
+    public enum Metrics {
+        /** No oplet counters. */
+        NONE,
+        /** Counters on the oplets producing matching tagged streams. */
+        SAMPLED,
+        /** Counters on every oplet. */
+        ALL
+    }
+    
+    private final String name;
+    private final boolean console;
+    private final Metrics metrics;
+    private final Pattern metricsTags;
+    private final int queueCapacity;
+    
+    /**
+     * Get the execution profile from configuration information.
+     * @param props configuration information
+     * @return the profile
+     * @throws IllegalArgumentException if the profile is unknown
+     */
+    public static ExecutionProfile fromConfig(Properties props) {
+        String name = props.getProperty("topology.profile");
+        boolean console = false;
+        Metrics metrics = Metrics.NONE;
+        if ("development".equals(name)) {
+            console = true;
+            metrics = Metrics.ALL;
+        }
+        else if ("production".equals(name)) {
+            metrics = Metrics.SAMPLED;
+        }
+        else if (name != null && !"direct".equals(name)) {
+            throw new IllegalArgumentException("Unknown topology.profile: " + name);
+        }
+        
+        String value = props.getProperty("topology.console");
+        if (value != null)
+            console = Boolean.valueOf(value);
+        value = props.getProperty("topology.metrics");
+        if (value != null)
+            metrics = Metrics.valueOf(value.trim().toUpperCase());
+        Pattern metricsTags = Pattern.compile(props.getProperty("topology.metrics.tags.regex", ".+"));
+        int queueCapacity = Integer.valueOf(props.getProperty("topology.queue.capacity", "0"));
+        
+        return new ExecutionProfile(name, console, metrics, metricsTags, queueCapacity);
+    }
+    
+    private ExecutionProfile(String name, boolean console, Metrics metrics,
+            Pattern metricsTags, int queueCapacity) {
+        this.name = name;
+        this.console = console;
+        this.metrics = metrics;
+        this.metricsTags = metricsTags;
+        this.queueCapacity = queueCapacity;
+    }
+    
+    /**
+     * Test if a profile is configured.
+     * @return true if {@code topology.profile} is set
+     */
+    public boolean isConfigured() {
+        return name != null;
+    }
+    
+    /**
+     * Get the profile's name.
+     * @return the name, null if not configured
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Test if the Edgent console is started.
+     * @return true if started
+     */
+    public boolean isConsole() {
+        return console;
+    }
+    
+    /**
+     * Get the oplet metrics instrumentation.
+     * @return the instrumentation
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Get the tags that select the oplets with {@link Metrics#SAMPLED} metrics.
+     * @return the tag pattern
+     */
+    public Pattern getMetricsTags() {
+        return metricsTags;
+    }
+    
+    /**
+     * Get the capacity of a bounded queue.
+     * @param defaultCapacity the application's capacity for the queue
+     * @return {@code topology.queue.capacity} if set, otherwise
+     *         {@code defaultCapacity}
+     */
+    public int queueCapacity(int defaultCapacity) {
+        return queueCapacity > 0 ? queueCapacity : defaultCapacity;
+    }
+    
+    @Override
+    public String toString() {
+        return "profile " + name + " console " + console + " metrics " + metrics
+                + (metrics == Metrics.SAMPLED ? " " + metricsTags : "");
+    }
+}
@@ -23,6 +23,7 @@ import static org.apache.edgent.analytics.math3.stat.Statistic.MEAN;
 import static org.apache.edgent.analytics.math3.stat.Statistic.MIN;
 import static org.apache.edgent.analytics.math3.stat.Statistic.STDDEV;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import org.apache.commons.math3.util.Pair;
@@ -34,6 +35,7 @@ import org.apache.edgent.topology.TStream;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Utilties to ease working working with sensor "samples" by wrapping them
@@ -96,14 +98,190 @@ public class JsonTuples {
         return stream.map(pair -> wrap(pair, id));
     }
     
+    /**
+     * Create a stream of JsonObject wrapping a stream of 
+     * raw {@code Pair<Long msec,T reading>>} samples of a known type.
+     * <p>
+     * Same as {@link #wrap(TStream, String)} with the wrapping
+     * specialized for the reading type.
+     *
+     * @param <T> Tuple type
+     * @param stream the raw input stream
+     * @param id the sensor's Id
+     * @param type the reading's type. A Number, String or Boolean.
+     * @return the wrapped stream
+     * @see #wrapper(String, Class)
+     */
+    public static <T> TStream<JsonObject> wrap(TStream<Pair<Long,T>> stream, String id, Class<T> type) {
+        return stream.map(wrapper(id, type));
+    }
+    
+    /**
+     * Create a function that wraps raw {@code Pair<Long msec,T reading>>}
+     * samples of a known type.
+     * <p>
+     * The reading type handling is selected once, when the function is
+     * created, rather than for each sample.  The sensor id is interned
+     * and shared by all of the samples, so the {@link #keyFn()} keys of
+     * the samples are the same String instance.
+     * 
+     * @param <T> Tuple type
+     * @param id the sensor's Id
+     * @param type the reading's type. A Number, String or Boolean.
+     * @return the function
+     * @throws IllegalArgumentException if the type isn't handled
+     */
+    public static <T> Function<Pair<Long,T>,JsonObject> wrapper(String id, Class<T> type) {
+        JsonPrimitive idValue = new JsonPrimitive(id.intern());
+        if (Number.class.isAssignableFrom(type)) {
+            return sample -> {
+                JsonObject jo = newSample(idValue, sample.getFirst());
+                jo.addProperty(KEY_READING, (Number) sample.getSecond());
+                return jo;
+            };
+        }
+        else if (String.class == type) {
+            return sample -> {
+                JsonObject jo = newSample(idValue, sample.getFirst());
+                jo.addProperty(KEY_READING, (String) sample.getSecond());
+                return jo;
+            };
+        }
+        else if (Boolean.class == type) {
+            return sample -> {
+                JsonObject jo = newSample(idValue, sample.getFirst());
+                jo.addProperty(KEY_READING, (Boolean) sample.getSecond());
+                return jo;
+            };
+        }
+        throw new IllegalArgumentException("Unhandled value type: "+ type);
+    }
+    
+    private static JsonObject newSample(JsonPrimitive id, long msec) {
+        JsonObject jo = new JsonObject();
+        jo.add(KEY_ID, id);
+        jo.addProperty(KEY_TS, msec);
+        return jo;
+    }
+    
+    /**
+     * Create a function that serializes raw {@code Pair<Long msec,T reading>>}
+     * samples of a known type directly to the UTF-8 JSON bytes of their
+     * wrapped sample, without creating the JsonObject.
+     * <p>
+     * The bytes are the same as those of {@code new Gson().toJson(sample)}
+     * for the {@link #wrapper(String, Class)} sample, i.e., the HTML
+     * characters {@code < > & = '} are escaped, e.g., as <code>&#92;u003c</code>.
+     * A NaN or infinite reading isn't valid JSON so the function
+     * throws an IllegalArgumentException for it.
+     * For example, for publishing the samples with
+     * {@code MqttStreams.publish(stream, topicFn, encoder(id, type), qosFn, retainFn)}.
+     * 
+     * @param <T> Tuple type
+     * @param id the sensor's Id
+     * @param type the reading's type. A Number, String or Boolean.
+     * @return the function
+     * @throws IllegalArgumentException if the type isn't handled
+     */
+    public static <T> Function<Pair<Long,T>,byte[]> encoder(String id, Class<T> type) {
+        byte[] prefix = ("{\"" + KEY_ID + "\":" + quote(id)
+                + ",\"" + KEY_TS + "\":").getBytes(StandardCharsets.UTF_8);
+        byte[] readingKey = (",\"" + KEY_READING + "\":").getBytes(StandardCharsets.UTF_8);
+        Function<T,byte[]> readingFn;
+        if (Number.class.isAssignableFrom(type))
+            readingFn = value -> number((Number) value).getBytes(StandardCharsets.ISO_8859_1);
+        else if (Boolean.class == type)
+            readingFn = value -> value.toString().getBytes(StandardCharsets.ISO_8859_1);
+        else if (String.class == type)
+            readingFn = value -> quote((String) value).getBytes(StandardCharsets.UTF_8);
+        else
+            throw new IllegalArgumentException("Unhandled value type: "+ type);
+        
+        return sample -> {
+            byte[] msec = Long.toString(sample.getFirst()).getBytes(StandardCharsets.ISO_8859_1);
+            byte[] reading = readingFn.apply(sample.getSecond());
+            byte[] bytes = new byte[prefix.length + msec.length + readingKey.length + reading.length + 1];
+            int pos = 0;
+            System.arraycopy(prefix, 0, bytes, pos, prefix.length);
+            pos += prefix.length;
+            System.arraycopy(msec, 0, bytes, pos, msec.length);
+            pos += msec.length;
+            System.arraycopy(readingKey, 0, bytes, pos, readingKey.length);
+            pos += readingKey.length;
+            System.arraycopy(reading, 0, bytes, pos, reading.length);
+            pos += reading.length;
+            bytes[pos] = '}';
+            return bytes;
+        };
+    }
+    
+    /**
+     * Format a JSON number value.
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    private static String number(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d))
+                throw new IllegalArgumentException("Non-finite reading: "+ value);
+        }
+        return value.toString();
+    }
+    
+    /**
+     * Quote and escape a JSON string value as Gson does, including
+     * the HTML characters.
+     */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            case '\b': sb.append("\\b"); break;
+            case '\f': sb.append("\\f"); break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029'
+                        || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'')
+                    sb.append(String.format("\\u%04x", (int) c));
+                else
+                    sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+    
     /**
      * The partition key function for wrapped sensor samples.
      * <p>
      * The {@code KEY_ID} property is returned for the key.
+     * The same function instance is returned by every call.
      * @return the function
      */
     public static Function<JsonObject,String> keyFn() {
-        return sample -> sample.get(KEY_ID).getAsString();
+        return KEY_FN;
+    }
+    
+    private static final Function<JsonObject,String> KEY_FN =
+            sample -> sample.get(KEY_ID).getAsString();
+    
+    /**
+     * The partition key function for a stream of a single sensor's
+     * wrapped samples.
+     * <p>
+     * The function returns the interned {@code id} without looking up
+     * the sample's {@code KEY_ID} property, so it's the same String
+     * instance as the id of the samples created by {@link #wrapper(String, Class)}.
+     * @param id the sensor's Id
+     * @return the function
+     */
+    public static Function<JsonObject,String> keyFn(String id) {
+        String key = id.intern();
+        return sample -> key;
     }
     
     
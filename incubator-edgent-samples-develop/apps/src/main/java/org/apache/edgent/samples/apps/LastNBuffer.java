@@ -0,0 +1,139 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed capacity ring buffer of the last N values added to it.
+ * <p>
+ * Writers never block: {@link #add(Object)} claims a sequence number
+ * and stores the value, tagged with the sequence number, in its slot,
+ * overwriting the oldest value once the buffer is full.  Readers use {@link #snapshot()} to get a private
+ * copy of the current contents, so readers and writers never contend
+ * on a common monitor.
+ * <p>
+ * A snapshot only copies a slot whose sequence number is the one expected
+ * for its position, so it never contains a stale value from an earlier
+ * lap of the buffer, or a newer value that overwrote the slot.  A snapshot
+ * taken while writers are active is a best effort view: it may miss a value
+ * whose slot has been claimed and not yet stored, or that was overwritten
+ * while copying.
+ *
+ * @param <T> value type
+ */
+public class LastNBuffer<T> {
+    
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 4;
+    
+    private final int capacity;
+    private final AtomicReferenceArray<Entry<T>> slots;
+    private final AtomicLong next = new AtomicLong();
+    
+    private static final class Entry<T> {
+        final long seq;
+        final T value;
+        
+        Entry(long seq, T value) {
+            this.seq = seq;
+            this.value = value;
+        }
+    }
+    
+    /**
+     * Create a buffer.
+     * @param capacity the number of values to retain, "lastN"
+     */
+    public LastNBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity: "+capacity);
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+    
+    /**
+     * Get the buffer's capacity.
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Add a value, replacing the oldest value if the buffer is full.
+     * @param value the value to add. Must not be null.
+     */
+    public void add(T value) {
+        if (value == null)
+            throw new NullPointerException("value");
+        long seq = next.getAndIncrement();
+        slots.set(slot(seq), new Entry<>(seq, value));
+    }
+    
+    /**
+     * Get the number of values ever added to the buffer.
+     * <p>
+     * The value can be used to cheaply check if anything
+     * has been added since a previous call.
+     * @return the sequence number of the next value to be added
+     */
+    public long sequence() {
+        return next.get();
+    }
+    
+    /**
+     * Test if nothing has been added to the buffer.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return next.get() == 0;
+    }
+    
+    /**
+     * Get a copy of the buffer's current contents.
+     * @return the values, oldest first. The list is owned by the caller.
+     */
+    public List<T> snapshot() {
+        List<T> values = new ArrayList<>(capacity);
+        for (int attempt = 0; ; attempt++) {
+            long end = next.get();
+            long begin = Math.max(0, end - capacity);
+            for (long seq = begin; seq < end; seq++) {
+                Entry<T> entry = slots.get(slot(seq));
+                if (entry != null && entry.seq == seq)
+                    values.add(entry.value);
+            }
+            // If writers wrapped around while we were copying
+            // some of the values were overwritten.  Retry a few times
+            // then settle for the approximate view.
+            if (next.get() - begin <= capacity || attempt >= MAX_SNAPSHOT_ATTEMPTS)
+                break;
+            values.clear();
+        }
+        return values;
+    }
+    
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.function.BiFunction;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+/**
+ * Periodically publish the last N tuples of streams.
+ * <p>
+ * A single periodic trigger is shared by all of the streams registered
+ * with the publisher.  Each registered stream's tuples are captured in a
+ * {@link LastNBuffer} and on each trigger a snapshot of the buffer
+ * is converted to an output tuple if anything was added to the
+ * buffer since the last time it was published.
+ * <p>
+ * Sample use:
+ * <pre>{@code
+ * LastNPublisher publisher = new LastNPublisher(t, 30, TimeUnit.SECONDS);
+ * TStream<JsonObject> lastN = publisher.lastN(s, 10,
+ *          (samples, timestamp) -> toJson(samples));
+ * }</pre>
+ */
+public class LastNPublisher {
+    
+    private final TStream<Long> trigger;
+    
+    /**
+     * Create a publisher.
+     * @param t the topology
+     * @param period the publish period
+     * @param unit the unit of {@code period}
+     */
+    public LastNPublisher(Topology t, long period, TimeUnit unit) {
+        trigger = t.poll(() -> System.currentTimeMillis(), period, unit)
+                    .tag("lastN.trigger", StartupTimeline.TRIGGER_TAG);
+    }
+    
+    /**
+     * Periodically publish the last N tuples of a stream.
+     * <p>
+     * Nothing is published for a period if no tuples arrived on
+     * {@code stream} during the period.
+     *
+     * @param <T> Tuple type
+     * @param <U> Published tuple type
+     * @param stream the stream whose lastN tuples are published
+     * @param count the number of tuples, "lastN"
+     * @param fn function converting the lastN tuples, oldest first, and the
+     *           publish timestamp to the published tuple.
+     *           If the function returns null nothing is published.
+     * @return the stream of published tuples
+     */
+    public <T,U> TStream<U> lastN(TStream<T> stream, int count,
+            BiFunction<List<T>,Long,U> fn) {
+        LastNBuffer<T> lastN = new LastNBuffer<>(count);
+        long[] published = new long[1];
+        
+        stream.sink(tuple -> lastN.add(tuple));
+        
+        return trigger.map(timestamp -> {
+                // the trigger is a single source so there is only
+                // one thread accessing published
+                long sequence = lastN.sequence();
+                if (sequence == published[0])
+                    return null;
+                published[0] = sequence;
+                return fn.apply(lastN.snapshot(), timestamp);
+            });
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import org.apache.edgent.connectors.iot.IotDevice;
+import org.apache.edgent.function.BiConsumer;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.function.UnaryOperator;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A local, in-process stand-in for an {@link IotDevice}.
+ * <p>
+ * Published events are handed to a local handler instead of being sent
+ * to a message hub.  No commands are ever received.
+ * <p>
+ * Useful for benchmarking an application's analytics without
+ * a network connection.
+ */
+public class LocalIotDevice implements IotDevice {
+    
+    private final Topology topology;
+    private final String deviceId;
+    private final BiConsumer<String,JsonObject> handler;
+    
+    /**
+     * Create a local device.
+     * @param topology the topology
+     * @param deviceId the device id
+     * @param handler called with the eventId and payload of each published event
+     */
+    public LocalIotDevice(Topology topology, String deviceId, BiConsumer<String,JsonObject> handler) {
+        this.topology = topology;
+        this.deviceId = deviceId;
+        this.handler = handler;
+    }
+
+    @Override
+    public Topology topology() {
+        return topology;
+    }
+
+    @Override
+    public String getDeviceType() {
+        return "local";
+    }
+
+    @Override
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public TSink<JsonObject> events(TStream<JsonObject> stream, Function<JsonObject, String> eventId,
+            UnaryOperator<JsonObject> payload, Function<JsonObject, Integer> qos) {
+        return stream.sink(jo -> handler.accept(eventId.apply(jo), payload.apply(jo)));
+    }
+
+    @Override
+    public TSink<JsonObject> events(TStream<JsonObject> stream, String eventId, int qos) {
+        return stream.sink(jo -> handler.accept(eventId, jo));
+    }
+
+    @Override
+    public TStream<JsonObject> commands(String... commands) {
+        return topology.events(submitter -> { });
+    }
+}
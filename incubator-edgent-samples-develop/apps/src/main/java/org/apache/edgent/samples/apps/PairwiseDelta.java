@@ -0,0 +1,70 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.edgent.function.BiFunction;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.topology.TStream;
+
+/**
+ * Keyed pairwise processing of consecutive tuples.
+ * <p>
+ * A lighter weight alternative to a {@code last(2, keyFn)} window for
+ * computing deltas between consecutive tuples of a key, e.g.,
+ * acceleration from consecutive speed readings.
+ */
+public class PairwiseDelta {
+    
+    /**
+     * Process each tuple with the previous tuple having the same key.
+     * <p>
+     * The previous tuple of each key is retained in a map.  Nothing
+     * other than what {@code fn} does is allocated for a tuple whose key has
+     * already been seen.  No tuple is generated for the first tuple of a key
+     * or when {@code fn} returns null.
+     * <p>
+     * Sample use:
+     * <pre>{@code
+     * TStream<Reading> readings = ...
+     * TStream<Alert> alerts = PairwiseDelta.pairwise(readings, r -> r.getId(),
+     *      (r0, r1) -> r1.getValue() - r0.getValue() > 10 ? new Alert(r0, r1) : null);
+     * }</pre>
+     *
+     * @param <T> Tuple type
+     * @param <K> Key type
+     * @param <U> Result tuple type
+     * @param stream the stream to process
+     * @param keyFn the key function
+     * @param fn function called with the previous and current tuples
+     * @return stream of non-null {@code fn} results
+     */
+    public static <T,K,U> TStream<U> pairwise(TStream<T> stream, Function<T,K> keyFn,
+            BiFunction<T,T,U> fn) {
+        // a map oplet is invoked by a single thread
+        Map<K,T> previous = new HashMap<>();
+        return stream.map(tuple -> {
+                T prev = previous.put(keyFn.apply(tuple), tuple);
+                return prev == null ? null : fn.apply(prev, tuple);
+            });
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+import org.apache.edgent.console.server.HttpServer;
+import org.apache.edgent.execution.Job;
+import org.apache.edgent.execution.services.ControlService;
+import org.apache.edgent.graph.Connector;
+import org.apache.edgent.graph.Vertex;
+import org.apache.edgent.metrics.Metrics;
+import org.apache.edgent.metrics.MetricsSetup;
+import org.apache.edgent.metrics.oplets.CounterOp;
+import org.apache.edgent.oplet.core.Peek;
+import org.apache.edgent.providers.development.DevelopmentProvider;
+import org.apache.edgent.providers.direct.DirectProvider;
+import org.apache.edgent.runtime.jmxcontrol.JMXControlService;
+import org.apache.edgent.streamscope.StreamScopeSetup;
+import org.apache.edgent.topology.Topology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.JsonObject;
+
+/**
+ * A topology provider whose console and metrics instrumentation
+ * are set by an {@link ExecutionProfile}.
+ * <p>
+ * Metrics are reported to JMX under the same domain as
+ * the {@code DevelopmentProvider}.
+ * <p>
+ * Unlike the {@code DevelopmentProvider}, the JMX reporting and the
+ * console's web server are started in the background so they don't
+ * delay the application's first tuple.
+ */
+public class ProfiledProvider extends DirectProvider {
+    private static final Logger logger = LoggerFactory.getLogger(ProfiledProvider.class);
+    
+    private final ExecutionProfile profile;
+    private final CompletableFuture<HttpServer> console;
+    
+    /**
+     * Create a provider.
+     * @param profile the execution profile
+     * @throws Exception if the provider couldn't be created
+     */
+    public ProfiledProvider(ExecutionProfile profile) throws Exception {
+        this.profile = profile;
+        
+        // The registry is needed by the counter oplets when the job starts
+        // but reporting it, and the console's web server, can start
+        // in the background while the topology is built and submitted.
+        MetricsSetup metrics = null;
+        if (profile.isConsole() || profile.getMetrics() != ExecutionProfile.Metrics.NONE) {
+            metrics = MetricsSetup.withRegistry(getServices(), new MetricRegistry());
+        }
+        
+        if (profile.isConsole()) {
+            getServices().addService(ControlService.class,
+                    new JMXControlService(DevelopmentProvider.JMX_DOMAIN, new Hashtable<>()));
+            StreamScopeSetup.register(getServices());
+        }
+        
+        MetricsSetup reporter = metrics;
+        console = CompletableFuture.supplyAsync(() -> {
+            if (reporter != null)
+                reporter.startJMXReporter(DevelopmentProvider.JMX_DOMAIN);
+            if (!profile.isConsole())
+                return null;
+            try {
+                HttpServer server = HttpServer.getInstance();
+                server.startServer();
+                getServices().addService(HttpServer.class, server);
+                return server;
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Unable to start the console", e);
+            }
+        }).whenComplete((server, e) -> {
+            // nothing else may be waiting for the console
+            if (e != null)
+                logger.error("Unable to start the console and metrics reporting",
+                        e instanceof CompletionException ? e.getCause() : e);
+        });
+    }
+    
+    /**
+     * Get the provider's console.
+     * <p>
+     * The console is started in the background.  A failure to
+     * start it is logged.
+     * @return future for the console's server, the server is null
+     *         if the profile has no console.
+     */
+    public CompletableFuture<HttpServer> console() {
+        return console;
+    }
+    
+    /**
+     * Get the provider's execution profile.
+     * @return the profile
+     */
+    public ExecutionProfile getProfile() {
+        return profile;
+    }
+    
+    @Override
+    public Future<Job> submit(Topology topology, JsonObject config) {
+        switch (profile.getMetrics()) {
+        case ALL:
+            Metrics.counter(topology);
+            break;
+        case SAMPLED:
+            topology.graph().peekAll(() -> new CounterOp<>(), v -> isSampled(v));
+            break;
+        case NONE:
+            break;
+        }
+        if (profile.isConsole())
+            StreamScopeSetup.addStreamScopes(topology);
+        return super.submit(topology, config);
+    }
+    
+    /**
+     * Test if an oplet's output streams are instrumented for
+     * {@link ExecutionProfile.Metrics#SAMPLED} metrics.
+     */
+    private boolean isSampled(Vertex<?,?,?> v) {
+        if (v.getInstance() instanceof Peek)
+            return false;
+        for (Connector<?> c : v.getConnectors()) {
+            for (String tag : c.getTags()) {
+                if (profile.getMetricsTags().matcher(tag).matches())
+                    return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.edgent.graph.Connector;
+import org.apache.edgent.graph.Vertex;
+import org.apache.edgent.oplet.core.Peek;
+import org.apache.edgent.oplet.core.Source;
+import org.apache.edgent.topology.Topology;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * An application's startup timeline.
+ * <p>
+ * Records the elapsed time of each of the application's startup phases,
+ * ending with the arrival of the first tuple from any of the topology's
+ * data sources, i.e., sources whose stream isn't tagged {@link #TRIGGER_TAG}.
+ * When the startup completes the timeline is printed and, if
+ * a {@code MetricRegistry} is available, registered as gauges
+ * named {@code application.startup.<phase>} with the phase's
+ * duration in milliseconds.
+ */
+public class StartupTimeline {
+    
+    /** The name of the final phase, ending with the first source tuple. */
+    public static final String FIRST_TUPLE = "firstTuple";
+    
+    /**
+     * Tag of a source stream whose tuples are internal triggers, e.g., a
+     * timer poll, rather than data.  Its tuples don't complete the timeline.
+     */
+    public static final String TRIGGER_TAG = "trigger";
+    
+    private final long jvmUptimeMsec;
+    private final Map<String,Long> phases = new LinkedHashMap<>();
+    private long markNanos;
+    private MetricRegistry registry;
+    private boolean complete;
+    
+    /**
+     * Create a timeline starting now.
+     */
+    public StartupTimeline() {
+        markNanos = System.nanoTime();
+        jvmUptimeMsec = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+    
+    /**
+     * End a phase.
+     * <p>
+     * The phase started when the previous phase ended.
+     * Phases ending after the timeline is complete are ignored, e.g., when
+     * the first tuple arrives before the topology submit returns
+     * the {@link #FIRST_TUPLE} phase includes the rest of the submit.
+     * @param name the phase's name
+     */
+    public synchronized void phase(String name) {
+        if (complete)
+            return;
+        long now = System.nanoTime();
+        phases.put(name, TimeUnit.NANOSECONDS.toMillis(now - markNanos));
+        markNanos = now;
+    }
+    
+    /**
+     * Complete the timeline when the first tuple arrives from any of
+     * the topology's data sources.
+     * <p>
+     * Must be called before the topology is submitted.
+     * @param t the topology
+     * @param registry registry for the timeline's gauges, may be null
+     */
+    public void completeOnFirstTuple(Topology t, MetricRegistry registry) {
+        synchronized (this) {
+            this.registry = registry;
+        }
+        AtomicBoolean first = new AtomicBoolean();
+        t.graph().peekAll(() -> new FirstTuple<>(first, this),
+                v -> v.getInstance() instanceof Source && !isTrigger(v));
+    }
+    
+    private static boolean isTrigger(Vertex<?,?,?> v) {
+        for (Connector<?> c : v.getConnectors()) {
+            if (c.getTags().contains(TRIGGER_TAG))
+                return true;
+        }
+        return false;
+    }
+    
+    private void complete() {
+        MetricRegistry registry;
+        synchronized (this) {
+            phase(FIRST_TUPLE);
+            complete = true;
+            registry = this.registry;
+        }
+        if (registry != null) {
+            for (Map.Entry<String,Long> e : getPhases().entrySet()) {
+                Long msec = e.getValue();
+                registry.register(MetricRegistry.name("application.startup", e.getKey()),
+                        (Gauge<Long>) () -> msec);
+            }
+        }
+        System.out.println(this);
+    }
+    
+    /**
+     * Get the phases.
+     * @return the phase names and their durations in milliseconds,
+     *         in the order of the phases.
+     */
+    public synchronized Map<String,Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+    
+    /**
+     * Get the total duration of the phases.
+     * @return the duration in milliseconds
+     */
+    public synchronized long getTotalMsec() {
+        long total = 0;
+        for (long msec : phases.values())
+            total += msec;
+        return total;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("Startup timeline msec: jvm ").append(jvmUptimeMsec);
+        for (Map.Entry<String,Long> e : phases.entrySet())
+            sb.append(", ").append(e.getKey()).append(' ').append(e.getValue());
+        sb.append(" (total ").append(getTotalMsec()).append(')');
+        return sb.toString();
+    }
+    
+    /**
+     * Completes the timeline on its first tuple across all instances.
+     */
+    private static class FirstTuple<T> extends Peek<T> {
+        private static final long serialVersionUID = 1L;
+        private final AtomicBoolean first;
+        private final StartupTimeline timeline;
+        
+        FirstTuple(AtomicBoolean first, StartupTimeline timeline) {
+            this.first = first;
+            this.timeline = timeline;
+        }
+
+        @Override
+        protected void peek(T tuple) {
+            if (!first.get() && first.compareAndSet(false, true))
+                timeline.complete();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.edgent.function.Function;
+import org.apache.edgent.oplet.core.Pipe;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Checkpoint application state to a local file so that it survives
+ * application restarts.
+ * <p>
+ * The state of the registered {@link Checkpointable}s is periodically written
+ * to the checkpoint file, and again when the JVM shuts down.  When the
+ * application restarts the state is restored before the topology is submitted.
+ * <p>
+ * The contents of a window are retained by capturing the window's last tuples,
+ * see {@link #retain(String, TStream, int, Function)}.  This is intended for
+ * lower rate streams, e.g., aggregates, as each tuple is captured as JSON text.  When restored, the tuples are
+ * replayed into the window ahead of the live tuples so that the window's
+ * aggregates are correct as soon as the application starts.
+ * <p>
+ * The checkpoint file is a deflate compressed binary format:
+ * <pre>
+ * int magic, int version, long timestamp msec, int entry count
+ * per entry: UTF name, int length, length bytes of state
+ * </pre>
+ * The file is replaced atomically so a crash while writing it
+ * leaves the previous checkpoint intact.
+ * <p>
+ * Configured by the application properties:
+ * <ul>
+ * <li>{@code application.checkpoint.file} - the checkpoint file.
+ *     Checkpointing is disabled unless set.</li>
+ * <li>{@code application.checkpoint.sec} - the checkpoint period. Default 30.</li>
+ * <li>{@code application.checkpoint.restore.msec} - the time budget for
+ *     restoring the state. Entries not restored within the budget are
+ *     skipped. Default 2000.</li>
+ * <li>{@code application.checkpoint.maxAge.sec} - a checkpoint older than this
+ *     is stale and isn't restored. Default 300.</li>
+ * </ul>
+ */
+public class StateCheckpoint {
+    
+    private static final int MAGIC = 0x45434b50; // "ECKP"
+    private static final int VERSION = 1;
+    private static final String KEY_REPLAYED = "checkpoint.replayed";
+    private static final Logger logger = LoggerFactory.getLogger(StateCheckpoint.class);
+    
+    private final File file;
+    private final long periodSec;
+    private final long restoreBudgetMsec;
+    private final long maxAgeMsec;
+    private final Map<String,Checkpointable> entries = new LinkedHashMap<>();
+    
+    /**
+     * Create a checkpoint from configuration information.
+     * @param props configuration information
+     */
+    public StateCheckpoint(Properties props) {
+        String path = props.getProperty("application.checkpoint.file");
+        file = path == null ? null : new File(path);
+        periodSec = Long.valueOf(props.getProperty("application.checkpoint.sec", "30"));
+        restoreBudgetMsec = Long.valueOf(props.getProperty("application.checkpoint.restore.msec", "2000"));
+        maxAgeMsec = TimeUnit.SECONDS.toMillis(
+                Long.valueOf(props.getProperty("application.checkpoint.maxAge.sec", "300")));
+    }
+    
+    /**
+     * Test if checkpointing is enabled.
+     * @return true if {@code application.checkpoint.file} is set
+     */
+    public boolean isEnabled() {
+        return file != null;
+    }
+    
+    /**
+     * Register state to be checkpointed.
+     * <p>
+     * Must be called before {@link #restore()}.
+     * @param name the state's unique name
+     * @param state the state
+     * @throws IllegalStateException if the name is already registered
+     */
+    public synchronized void register(String name, Checkpointable state) {
+        if (entries.containsKey(name))
+            throw new IllegalStateException("Duplicate checkpoint name: " + name);
+        entries.put(name, state);
+    }
+    
+    /**
+     * Retain the last tuples of a stream across application restarts.
+     * <p>
+     * The last {@code count} tuples for each key of {@code stream} are
+     * checkpointed.  The returned stream contains the restored tuples,
+     * followed by the tuples of {@code stream}.  Tuples of {@code stream}
+     * that arrive while the restored tuples are being replayed are held
+     * back until the replay completes.  Declare a window
+     * on the returned stream to have the window's contents restored.
+     * <p>
+     * The restored tuples are marked, see {@link #isReplayed(JsonObject)},
+     * so that results derived from them can be discarded.
+     * <p>
+     * When checkpointing isn't enabled {@code stream} is returned.
+     * 
+     * @param <K> Key type
+     * @param name the state's unique name
+     * @param stream the stream
+     * @param count the number of tuples retained for each key
+     * @param keyFn the tuple's key
+     * @return stream of the restored tuples followed by {@code stream}'s tuples
+     */
+    public <K> TStream<JsonObject> retain(String name, TStream<JsonObject> stream,
+            int count, Function<JsonObject,K> keyFn) {
+        if (!isEnabled())
+            return stream;
+        
+        RetainedTuples<K> retained = new RetainedTuples<>(count, keyFn);
+        register(name, retained);
+        
+        stream.sink(tuple -> retained.add(tuple));
+        
+        return stream.pipe(new ReplayFirst(retained)).tag(name + ".replay");
+    }
+    
+    /**
+     * Test if a tuple was replayed from the checkpoint.
+     * @param tuple the tuple
+     * @return true if the tuple was replayed
+     * @see #retain(String, TStream, int, Function)
+     */
+    public static boolean isReplayed(JsonObject tuple) {
+        return tuple.has(KEY_REPLAYED);
+    }
+    
+    /**
+     * Restore the registered state from the checkpoint file.
+     * <p>
+     * Nothing is restored if the file doesn't exist, is stale or is
+     * unreadable.  Entries not restored within the time budget, or
+     * that fail to restore, are skipped.
+     */
+    public synchronized void restore() {
+        if (!isEnabled() || !file.exists())
+            return;
+        long start = System.currentTimeMillis();
+        int restored = 0;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring checkpoint {}: unknown format", file);
+                return;
+            }
+            long timestamp = in.readLong();
+            if (start - timestamp > maxAgeMsec) {
+                logger.info("Ignoring stale checkpoint {}: {} msec old", file, start - timestamp);
+                return;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                if (System.currentTimeMillis() - start > restoreBudgetMsec) {
+                    logger.warn("Checkpoint restore budget {} msec exceeded, skipping {} entries",
+                            restoreBudgetMsec, n - i);
+                    break;
+                }
+                Checkpointable entry = entries.get(name);
+                if (entry == null)
+                    continue;
+                try {
+                    entry.restore(new DataInputStream(new ByteArrayInputStream(state)));
+                    restored++;
+                }
+                catch (IOException | RuntimeException e) {
+                    logger.warn("Unable to restore checkpoint entry " + name, e);
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Unable to read checkpoint " + file, e);
+        }
+        System.out.println("Restored " + restored + " checkpoint entries from " + file
+                + " in " + (System.currentTimeMillis() - start) + " msec");
+    }
+    
+    /**
+     * Periodically checkpoint the registered state while the topology
+     * runs, and when the JVM shuts down.
+     * @param t the topology
+     */
+    public void schedule(Topology t) {
+        if (!isEnabled())
+            return;
+        t.poll(() -> { checkpoint(); return null; }, periodSec, TimeUnit.SECONDS)
+            .tag("checkpoint");
+        Runtime.getRuntime().addShutdownHook(new Thread(this::checkpoint, "checkpoint"));
+    }
+    
+    /**
+     * Write the registered state to the checkpoint file.
+     */
+    public synchronized void checkpoint() {
+        if (!isEnabled())
+            return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(entries.size());
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (Map.Entry<String,Checkpointable> e : entries.entrySet()) {
+                    bytes.reset();
+                    e.getValue().checkpoint(new DataOutputStream(bytes));
+                    out.writeUTF(e.getKey());
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            logger.error("Unable to write checkpoint " + file, e);
+        }
+    }
+    
+    /**
+     * Submit the restored tuples ahead of the live tuples.
+     * <p>
+     * The restored tuples are replayed when the job starts, or by the first
+     * live tuple if that arrives first.  Holding the lock while submitting
+     * keeps a live tuple from overtaking the replay.
+     */
+    private static class ReplayFirst extends Pipe<JsonObject,JsonObject> {
+        private static final long serialVersionUID = 1L;
+        private final transient RetainedTuples<?> retained;
+        private boolean replayed;
+        
+        ReplayFirst(RetainedTuples<?> retained) {
+            this.retained = retained;
+        }
+        
+        @Override
+        public void start() {
+            super.start();
+            getOpletContext().getService(ScheduledExecutorService.class).submit(this::replay);
+        }
+        
+        private synchronized void replay() {
+            if (replayed)
+                return;
+            replayed = true;
+            for (JsonObject tuple : retained.takeRestored())
+                submit(tuple);
+        }
+        
+        @Override
+        public synchronized void accept(JsonObject tuple) {
+            replay();
+            submit(tuple);
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /**
+     * The last N tuples for each key of a stream.
+     * <p>
+     * Tuples are captured as their JSON text when they arrive since
+     * they may be modified downstream while a checkpoint is written.
+     */
+    private static class RetainedTuples<K> implements Checkpointable {
+        private final int count;
+        private final Function<JsonObject,K> keyFn;
+        private final Map<K,LastNBuffer<String>> buffers = new ConcurrentHashMap<>();
+        private List<JsonObject> restored = Collections.emptyList();
+        
+        RetainedTuples(int count, Function<JsonObject,K> keyFn) {
+            this.count = count;
+            this.keyFn = keyFn;
+        }
+        
+        void add(JsonObject tuple) {
+            add(keyFn.apply(tuple), tuple.toString());
+        }
+        
+        private void add(K key, String json) {
+            buffers.computeIfAbsent(key, k -> new LastNBuffer<>(count)).add(json);
+        }
+        
+        synchronized List<JsonObject> takeRestored() {
+            List<JsonObject> tuples = restored;
+            restored = Collections.emptyList();
+            return tuples;
+        }
+
+        @Override
+        public void checkpoint(DataOutput out) throws IOException {
+            List<String> tuples = new ArrayList<>();
+            for (LastNBuffer<String> buffer : buffers.values())
+                tuples.addAll(buffer.snapshot());
+            out.writeInt(tuples.size());
+            for (String tuple : tuples) {
+                byte[] json = tuple.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(json.length);
+                out.write(json);
+            }
+        }
+
+        @Override
+        public synchronized void restore(DataInput in) throws IOException {
+            JsonParser parser = new JsonParser();
+            int n = in.readInt();
+            List<JsonObject> tuples = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String json = new String(bytes, StandardCharsets.UTF_8);
+                JsonObject tuple = parser.parse(json).getAsJsonObject();
+                add(keyFn.apply(tuple), json);
+                tuple.addProperty(KEY_REPLAYED, true);
+                tuples.add(tuple);
+            }
+            restored = tuples;
+        }
+    }
+}
@@ -43,11 +43,21 @@ public class TopologyProviderFactory {
      * <p>
      * The {@code topology.provider} configuration property can specify
      * an alternative.
+     * <p>
+     * When the {@code topology.profile} configuration property is set
+     * a {@link ProfiledProvider} for the {@link ExecutionProfile} is
+     * created instead.
      * 
      * @return the provider
      * @throws Exception if the provider couldn't be created
      */
     public DirectProvider newProvider() throws Exception {
+        ExecutionProfile profile = ExecutionProfile.fromConfig(props);
+        if (profile.isConfigured()) {
+            System.out.println("Topology execution " + profile);
+            return new ProfiledProvider(profile);
+        }
+        
         String name = props.getProperty("topology.provider", "org.apache.edgent.providers.direct.DirectProvider");
         Class<?> clazz = null;
         try {
@@ -0,0 +1,154 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.edgent.connectors.iot.IotDevice;
+import org.apache.edgent.samples.apps.LocalIotDevice;
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+/**
+ * A throughput and latency benchmark for {@link GpsAnalyticsApplication}.
+ * <p>
+ * A {@link FleetSimulator} feeds the analytics and the events are
+ * published to a {@link LocalIotDevice} instead of the IoTF Quickstart
+ * service.  Every 5 seconds the fix and event rates are reported.
+ * At the end the overall rates and the end-to-end latency of a sample
+ * of the GPS events, from fix generation to publish, are reported.
+ * <p>
+ * Argument: optional pathname to application properties file.
+ * The default configuration is 1000 vehicles generating 100000 fixes per second
+ * for 30 seconds ({@code fleet.benchmark.sec}), with one parallel channel per core.
+ */
+public class FleetBenchmark extends FleetManagementAnalyticsClientApplication {
+
+    // sample 1 in 1024 fixes for latency
+    private static final int LATENCY_SAMPLE_MASK = 1023;
+
+    private final LongAdder fixes = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final ConcurrentHashMap<String,Long> pending = new ConcurrentHashMap<>();
+    private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws Exception {
+        String propsPath = args.length > 0 ? args[0] : defaultProperties();
+        FleetBenchmark benchmark = new FleetBenchmark(propsPath);
+        benchmark.run();
+        benchmark.report(Integer.valueOf(benchmark.config().getProperty("fleet.benchmark.sec", "30")));
+        System.exit(0);
+    }
+
+    FleetBenchmark(String propsPath) throws Exception {
+        super(propsPath);
+    }
+
+    private static String defaultProperties() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("application.name", "FleetBenchmark");
+        props.setProperty("fleet.vehicles", "1000");
+        props.setProperty("fleet.simulator.rate", "100000");
+        props.setProperty("fleet.parallelism", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        props.setProperty("fleet.events.log", "false");
+        File file = File.createTempFile("fleetBenchmark", ".properties");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            props.store(writer, "FleetBenchmark defaults");
+        }
+        return file.getPath();
+    }
+
+    @Override
+    protected IotDevice newIotDevice(Topology topology) {
+        return new LocalIotDevice(topology, "benchmark", (eventId, payload) -> {
+            events.increment();
+            if (eventId.startsWith("GPS")) {
+                Long start = pending.remove(sampleKey(payload.get("vin").getAsString(),
+                        payload.get("time").getAsLong()));
+                if (start != null)
+                    latencies.add(System.nanoTime() - start);
+            }
+        });
+    }
+
+    @Override
+    protected void buildTopology(Topology t) {
+        int nVehicles = Integer.valueOf(config().getProperty("fleet.vehicles", "1"));
+        int rate = Integer.valueOf(config().getProperty("fleet.simulator.rate", "100000"));
+        System.out.println("Fleet benchmark: " + nVehicles + " vehicles, " + rate + " fixes/sec, "
+                + config().getProperty("fleet.parallelism", "1") + " channels");
+
+        TStream<VehicleGps> gps = FleetGpsSources.simulatedFleet(t,
+                new FleetSimulator(nVehicles, 100_000, 42), rate);
+        gps = gps.peek(v -> {
+            fixes.increment();
+            GpsSensor g = v.getGps();
+            if (((v.getVin().hashCode() * 31 + (int) g.getTime()) & LATENCY_SAMPLE_MASK) == 0)
+                pending.put(sampleKey(v.getVin(), g.getTime()), System.nanoTime());
+        });
+
+        new GpsAnalyticsApplication(t, this).addAnalytics(gps);
+    }
+
+    private static String sampleKey(String vin, long time) {
+        return vin + ":" + time;
+    }
+
+    private void report(int durationSec) throws InterruptedException {
+        long startNs = System.nanoTime();
+        long lastFixes = 0, lastEvents = 0;
+        for (int sec = 5; sec <= durationSec; sec += 5) {
+            TimeUnit.SECONDS.sleep(5);
+            long f = fixes.sum(), e = events.sum();
+            System.out.println(String.format("%3ds: %,10d fixes/sec %,10d events/sec",
+                    sec, (f - lastFixes) / 5, (e - lastEvents) / 5));
+            lastFixes = f;
+            lastEvents = e;
+        }
+        double elapsedSec = (System.nanoTime() - startNs) / 1e9;
+        System.out.println(String.format("Overall: %,.0f fixes/sec %,.0f events/sec",
+                fixes.sum() / elapsedSec, events.sum() / elapsedSec));
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        if (!sorted.isEmpty()) {
+            System.out.println(String.format("GPS event latency (%d samples): p50 %.3f ms p99 %.3f ms max %.3f ms",
+                    sorted.size(), percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted.get(sorted.size() - 1) / 1e6));
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int i = (int) Math.min(sorted.size() - 1, Math.round(p * (sorted.size() - 1)));
+        return sorted.get(i) / 1e6;
+    }
+}
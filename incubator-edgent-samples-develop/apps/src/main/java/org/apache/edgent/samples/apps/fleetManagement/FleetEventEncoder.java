@@ -0,0 +1,273 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Single pass encoder for a vehicle's GPS fix and its derived event flags.
+ * <p>
+ * A fix is encoded once, together with the flags of the events it
+ * triggered, and the one encoding is shared by all of those events.
+ * Use {@link #eventTypes(int)} to route the encoding to each event.
+ * <p>
+ * A fix is encoded as JSON text or CBOR for publishing as a byte payload,
+ * e.g., with {@code MqttStreams}, or as a JsonObject for publishing with an
+ * {@code IotDevice}, see {@link #toJsonObject(VehicleGps, int)}.
+ * <p>
+ * An encoder is not thread safe.  It reuses a single buffer for
+ * the binary and JSON text encodings.
+ * <p>
+ * The encoded properties are:
+ * {@code vin, lat, long, alt, mph, course, time, speeding, outsideGeofence}.
+ * As JSON has no NaN or infinite numbers, such a value, e.g., an
+ * unknown altitude, is encoded as {@code null} in the JSON encodings.
+ */
+public class FleetEventEncoder {
+    
+    /** The fix is a GPS location event */
+    public static final int GPS = 1;
+    /** The vehicle is speeding */
+    public static final int SPEEDING = 1 << 1;
+    /** The vehicle is outside of its geofence */
+    public static final int OUTSIDE_GEOFENCE = 1 << 2;
+    
+    private static final String[][] EVENT_TYPES = new String[8][];
+    static {
+        for (int flags = 0; flags < EVENT_TYPES.length; flags++) {
+            String[] types = new String[Integer.bitCount(flags)];
+            int i = 0;
+            if ((flags & GPS) != 0) types[i++] = "GPS";
+            if ((flags & SPEEDING) != 0) types[i++] = "Speeding";
+            if ((flags & OUTSIDE_GEOFENCE) != 0) types[i++] = "Geofence";
+            EVENT_TYPES[flags] = types;
+        }
+    }
+    
+    private static final double METERS_PER_SEC_TO_MPH = 1 / GpsAnalyticsApplication.MILES_PER_HOUR_TO_METERS_PER_SEC;
+    
+    /**
+     * Encoding format.
+     */
+    public enum Format {
+        /** JSON text, UTF-8 */
+        JSON,
+        /** Concise Binary Object Representation, RFC 7049 */
+        CBOR
+    }
+    
+    private final Format format;
+    private byte[] buf = new byte[256];
+    private int len;
+    
+    public FleetEventEncoder(Format format) {
+        this.format = format;
+    }
+    
+    public Format getFormat() {
+        return format;
+    }
+    
+    /**
+     * Get the event types for a set of flags.
+     * @param flags the event flags
+     * @return the event types, e.g., {@code "GPS", "Speeding"}.
+     *         The array is shared and must not be modified.
+     */
+    public static String[] eventTypes(int flags) {
+        return EVENT_TYPES[flags & (EVENT_TYPES.length - 1)];
+    }
+    
+    /**
+     * Encode a fix and its flags in the encoder's format.
+     * @param v the vehicle's fix
+     * @param flags the event flags
+     * @return the encoded value.  It's a copy of the buffer's encoding
+     *         as a publisher, e.g., MQTT's, may queue the payload.
+     */
+    public byte[] encode(VehicleGps v, int flags) {
+        len = 0;
+        if (format == Format.CBOR)
+            encodeCbor(v, flags);
+        else
+            encodeJson(v, flags);
+        return Arrays.copyOf(buf, len);
+    }
+    
+    /**
+     * Create a JsonObject for a fix and its flags.
+     * <p>
+     * For publishing via an {@code IotDevice}, which requires JsonObject events.
+     * @param v the vehicle's fix
+     * @param flags the event flags
+     * @return the JsonObject
+     */
+    public static JsonObject toJsonObject(VehicleGps v, int flags) {
+        GpsSensor t = v.getGps();
+        JsonObject j = new JsonObject();
+        j.addProperty("vin", v.getVin());
+        j.addProperty("lat", finite(t.getLatitude()));
+        j.addProperty("long", finite(t.getLongitude()));
+        j.addProperty("alt", finite(t.geAltitude()));
+        j.addProperty("mph", finite(t.getSpeedMetersPerSec() * METERS_PER_SEC_TO_MPH));
+        j.addProperty("course", finite(t.getCourse()));
+        j.addProperty("time", t.getTime());
+        j.addProperty("speeding", (flags & SPEEDING) != 0);
+        j.addProperty("outsideGeofence", (flags & OUTSIDE_GEOFENCE) != 0);
+        return j;
+    }
+    
+    private void encodeJson(VehicleGps v, int flags) {
+        GpsSensor t = v.getGps();
+        writeAscii("{\"vin\":\"");
+        writeJsonString(v.getVin());
+        writeAscii("\",\"lat\":");
+        writeJsonNumber(t.getLatitude());
+        writeAscii(",\"long\":");
+        writeJsonNumber(t.getLongitude());
+        writeAscii(",\"alt\":");
+        writeJsonNumber(t.geAltitude());
+        writeAscii(",\"mph\":");
+        writeJsonNumber(t.getSpeedMetersPerSec() * METERS_PER_SEC_TO_MPH);
+        writeAscii(",\"course\":");
+        writeJsonNumber(t.getCourse());
+        writeAscii(",\"time\":");
+        writeAscii(Long.toString(t.getTime()));
+        writeAscii(",\"speeding\":");
+        writeAscii((flags & SPEEDING) != 0 ? "true" : "false");
+        writeAscii(",\"outsideGeofence\":");
+        writeAscii((flags & OUTSIDE_GEOFENCE) != 0 ? "true" : "false");
+        writeAscii("}");
+    }
+    
+    private void encodeCbor(VehicleGps v, int flags) {
+        GpsSensor t = v.getGps();
+        cborHead(5, 9); // map of 9 pairs
+        cborText("vin");
+        cborText(v.getVin());
+        cborText("lat");
+        cborDouble(t.getLatitude());
+        cborText("long");
+        cborDouble(t.getLongitude());
+        cborText("alt");
+        cborDouble(t.geAltitude());
+        cborText("mph");
+        cborDouble(t.getSpeedMetersPerSec() * METERS_PER_SEC_TO_MPH);
+        cborText("course");
+        cborDouble(t.getCourse());
+        cborText("time");
+        cborLong(t.getTime());
+        cborText("speeding");
+        write((flags & SPEEDING) != 0 ? 0xf5 : 0xf4);
+        cborText("outsideGeofence");
+        write((flags & OUTSIDE_GEOFENCE) != 0 ? 0xf5 : 0xf4);
+    }
+    
+    private void cborHead(int majorType, long value) {
+        int mt = majorType << 5;
+        if (value < 24) {
+            write(mt | (int) value);
+        } else if (value < 0x100) {
+            write(mt | 24);
+            write((int) value);
+        } else if (value < 0x10000) {
+            write(mt | 25);
+            writeBigEndian(value, 2);
+        } else if (value < 0x100000000L) {
+            write(mt | 26);
+            writeBigEndian(value, 4);
+        } else {
+            write(mt | 27);
+            writeBigEndian(value, 8);
+        }
+    }
+    
+    private void cborLong(long value) {
+        if (value >= 0)
+            cborHead(0, value);
+        else
+            cborHead(1, -1 - value);
+    }
+    
+    private void cborDouble(double value) {
+        write(0xfb);
+        writeBigEndian(Double.doubleToLongBits(value), 8);
+    }
+    
+    private void cborText(String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        cborHead(3, utf8.length);
+        ensure(utf8.length);
+        System.arraycopy(utf8, 0, buf, len, utf8.length);
+        len += utf8.length;
+    }
+    
+    private void writeBigEndian(long value, int nBytes) {
+        for (int shift = (nBytes - 1) * 8; shift >= 0; shift -= 8) {
+            write((int) (value >>> shift));
+        }
+    }
+    
+    private void writeAscii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[len++] = (byte) s.charAt(i);
+        }
+    }
+    
+    private void writeJsonNumber(double d) {
+        writeAscii(Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d));
+    }
+    
+    /**
+     * Get a JSON number, null if the value isn't finite.
+     */
+    private static Double finite(double d) {
+        return Double.isNaN(d) || Double.isInfinite(d) ? null : d;
+    }
+    
+    private void writeJsonString(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                writeAscii(String.format("\\u%04x", (int) c));
+            } else {
+                write(c);
+            }
+        }
+    }
+    
+    private void write(int b) {
+        ensure(1);
+        buf[len++] = (byte) b;
+    }
+    
+    private void ensure(int n) {
+        if (len + n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+    }
+}
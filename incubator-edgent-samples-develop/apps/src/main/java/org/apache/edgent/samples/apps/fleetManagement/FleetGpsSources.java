@@ -0,0 +1,126 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+import org.apache.edgent.samples.utils.sensor.SimulatedGpsSensor;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Sources of combined GPS feeds for many vehicles.
+ */
+public class FleetGpsSources {
+    
+    /**
+     * Create a simulated feed for a number of vehicles.
+     * <p>
+     * Each vehicle has its own {@link SimulatedGpsSensor} and every period a
+     * reading from each vehicle is added to the feed.  The first vehicle is
+     * VIN {@code firstVin}, driver {@code driver1}.  Subsequent vehicles have
+     * incrementing VINs and driver ids.
+     * 
+     * @param t the topology
+     * @param nVehicles number of vehicles
+     * @param firstVin the first vehicle's VIN
+     * @param period the reading period
+     * @param unit the unit of {@code period}
+     * @return the combined feed
+     */
+    public static TStream<VehicleGps> simulated(Topology t, int nVehicles, long firstVin,
+            long period, TimeUnit unit) {
+        List<SimulatedGpsSensor> sensors = new ArrayList<>(nVehicles);
+        for (int i = 0; i < nVehicles; i++) {
+            SimulatedGpsSensor sensor = new SimulatedGpsSensor();
+            // stagger the vehicles along the route
+            for (int j = 0; j < i % 15; j++)
+                sensor.nextGps();
+            sensors.add(sensor);
+        }
+        return t.poll(() -> {
+                List<VehicleGps> readings = new ArrayList<>(nVehicles);
+                for (int i = 0; i < nVehicles; i++) {
+                    readings.add(new VehicleGps(Long.toString(firstVin + i), "driver" + (i + 1),
+                            sensors.get(i).nextGps()));
+                }
+                return readings;
+            }, period, unit)
+            .flatMap(readings -> readings);
+    }
+    
+    /**
+     * Create a synthetic fleet feed at an aggregate rate.
+     * <p>
+     * Fixes are generated by the simulator in batches about every 10 milliseconds,
+     * or one at a time for rates below 200 per second, so rates of hundreds
+     * of thousands of fixes per second are possible.  The period between
+     * batches is set in nanoseconds so that the rate isn't truncated.
+     * 
+     * @param t the topology
+     * @param simulator the fleet simulator
+     * @param fixesPerSec the aggregate rate for all of the vehicles
+     * @return the combined feed
+     * @throws IllegalArgumentException if {@code fixesPerSec} is less than 1
+     */
+    public static TStream<VehicleGps> simulatedFleet(Topology t, FleetSimulator simulator,
+            int fixesPerSec) {
+        if (fixesPerSec < 1)
+            throw new IllegalArgumentException("fixesPerSec");
+        int batchSize = Math.max(1, fixesPerSec / 100);
+        long periodNanos = Math.round(batchSize * 1e9 / fixesPerSec);
+        return t.poll(() -> {
+                List<VehicleGps> readings = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    readings.add(simulator.next());
+                }
+                return readings;
+            }, periodNanos, TimeUnit.NANOSECONDS)
+            .flatMap(readings -> readings);
+    }
+    
+    /**
+     * Convert a combined feed of JSON vehicle GPS readings, e.g., subscribed
+     * to from a gateway's MQTT broker.
+     * <p>
+     * The JSON properties are: {@code vin, driver, lat, long, alt, mps, time, course}.
+     * {@code driver}, {@code alt} and {@code course} are optional.
+     * The driver defaults to the VIN.
+     * 
+     * @param readings the JSON readings
+     * @return the vehicle GPS readings
+     */
+    public static TStream<VehicleGps> fromJson(TStream<JsonObject> readings) {
+        return readings.map(j -> new VehicleGps(
+                j.get("vin").getAsString(),
+                j.has("driver") ? j.get("driver").getAsString() : j.get("vin").getAsString(),
+                new GpsSensor(
+                    j.get("lat").getAsDouble(),
+                    j.get("long").getAsDouble(),
+                    j.has("alt") ? j.get("alt").getAsDouble() : 0,
+                    j.get("mps").getAsDouble(),
+                    j.get("time").getAsLong(),
+                    j.has("course") ? j.get("course").getAsDouble() : 0)));
+    }
+}
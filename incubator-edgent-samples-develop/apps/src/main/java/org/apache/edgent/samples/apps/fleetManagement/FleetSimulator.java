@@ -0,0 +1,189 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.util.Random;
+
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+
+/**
+ * A synthetic fleet of vehicles for load generation.
+ * <p>
+ * Each vehicle drives between random waypoints within the
+ * {@link SimulatedGeofence} area, accelerating and decelerating smoothly
+ * toward a per-leg cruising speed.  Episodes of hard braking, hard
+ * acceleration, speeding and leaving the geofence area are randomly
+ * injected.
+ * <p>
+ * Each call to {@link #next()} advances the next vehicle, round robin,
+ * by one simulated second so the generation rate is independent of wall
+ * clock time.  The fix times are in seconds, like {@code SimulatedGpsSensor}.
+ * <p>
+ * A simulator is not thread safe.
+ */
+public class FleetSimulator {
+    
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double MPH = GpsAnalyticsApplication.MILES_PER_HOUR_TO_METERS_PER_SEC;
+    
+    private enum Episode { NONE, HARD_BRAKING, HARD_ACCELERATION, SPEEDING, GEOFENCE_EXIT }
+    
+    private final Vehicle[] vehicles;
+    private final Random random;
+    private final double episodeProbability;
+    private int next;
+    
+    /**
+     * Create a fleet with the default episode probability of 0.002 per
+     * vehicle per second.
+     * @param nVehicles number of vehicles
+     * @param firstVin the first vehicle's VIN. Subsequent vehicles' VINs increment.
+     * @param seed random number generator seed
+     */
+    public FleetSimulator(int nVehicles, long firstVin, long seed) {
+        this(nVehicles, firstVin, seed, 0.002);
+    }
+    
+    /**
+     * Create a fleet.
+     * @param nVehicles number of vehicles
+     * @param firstVin the first vehicle's VIN. Subsequent vehicles' VINs increment.
+     * @param seed random number generator seed
+     * @param episodeProbability probability of an episode starting for
+     *        a vehicle each simulated second
+     */
+    public FleetSimulator(int nVehicles, long firstVin, long seed, double episodeProbability) {
+        this.random = new Random(seed);
+        this.episodeProbability = episodeProbability;
+        long startSec = System.currentTimeMillis() / 1000;
+        vehicles = new Vehicle[nVehicles];
+        for (int i = 0; i < nVehicles; i++) {
+            vehicles[i] = new Vehicle(Long.toString(firstVin + i), "driver" + (i + 1), startSec);
+        }
+    }
+    
+    /**
+     * Get the number of vehicles.
+     * @return the number of vehicles
+     */
+    public int size() {
+        return vehicles.length;
+    }
+    
+    /**
+     * Advance the next vehicle by one second.
+     * @return the vehicle's new fix
+     */
+    public VehicleGps next() {
+        Vehicle v = vehicles[next];
+        if (++next == vehicles.length)
+            next = 0;
+        return v.step();
+    }
+    
+    private double randomLatitude() {
+        return SimulatedGeofence.GEOFENCE_LATITUDE_MIN
+                + random.nextDouble() * (SimulatedGeofence.GEOFENCE_LATITUDE_MAX - SimulatedGeofence.GEOFENCE_LATITUDE_MIN);
+    }
+    
+    private double randomLongitude() {
+        return SimulatedGeofence.GEOFENCE_LONGITUDE_MIN
+                + random.nextDouble() * (SimulatedGeofence.GEOFENCE_LONGITUDE_MAX - SimulatedGeofence.GEOFENCE_LONGITUDE_MIN);
+    }
+    
+    private class Vehicle {
+        final String vin;
+        final String driverId;
+        double lat, lon;
+        double speedMps;
+        double course;
+        long timeSec;
+        double toLat, toLon;
+        double cruiseMps;
+        Episode episode = Episode.NONE;
+        int episodeSec;
+        
+        Vehicle(String vin, String driverId, long timeSec) {
+            this.vin = vin;
+            this.driverId = driverId;
+            this.timeSec = timeSec;
+            lat = randomLatitude();
+            lon = randomLongitude();
+            newLeg();
+        }
+        
+        // pick a new waypoint and cruising speed of 25..65 mph
+        void newLeg() {
+            toLat = randomLatitude();
+            toLon = randomLongitude();
+            cruiseMps = (25 + random.nextInt(41)) * MPH;
+        }
+        
+        VehicleGps step() {
+            timeSec++;
+            if (episode == Episode.NONE && random.nextDouble() < episodeProbability)
+                startEpisode();
+            
+            // accelerate at up to ~1.5 m/s^2 toward the target speed
+            double targetMps = cruiseMps;
+            double maxAccel = 1.5;
+            switch (episode) {
+            case HARD_BRAKING:       targetMps = 0;           maxAccel = 5.0; break;
+            case HARD_ACCELERATION:  targetMps = 65 * MPH;    maxAccel = 3.0; break;
+            case SPEEDING:           targetMps = 85 * MPH;    break;
+            default: break;
+            }
+            double delta = targetMps - speedMps;
+            delta = Math.max(-maxAccel, Math.min(maxAccel, delta));
+            speedMps = Math.max(0, speedMps + delta + random.nextGaussian() * 0.1);
+            if (episode != Episode.NONE && --episodeSec <= 0)
+                episode = Episode.NONE;
+            
+            // head toward the waypoint
+            double dLatM = (toLat - lat) * METERS_PER_DEGREE;
+            double dLonM = (toLon - lon) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+            if (Math.hypot(dLatM, dLonM) < 100) {
+                newLeg();
+            }
+            course = Math.atan2(dLonM, dLatM);
+            lat += speedMps * Math.cos(course) / METERS_PER_DEGREE;
+            lon += speedMps * Math.sin(course) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+            
+            double courseDegrees = (Math.toDegrees(course) + 360) % 360;
+            return new VehicleGps(vin, driverId,
+                    new GpsSensor(lat, lon, 20.0, speedMps, timeSec, courseDegrees));
+        }
+        
+        void startEpisode() {
+            episode = Episode.values()[1 + random.nextInt(Episode.values().length - 1)];
+            switch (episode) {
+            case HARD_BRAKING:       episodeSec = 3; break;
+            case HARD_ACCELERATION:  episodeSec = 4; break;
+            case SPEEDING:           episodeSec = 30; break;
+            case GEOFENCE_EXIT:
+                // a waypoint just beyond the geofence's northern boundary
+                toLat = SimulatedGeofence.GEOFENCE_LATITUDE_MAX + 0.01;
+                toLon = randomLongitude();
+                episode = Episode.NONE;
+                break;
+            default: break;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+/**
+ * A named geofence defined by one or more polygons.
+ * <p>
+ * Each polygon is an outer ring optionally followed by hole rings,
+ * as in a GeoJSON {@code Polygon}.  Rings are arrays of interleaved
+ * {@code longitude, latitude} values (GeoJSON coordinate order).
+ * A point is inside the fence if it's inside any of its polygons.
+ */
+public class Geofence {
+    private final String id;
+    private final double[][][] polygons;
+    private final double minLat, maxLat, minLon, maxLon;
+    
+    /**
+     * Create a geofence.
+     * @param id the fence id
+     * @param polygons {@code [polygon][ring][lon0, lat0, lon1, lat1, ...]}
+     */
+    public Geofence(String id, double[][][] polygons) {
+        this.id = id;
+        this.polygons = polygons;
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (double[][] polygon : polygons) {
+            // the outer ring bounds the polygon
+            double[] ring = polygon[0];
+            for (int i = 0; i < ring.length; i += 2) {
+                minLon = Math.min(minLon, ring[i]);
+                maxLon = Math.max(maxLon, ring[i]);
+                minLat = Math.min(minLat, ring[i+1]);
+                maxLat = Math.max(maxLat, ring[i+1]);
+            }
+        }
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+    }
+    
+    /**
+     * Create a rectangular geofence.
+     * @param id the fence id
+     * @param minLat minimum latitude
+     * @param minLon minimum longitude
+     * @param maxLat maximum latitude
+     * @param maxLon maximum longitude
+     * @return the geofence
+     */
+    public static Geofence rectangle(String id, double minLat, double minLon,
+            double maxLat, double maxLon) {
+        double[] ring = { minLon, minLat, maxLon, minLat, maxLon, maxLat,
+                minLon, maxLat, minLon, minLat };
+        return new Geofence(id, new double[][][] { { ring } });
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public double getMinLatitude() {
+        return minLat;
+    }
+    
+    public double getMaxLatitude() {
+        return maxLat;
+    }
+    
+    public double getMinLongitude() {
+        return minLon;
+    }
+    
+    public double getMaxLongitude() {
+        return maxLon;
+    }
+    
+    /**
+     * Test if a point is within the fence's bounding box.
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @return true if within the bounding box
+     */
+    public boolean boundsContain(double latitude, double longitude) {
+        return latitude >= minLat && latitude <= maxLat
+                && longitude >= minLon && longitude <= maxLon;
+    }
+    
+    /**
+     * Test if a point is inside the fence.
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @return true if inside
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (!boundsContain(latitude, longitude))
+            return false;
+        for (double[][] polygon : polygons) {
+            // even-odd rule across the outer ring and holes
+            boolean inside = false;
+            for (double[] ring : polygon) {
+                if (crossesOdd(ring, latitude, longitude))
+                    inside = !inside;
+            }
+            if (inside)
+                return true;
+        }
+        return false;
+    }
+    
+    // ray casting: does a ray east from the point cross the ring an odd number of times
+    private static boolean crossesOdd(double[] ring, double lat, double lon) {
+        boolean odd = false;
+        int n = ring.length;
+        for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+            double loni = ring[i], lati = ring[i+1];
+            double lonj = ring[j], latj = ring[j+1];
+            if ((lati > lat) != (latj > lat)
+                    && lon < (lonj - loni) * (lat - lati) / (latj - lati) + loni)
+                odd = !odd;
+        }
+        return odd;
+    }
+    
+    @Override
+    public String toString() {
+        return "Geofence " + id;
+    }
+}
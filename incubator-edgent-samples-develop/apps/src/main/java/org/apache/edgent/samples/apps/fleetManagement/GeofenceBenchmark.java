@@ -0,0 +1,96 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simple benchmark of {@link GeofenceEngine} lookups.
+ * <p>
+ * Generates random polygonal fences and vehicles in a 2 x 2 degree
+ * region, then repeatedly moves every vehicle a small random step and
+ * updates the engine, reporting position updates per second.
+ * <p>
+ * Arguments: {@code [nFences [nVehicles [nRounds]]]}.
+ * Defaults are 10000 fences, 10000 vehicles and 20 rounds.
+ */
+public class GeofenceBenchmark {
+    
+    private static final double REGION_LAT = 37.0;
+    private static final double REGION_LON = -122.5;
+    private static final double REGION_DEGREES = 2.0;
+    
+    public static void main(String[] args) {
+        int nFences = args.length > 0 ? Integer.valueOf(args[0]) : 10_000;
+        int nVehicles = args.length > 1 ? Integer.valueOf(args[1]) : 10_000;
+        int nRounds = args.length > 2 ? Integer.valueOf(args[2]) : 20;
+        Random r = new Random(42);
+        
+        long start = System.nanoTime();
+        List<Geofence> fences = new ArrayList<>(nFences);
+        for (int i = 0; i < nFences; i++) {
+            fences.add(randomFence("fence" + i, r));
+        }
+        GeofenceEngine engine = new GeofenceEngine(new GeofenceIndex(fences));
+        System.out.println(String.format("Indexed %d fences in %d ms",
+                nFences, (System.nanoTime() - start) / 1_000_000));
+        
+        double[] lat = new double[nVehicles];
+        double[] lon = new double[nVehicles];
+        String[] vehicleIds = new String[nVehicles];
+        for (int v = 0; v < nVehicles; v++) {
+            lat[v] = REGION_LAT + r.nextDouble() * REGION_DEGREES;
+            lon[v] = REGION_LON + r.nextDouble() * REGION_DEGREES;
+            vehicleIds[v] = "vehicle" + v;
+        }
+        
+        long events = 0;
+        start = System.nanoTime();
+        for (int round = 0; round < nRounds; round++) {
+            for (int v = 0; v < nVehicles; v++) {
+                // ~100m step
+                lat[v] += (r.nextDouble() - 0.5) * 0.002;
+                lon[v] += (r.nextDouble() - 0.5) * 0.002;
+                events += engine.update(vehicleIds[v], lat[v], lon[v], round).size();
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long updates = (long) nRounds * nVehicles;
+        System.out.println(String.format("%d updates, %d enter/exit events in %d ms: %.0f updates/sec, %.2f usec/update",
+                updates, events, elapsedNs / 1_000_000,
+                updates * 1e9 / elapsedNs, elapsedNs / 1e3 / updates));
+    }
+    
+    // a random convex octagon with a radius of ~200m to ~2km
+    private static Geofence randomFence(String id, Random r) {
+        double centerLat = REGION_LAT + r.nextDouble() * REGION_DEGREES;
+        double centerLon = REGION_LON + r.nextDouble() * REGION_DEGREES;
+        double radius = 0.002 + r.nextDouble() * 0.018;
+        int nVertices = 8;
+        double[] ring = new double[(nVertices + 1) * 2];
+        for (int i = 0; i <= nVertices; i++) {
+            double angle = 2 * Math.PI * (i % nVertices) / nVertices;
+            ring[2*i] = centerLon + radius * Math.cos(angle);
+            ring[2*i+1] = centerLat + radius * Math.sin(angle);
+        }
+        return new Geofence(id, new double[][][] { { ring } });
+    }
+}
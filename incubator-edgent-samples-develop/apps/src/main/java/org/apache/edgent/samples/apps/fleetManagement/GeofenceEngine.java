@@ -0,0 +1,123 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.edgent.function.Function;
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+import org.apache.edgent.topology.TStream;
+
+/**
+ * Geofence enter/exit detection for many vehicles.
+ * <p>
+ * Point lookups use a {@link GeofenceIndex}.  The engine remembers
+ * the fences each vehicle was last inside of, and generates
+ * {@link GeofenceEvent}s only when that changes.
+ * <p>
+ * Sample use:
+ * <pre>{@code
+ * GeofenceEngine engine = new GeofenceEngine(new GeofenceIndex(Geofences.loadGeoJson(file)));
+ * TStream<GeofenceEvent> events = engine.events(gps, reading -> reading.getVin(), reading -> reading.getGps());
+ * }</pre>
+ */
+public class GeofenceEngine {
+    
+    private final GeofenceIndex index;
+    private final ConcurrentMap<String,List<Geofence>> lastInside = new ConcurrentHashMap<>();
+    
+    public GeofenceEngine(GeofenceIndex index) {
+        this.index = index;
+    }
+    
+    /**
+     * Get the engine's index.
+     * @return the index
+     */
+    public GeofenceIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * Get the fences a vehicle was last inside of.
+     * @param vehicleId the vehicle
+     * @return the fences. Empty if none or the vehicle is unknown.
+     */
+    public List<Geofence> getInside(String vehicleId) {
+        return lastInside.getOrDefault(vehicleId, Collections.emptyList());
+    }
+    
+    /**
+     * Update a vehicle's position.
+     * <p>
+     * Updates for a single vehicle must not be made concurrently.
+     * Updates for different vehicles may be.
+     * 
+     * @param vehicleId the vehicle
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @param time the time of the position
+     * @return the vehicle's enter and exit events. Empty if none.
+     */
+    public List<GeofenceEvent> update(String vehicleId, double latitude, double longitude, long time) {
+        List<Geofence> inside = index.containing(latitude, longitude);
+        List<Geofence> previous = getInside(vehicleId);
+        if (inside.equals(previous))
+            return Collections.emptyList();
+
+        List<GeofenceEvent> events = new ArrayList<>(2);
+        for (Geofence fence : previous) {
+            if (!inside.contains(fence))
+                events.add(new GeofenceEvent(vehicleId, fence.getId(), GeofenceEvent.Type.EXIT,
+                        latitude, longitude, time));
+        }
+        for (Geofence fence : inside) {
+            if (!previous.contains(fence))
+                events.add(new GeofenceEvent(vehicleId, fence.getId(), GeofenceEvent.Type.ENTER,
+                        latitude, longitude, time));
+        }
+        if (inside.isEmpty())
+            lastInside.remove(vehicleId);
+        else
+            lastInside.put(vehicleId, inside);
+        return events;
+    }
+    
+    /**
+     * Create a stream of geofence events from a stream of vehicle positions.
+     *
+     * @param <T> Tuple type
+     * @param stream the vehicle positions
+     * @param vehicleIdFn function to get a tuple's vehicle id
+     * @param gpsFn function to get a tuple's GPS reading
+     * @return the geofence events
+     */
+    public <T> TStream<GeofenceEvent> events(TStream<T> stream,
+            Function<T,String> vehicleIdFn, Function<T,GpsSensor> gpsFn) {
+        return stream.flatMap(tuple -> {
+                GpsSensor gps = gpsFn.apply(tuple);
+                return update(vehicleIdFn.apply(tuple),
+                        gps.getLatitude(), gps.getLongitude(), gps.getTime());
+            });
+    }
+}
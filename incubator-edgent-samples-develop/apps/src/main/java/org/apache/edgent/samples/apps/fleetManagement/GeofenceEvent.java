@@ -0,0 +1,73 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+/**
+ * A vehicle entering or exiting a geofence.
+ */
+public class GeofenceEvent {
+    
+    public enum Type { ENTER, EXIT }
+    
+    private final String vehicleId;
+    private final String fenceId;
+    private final Type type;
+    private final double latitude;
+    private final double longitude;
+    private final long time;
+    
+    public GeofenceEvent(String vehicleId, String fenceId, Type type,
+            double latitude, double longitude, long time) {
+        this.vehicleId = vehicleId;
+        this.fenceId = fenceId;
+        this.type = type;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.time = time;
+    }
+    
+    public String getVehicleId() {
+        return vehicleId;
+    }
+    
+    public String getFenceId() {
+        return fenceId;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    public long getTime() {
+        return time;
+    }
+    
+    @Override
+    public String toString() {
+        return vehicleId + ", " + type + ", " + fenceId + ", " + latitude + ", " + longitude + ", " + time;
+    }
+}
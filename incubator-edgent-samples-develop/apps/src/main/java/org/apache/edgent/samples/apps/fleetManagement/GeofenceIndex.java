@@ -0,0 +1,128 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid spatial index of geofences.
+ * <p>
+ * Each fence is registered in every grid cell its bounding box overlaps.
+ * A point lookup only tests the fences registered in the point's cell.
+ * Fences whose bounding box spans more than {@code maxCellsPerFence} cells
+ * (e.g., a state or country boundary) are kept in a separate list that's
+ * always tested.
+ * <p>
+ * The index is immutable once created so lookups are thread safe.
+ */
+public class GeofenceIndex {
+    private static final Geofence[] NONE = new Geofence[0];
+    
+    private final double cellDegrees;
+    private final Map<Long,Geofence[]> cells = new HashMap<>();
+    private final Geofence[] large;
+    private final int size;
+    
+    /**
+     * Create an index with 0.01 degree (about 1km) cells.
+     * @param fences the geofences
+     */
+    public GeofenceIndex(Collection<Geofence> fences) {
+        this(fences, 0.01, 10_000);
+    }
+    
+    /**
+     * Create an index.
+     * @param fences the geofences
+     * @param cellDegrees size of a grid cell in degrees
+     * @param maxCellsPerFence fences spanning more cells aren't gridded
+     */
+    public GeofenceIndex(Collection<Geofence> fences, double cellDegrees, int maxCellsPerFence) {
+        this.cellDegrees = cellDegrees;
+        this.size = fences.size();
+        Map<Long,List<Geofence>> grid = new HashMap<>();
+        List<Geofence> large = new ArrayList<>();
+        for (Geofence fence : fences) {
+            int lat0 = cell(fence.getMinLatitude()), lat1 = cell(fence.getMaxLatitude());
+            int lon0 = cell(fence.getMinLongitude()), lon1 = cell(fence.getMaxLongitude());
+            if ((long)(lat1 - lat0 + 1) * (lon1 - lon0 + 1) > maxCellsPerFence) {
+                large.add(fence);
+                continue;
+            }
+            for (int lat = lat0; lat <= lat1; lat++) {
+                for (int lon = lon0; lon <= lon1; lon++) {
+                    grid.computeIfAbsent(key(lat, lon), k -> new ArrayList<>(2)).add(fence);
+                }
+            }
+        }
+        for (Map.Entry<Long,List<Geofence>> e : grid.entrySet()) {
+            cells.put(e.getKey(), e.getValue().toArray(NONE));
+        }
+        this.large = large.toArray(NONE);
+    }
+    
+    /**
+     * Get the number of indexed fences.
+     * @return the number of fences
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Get the fences containing a point.
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @return the containing fences. Empty if none.
+     */
+    public List<Geofence> containing(double latitude, double longitude) {
+        List<Geofence> result = null;
+        Geofence[] candidates = cells.get(key(cell(latitude), cell(longitude)));
+        if (candidates != null) {
+            for (Geofence fence : candidates) {
+                if (fence.contains(latitude, longitude)) {
+                    if (result == null)
+                        result = new ArrayList<>(2);
+                    result.add(fence);
+                }
+            }
+        }
+        for (Geofence fence : large) {
+            if (fence.contains(latitude, longitude)) {
+                if (result == null)
+                    result = new ArrayList<>(2);
+                result.add(fence);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+    
+    private int cell(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+    
+    private static long key(int lat, int lon) {
+        return ((long) lat << 32) | (lon & 0xffffffffL);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Geofence utilities.
+ */
+public class Geofences {
+    
+    /**
+     * Load geofences from a GeoJSON file.
+     * @param file the GeoJSON file
+     * @return the geofences
+     * @throws IOException if the file can't be read
+     * @see #fromGeoJson(Reader)
+     */
+    public static List<Geofence> loadGeoJson(File file) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return fromGeoJson(reader);
+        }
+    }
+    
+    /**
+     * Create geofences from a GeoJSON document.
+     * <p>
+     * The document may be a {@code FeatureCollection}, a {@code Feature}
+     * or a geometry.  {@code Polygon} and {@code MultiPolygon} geometries
+     * are converted to fences; other geometries are ignored.
+     * A fence's id is the feature's {@code id}, or its {@code name} property,
+     * or its position in the document.
+     * 
+     * @param reader the GeoJSON document
+     * @return the geofences
+     * @throws IllegalArgumentException if the document is malformed
+     */
+    public static List<Geofence> fromGeoJson(Reader reader) {
+        JsonObject doc = new JsonParser().parse(reader).getAsJsonObject();
+        List<Geofence> fences = new ArrayList<>();
+        String type = doc.get("type").getAsString();
+        if ("FeatureCollection".equals(type)) {
+            for (JsonElement feature : doc.getAsJsonArray("features")) {
+                addFeature(fences, feature.getAsJsonObject());
+            }
+        }
+        else if ("Feature".equals(type)) {
+            addFeature(fences, doc);
+        }
+        else {
+            addGeometry(fences, "fence0", doc);
+        }
+        return fences;
+    }
+    
+    private static void addFeature(List<Geofence> fences, JsonObject feature) {
+        String id = null;
+        if (feature.has("id"))
+            id = feature.get("id").getAsString();
+        else if (feature.has("properties") && feature.get("properties").isJsonObject()
+                && feature.getAsJsonObject("properties").has("name"))
+            id = feature.getAsJsonObject("properties").get("name").getAsString();
+        else
+            id = "fence" + fences.size();
+        JsonElement geometry = feature.get("geometry");
+        if (geometry != null && geometry.isJsonObject())
+            addGeometry(fences, id, geometry.getAsJsonObject());
+    }
+    
+    private static void addGeometry(List<Geofence> fences, String id, JsonObject geometry) {
+        String type = geometry.get("type").getAsString();
+        JsonArray coordinates = geometry.getAsJsonArray("coordinates");
+        if ("Polygon".equals(type)) {
+            fences.add(new Geofence(id, new double[][][] { polygon(coordinates) }));
+        }
+        else if ("MultiPolygon".equals(type)) {
+            double[][][] polygons = new double[coordinates.size()][][];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = polygon(coordinates.get(i).getAsJsonArray());
+            }
+            fences.add(new Geofence(id, polygons));
+        }
+    }
+    
+    private static double[][] polygon(JsonArray rings) {
+        if (rings.size() == 0)
+            throw new IllegalArgumentException("Polygon without rings");
+        double[][] polygon = new double[rings.size()][];
+        for (int i = 0; i < polygon.length; i++) {
+            JsonArray positions = rings.get(i).getAsJsonArray();
+            double[] ring = new double[positions.size() * 2];
+            for (int j = 0; j < positions.size(); j++) {
+                JsonArray position = positions.get(j).getAsJsonArray();
+                ring[2*j] = position.get(0).getAsDouble();
+                ring[2*j+1] = position.get(1).getAsDouble();
+            }
+            polygon[i] = ring;
+        }
+        return polygon;
+    }
+}
@@ -18,21 +18,32 @@ under the License.
 */
 package org.apache.edgent.samples.apps.fleetManagement;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.math3.util.Pair;
 import org.apache.edgent.connectors.iot.QoS;
+import org.apache.edgent.connectors.mqtt.MqttConfig;
+import org.apache.edgent.connectors.mqtt.MqttStreams;
+import org.apache.edgent.samples.apps.PairwiseDelta;
 import org.apache.edgent.samples.utils.sensor.GpsSensor;
-import org.apache.edgent.samples.utils.sensor.SimulatedGpsSensor;
 import org.apache.edgent.topology.TStream;
-import org.apache.edgent.topology.TWindow;
 import org.apache.edgent.topology.Topology;
+import org.apache.edgent.topology.plumbing.PlumbingStreams;
 
 import com.google.gson.JsonObject;
 
 /**
  * GPS analytics
  * <p>
- * Source is a stream of GPS sensor data {@link GpsSensor}
+ * Source is a combined stream of GPS sensor data {@link GpsSensor} from
+ * one or more vehicles, {@link VehicleGps}.  All of the analytics are
+ * keyed by the vehicle's VIN.
  * <p>
  * Here's an outline of the topology
  * <ul>
@@ -40,15 +51,41 @@ import com.google.gson.JsonObject;
  * server application to display the vehicle on a map.</li>
  * <li>Filter to detect speeds above a threshold and publish alert IotF</li>
  * <li>Filter for GPS coordinates that are outside of a defined Geofence
- * boundary</li>
- * <li>Windowing to detect hard driving: hard braking or hard acceleration and
- * publish alert to IotF</li>
+ * boundary, or when the {@code fleet.geofences.geojson} property names a
+ * GeoJSON file of geofences, detect entering and exiting any of them</li>
+ * <li>A fix is encoded once, with flags for the location, speeding and
+ * geofence events it triggers, and that one encoding is published for each
+ * of them.  See {@link FleetEventEncoder}.</li>
+ * <li>Compare consecutive readings of a vehicle to detect hard driving:
+ * hard braking or hard acceleration and publish alert to IotF</li>
  * </ul>
+ * <p>
+ * The number of simulated vehicles is set by the {@code fleet.vehicles} property
+ * (default 1).  When the {@code fleet.parallelism} property is greater than 1 the
+ * vehicles are partitioned by VIN across that many parallel channels.
+ * A vehicle is always processed by the same channel so its state isn't shared.
+ * <p>
+ * When the {@code fleet.simulator.rate} property is set, a {@link FleetSimulator}
+ * generates that many fixes per second for the vehicles instead.
+ * Logging of the events to System.out can be disabled with
+ * {@code fleet.events.log=false}.
+ * <p>
+ * When the {@code fleet.events.mqtt.format} property is {@code json} or
+ * {@code cbor}, the GPS location, speeding and simple geofence events are
+ * encoded in that format and published as byte payloads to MQTT topic
+ * {@code <fleet.events.mqtt.topic>/<eventType>/<driverId>} instead of to IotF.
+ * The topic prefix defaults to {@code fleet/events} and the MQTT connection
+ * is configured by the {@code mqtt.*} properties, see
+ * {@link MqttConfig#fromProperties(java.util.Properties)}.
  */
 public class GpsAnalyticsApplication {
 
     private final FleetManagementAnalyticsClientApplication app;
     private final Topology topology;
+    private GeofenceEngine geofenceEngine;
+    private boolean logEvents;
+    private final FleetEventEncoder.Format mqttFormat;
+    private final String mqttTopic;
 
     // TODO: make these configurable properties
     boolean trackGpsLocation = true;
@@ -58,7 +95,6 @@ public class GpsAnalyticsApplication {
     // Hard braking and acceleration thresholds may depend on the vehicle model
     double hardBrakingThreshold_MphPerSec = -8.25;
     double hardAccelerationThreshold_MphPerSec = 7.37;
-    String driverId = "driver1";
     String VIN = "123456";
     double maxSpeed_Mph = 70;
 
@@ -68,57 +104,111 @@ public class GpsAnalyticsApplication {
     double MAX_SPEED_METERS_PER_SEC = maxSpeed_Mph * MILES_PER_HOUR_TO_METERS_PER_SEC;
     static double MPS_TO_MPH = 3.6;
 
+    // The published events are enveloped with their device eventId
+    private static final String KEY_EVENT_ID = "eventId";
+    private static final String KEY_PAYLOAD = "payload";
+
     public GpsAnalyticsApplication(Topology t, FleetManagementAnalyticsClientApplication app) {
         this.topology = t;
         this.app = app;
+        this.logEvents = Boolean.valueOf(app.config().getProperty("fleet.events.log", "true"));
+        String format = app.config().getProperty("fleet.events.mqtt.format");
+        this.mqttFormat = format == null ? null : FleetEventEncoder.Format.valueOf(format.toUpperCase());
+        this.mqttTopic = app.config().getProperty("fleet.events.mqtt.topic", "fleet/events");
     }
 
     /**
-     * Add the GPS sensor analytics to the topology.
+     * Add the GPS sensor analytics for a simulated fleet to the topology.
      */
     public void addAnalytics() {
 
         // Generate source GPS data
-        SimulatedGpsSensor g = new SimulatedGpsSensor();
-        TStream<GpsSensor> gpsSensor = topology.poll(() -> g.nextGps(), 500, TimeUnit.MILLISECONDS);
-
-        // Publish GPS data to IotF every 1 second
-        if (trackGpsLocation) {
-            TStream<GpsSensor> logGps = gpsSensor.peek(t -> System.out.println("log GPS: " + t.toString()));
-            logGps.tag("logGps");
-            // Publish GPS location to IotF
-            app.iotDevice().events(JsonGps(logGps), "GPS: " + driverId, QoS.FIRE_AND_FORGET);
+        int nVehicles = Integer.valueOf(app.config().getProperty("fleet.vehicles", "1"));
+        String simulatorRate = app.config().getProperty("fleet.simulator.rate");
+        TStream<VehicleGps> gps;
+        if (simulatorRate != null) {
+            // Synthetic fleet load at an aggregate fixes per second rate
+            gps = FleetGpsSources.simulatedFleet(topology,
+                    new FleetSimulator(nVehicles, Long.valueOf(VIN), System.nanoTime()),
+                    Integer.valueOf(simulatorRate));
+        } else {
+            gps = FleetGpsSources.simulated(topology, nVehicles,
+                    Long.valueOf(VIN), 500, TimeUnit.MILLISECONDS);
         }
+        gps.tag("fleetGps");
+
+        addAnalytics(gps);
+    }
+
+    /**
+     * Add the GPS sensor analytics for a combined feed of vehicles to the topology.
+     * @param gps the vehicles' GPS readings
+     */
+    public void addAnalytics(TStream<VehicleGps> gps) {
 
-        // Filter for actual speeding and publish to IoTF and local file
-        if (trackSpeeding) {
-            TStream<GpsSensor> speeding = gpsSensor.filter(t -> t.getSpeedMetersPerSec() > MAX_SPEED_METERS_PER_SEC);
+        String geofencesPath = app.config().getProperty("fleet.geofences.geojson");
+        if (trackGeofence && geofencesPath != null) {
+            geofenceEngine = newGeofenceEngine(geofencesPath);
+        }
 
-            speeding.tag("speeding");
-            // Count speeding tuples
-            // TODO investigate why publish doesn't appear to work when a
-            // counter is set
-            // Metrics.counter(speeding);
+        // Publish the fix events as byte payloads to MQTT
+        if (mqttFormat != null) {
+            publishFixEvents(gps);
+            if (!(trackGeofence && geofenceEngine != null) && !trackHardDriving)
+                return;
+        }
 
-            speeding.peek(t -> System.out.println("Alert: speeding - " + t.toString()));
-            // Write speeding event to IotF
-            app.iotDevice().events(JsonSpeed(speeding), "Speeding: " + driverId, QoS.FIRE_AND_FORGET);
+        int width = Integer.valueOf(app.config().getProperty("fleet.parallelism", "1"));
+        TStream<JsonObject> events;
+        if (width > 1) {
+            // Partition the vehicles by VIN across the channels
+            events = PlumbingStreams.parallel(gps, width,
+                    t -> Math.floorMod(t.getVin().hashCode(), width),
+                    (channel, ch) -> vehicleAnalytics(channel));
+        } else {
+            events = vehicleAnalytics(gps);
         }
 
-        // Filter for Geofence boundary exceptions and publish to IoTF
-        if (trackGeofence) {
-            TStream<GpsSensor> geofence = gpsSensor
-                    .filter(t -> SimulatedGeofence.outsideGeofence(t.getLatitude(), t.getLongitude()));
+        // Publish the events to IotF
+        app.iotDevice().events(events,
+                j -> j.get(KEY_EVENT_ID).getAsString(),
+                j -> j.getAsJsonObject(KEY_PAYLOAD),
+                j -> QoS.FIRE_AND_FORGET);
+    }
+
+    private TStream<JsonObject> vehicleAnalytics(TStream<VehicleGps> gpsSensor) {
+
+        List<TStream<JsonObject>> events = new ArrayList<>();
 
-            geofence.tag("geofence");
-            // Count Geofence exceptions
-            // TODO investigate why publish doesn't appear to work when a
-            // counter is set
-            // Metrics.counter(geofence);
+        // Flag each fix with the GPS location, speeding and simple geofence
+        // events it triggers, encode it once and publish that one
+        // encoding for each of the flagged events, unless they're published
+        // to MQTT.
+        boolean simulatedGeofence = trackGeofence && geofenceEngine == null;
+        if (mqttFormat == null && (trackGpsLocation || trackSpeeding || simulatedGeofence)) {
+            TStream<JsonObject> fixEvents = gpsSensor.flatMap(v -> {
+                int flags = fixFlags(v);
+                if (flags == 0)
+                    return Collections.emptyList();
+                logFix(v, flags);
+
+                JsonObject payload = FleetEventEncoder.toJsonObject(v, flags);
+                String[] eventTypes = FleetEventEncoder.eventTypes(flags);
+                List<JsonObject> results = new ArrayList<>(eventTypes.length);
+                for (String eventType : eventTypes) {
+                    results.add(event(eventType, v.getDriverId(), payload));
+                }
+                return results;
+            });
+            fixEvents.tag("fixEvents");
+            events.add(fixEvents);
+        }
 
-            geofence.peek(t -> System.out.println("Alert: geofence - " + t.toString()));
-            // Write Geofence exceptions to IotF
-            app.iotDevice().events(JsonGeofence(geofence), "Geofence: " + driverId, QoS.FIRE_AND_FORGET);
+        // Detect entering and exiting any of the configured geofences
+        if (trackGeofence && geofenceEngine != null) {
+            TStream<JsonObject> geofenceEvents = JsonGeofenceEvents(gpsSensor);
+            geofenceEvents.tag("geofenceEvents");
+            events.add(geofenceEvents);
         }
 
         /*
@@ -128,87 +218,145 @@ public class GpsAnalyticsApplication {
          * 3.6 kph
          */
         if (trackHardDriving) {
-            TStream<GpsSensor> hardDriving = gpsSensor;
-            // TODO replace hardcoded "2" in "last(2," to force seeing
-            // hardDriving alter
-            TWindow<GpsSensor, Object> window = hardDriving.last(2, tuple -> 0);
-            TStream<GpsSensor[]> logHardDriving = window.batch((tuples, key) -> {
-                GpsSensor[] results = null;
-                Object[] tuplesArray = tuples.toArray();
-
-                GpsSensor gps1 = (GpsSensor) tuplesArray[1];
-                GpsSensor gps0 = (GpsSensor) tuplesArray[0];
-                double speed1 = gps1.getSpeedMetersPerSec();
-                double speed0 = gps0.getSpeedMetersPerSec();
-                long time1 = gps1.getTime();
-                long time0 = gps0.getTime();
-
-                // Check for hard braking or hard acceleration
-                // Avoid division by 0
-                if (time1 - time0 != 0) {
-                    double mphPerSec = (speed1 - speed0) / (time1 - time0) * MPS_TO_MPH;
-                    if (mphPerSec < hardBrakingThreshold_MphPerSec || mphPerSec > hardAccelerationThreshold_MphPerSec) {
-                        results = new GpsSensor[2];
-                        results[0] = gps0;
-                        results[1] = gps1;
-                    }
-                }
-                return results;
-            }).peek(t -> System.out.println("hardDriving: t0=" + t[0].toString() + " t[1]=" + t[1].toString()))
+            // Compare each reading with the vehicle's previous reading.
+            // Nothing is generated, or allocated, unless a threshold is crossed.
+            TStream<HardDrivingEvent> logHardDriving = PairwiseDelta.pairwise(gpsSensor,
+                    tuple -> tuple.getVin(),
+                    (v0, v1) -> {
+                        GpsSensor gps0 = v0.getGps();
+                        GpsSensor gps1 = v1.getGps();
+                        long time1 = gps1.getTime();
+                        long time0 = gps0.getTime();
+
+                        // Check for hard braking or hard acceleration
+                        // Avoid division by 0
+                        if (time1 - time0 == 0)
+                            return null;
+                        double mphPerSec = (gps1.getSpeedMetersPerSec() - gps0.getSpeedMetersPerSec())
+                                / (time1 - time0) * MPS_TO_MPH;
+                        if (mphPerSec < hardBrakingThreshold_MphPerSec || mphPerSec > hardAccelerationThreshold_MphPerSec)
+                            return new HardDrivingEvent(v0, v1, mphPerSec);
+                        return null;
+                    })
+                    .peek(t -> { if (logEvents) System.out.println("hardDriving: " + t.toString()); })
                     .tag("hardDriving");
 
-            app.iotDevice().events(JsonHardDriving(logHardDriving), "hardDriving: " + driverId, QoS.FIRE_AND_FORGET);
+            events.add(JsonHardDriving(logHardDriving));
         }
+
+        if (events.isEmpty())
+            throw new IllegalStateException("No fleet events are tracked: enable one of"
+                    + " trackGpsLocation, trackSpeeding, trackGeofence or trackHardDriving");
+        return events.get(0).union(new HashSet<>(events.subList(1, events.size())));
     }
 
-    private TStream<JsonObject> JsonGps(TStream<GpsSensor> gpsSensor) {
-        return gpsSensor.map(t -> {
-            JsonObject j = new JsonObject();
-            j.addProperty("lat", t.getLatitude());
-            j.addProperty("long", t.getLongitude());
-            j.addProperty("alt", t.geAltitude());
-            j.addProperty("mph", t.getSpeedMetersPerSec() * METERS_PER_HOUR_TO_MILES_PER_SEC);
-            j.addProperty("course", t.getCourse());
-            j.addProperty("time", t.getTime());
-            return j;
-        });
+    private GeofenceEngine newGeofenceEngine(String geofencesPath) {
+        try {
+            List<Geofence> fences = Geofences.loadGeoJson(new File(geofencesPath));
+            System.out.println("Loaded " + fences.size() + " geofences from " + geofencesPath);
+            return new GeofenceEngine(new GeofenceIndex(fences));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load geofences from " + geofencesPath, e);
+        }
     }
 
-    private TStream<JsonObject> JsonSpeed(TStream<GpsSensor> gpsSensor) {
-        return gpsSensor.map(t -> {
-            JsonObject j = new JsonObject();
-            j.addProperty("lat", t.getLatitude());
-            j.addProperty("long", t.getLongitude());
-            j.addProperty("mph", t.getSpeedMetersPerSec() * METERS_PER_HOUR_TO_MILES_PER_SEC);
-            j.addProperty("time", t.getTime());
-            return j;
+    // The GPS location, speeding and simple geofence events a fix triggers
+    private int fixFlags(VehicleGps v) {
+        GpsSensor t = v.getGps();
+        int flags = 0;
+        if (trackGpsLocation)
+            flags |= FleetEventEncoder.GPS;
+        if (trackSpeeding && t.getSpeedMetersPerSec() > MAX_SPEED_METERS_PER_SEC)
+            flags |= FleetEventEncoder.SPEEDING;
+        if (trackGeofence && geofenceEngine == null
+                && SimulatedGeofence.outsideGeofence(t.getLatitude(), t.getLongitude()))
+            flags |= FleetEventEncoder.OUTSIDE_GEOFENCE;
+        return flags;
+    }
+
+    private void publishFixEvents(TStream<VehicleGps> gps) {
+        // The stream's fixes are encoded serially so they share one encoder, and buffer
+        FleetEventEncoder encoder = new FleetEventEncoder(mqttFormat);
+        TStream<Pair<String,byte[]>> fixEvents = gps.flatMap(v -> {
+            int flags = fixFlags(v);
+            if (flags == 0)
+                return Collections.emptyList();
+            logFix(v, flags);
+
+            byte[] payload = encoder.encode(v, flags);
+            String[] eventTypes = FleetEventEncoder.eventTypes(flags);
+            List<Pair<String,byte[]>> results = new ArrayList<>(eventTypes.length);
+            for (String eventType : eventTypes) {
+                results.add(new Pair<>(mqttTopic + "/" + eventType + "/" + v.getDriverId(), payload));
+            }
+            return results;
         });
+        fixEvents.tag("fixEvents");
+
+        MqttStreams mqtt = new MqttStreams(topology, () -> MqttConfig.fromProperties(app.config()));
+        mqtt.publish(fixEvents, e -> e.getKey(), e -> e.getValue(),
+                e -> QoS.FIRE_AND_FORGET, e -> false);
     }
 
-    private TStream<JsonObject> JsonGeofence(TStream<GpsSensor> gpsSensor) {
-        return gpsSensor.map(t -> {
-            JsonObject j = new JsonObject();
-            j.addProperty("lat", t.getLatitude());
-            j.addProperty("long", t.getLongitude());
-            j.addProperty("time", t.getTime());
-            return j;
+    // Envelope an event payload with its device eventId, e.g., "GPS: driver1"
+    private static JsonObject event(String event, String driverId, JsonObject payload) {
+        JsonObject j = new JsonObject();
+        j.addProperty(KEY_EVENT_ID, event + ": " + driverId);
+        j.add(KEY_PAYLOAD, payload);
+        return j;
+    }
+
+    private void logFix(VehicleGps v, int flags) {
+        if (!logEvents)
+            return;
+        if ((flags & FleetEventEncoder.GPS) != 0)
+            System.out.println("log GPS: " + v.toString());
+        if ((flags & FleetEventEncoder.SPEEDING) != 0)
+            System.out.println("Alert: speeding - " + v.toString());
+        if ((flags & FleetEventEncoder.OUTSIDE_GEOFENCE) != 0)
+            System.out.println("Alert: geofence - " + v.toString());
+    }
+
+    private TStream<JsonObject> JsonGeofenceEvents(TStream<VehicleGps> gpsSensor) {
+        return gpsSensor.flatMap(v -> {
+            GpsSensor t = v.getGps();
+            List<GeofenceEvent> fenceEvents = geofenceEngine.update(v.getVin(),
+                    t.getLatitude(), t.getLongitude(), t.getTime());
+            if (fenceEvents.isEmpty())
+                return Collections.emptyList();
+            List<JsonObject> results = new ArrayList<>(fenceEvents.size());
+            for (GeofenceEvent e : fenceEvents) {
+                if (logEvents)
+                    System.out.println("Alert: geofence - " + e.toString());
+                JsonObject j = new JsonObject();
+                j.addProperty("vin", e.getVehicleId());
+                j.addProperty("fence", e.getFenceId());
+                j.addProperty("event", e.getType().name());
+                j.addProperty("lat", e.getLatitude());
+                j.addProperty("long", e.getLongitude());
+                j.addProperty("time", e.getTime());
+                results.add(event("Geofence", v.getDriverId(), j));
+            }
+            return results;
         });
     }
 
-    private TStream<JsonObject> JsonHardDriving(TStream<GpsSensor[]> gpsSensors) {
-        return gpsSensors.map(t -> {
+    private TStream<JsonObject> JsonHardDriving(TStream<HardDrivingEvent> hardDriving) {
+        return hardDriving.map(e -> {
+            GpsSensor t0 = e.getPrevious().getGps();
+            GpsSensor t1 = e.getCurrent().getGps();
             JsonObject j = new JsonObject();
-            j.addProperty("lat1", t[0].getLatitude());
-            j.addProperty("long1", t[0].getLongitude());
-            j.addProperty("time1", t[0].getTime());
-            j.addProperty("speed1", t[0].getSpeedMetersPerSec());
-            j.addProperty("lat2", t[1].getLatitude());
-            j.addProperty("long2", t[1].getLongitude());
-            j.addProperty("time2", t[1].getTime());
-            j.addProperty("speed2", t[1].getSpeedMetersPerSec());
-            j.addProperty("mphPerSec", (t[1].getSpeedMetersPerSec() - t[0].getSpeedMetersPerSec()) * MPS_TO_MPH
-                    / (t[1].getTime() - t[0].getTime()));
-            return j;
+            j.addProperty("vin", e.getCurrent().getVin());
+            j.addProperty("lat1", t0.getLatitude());
+            j.addProperty("long1", t0.getLongitude());
+            j.addProperty("time1", t0.getTime());
+            j.addProperty("speed1", t0.getSpeedMetersPerSec());
+            j.addProperty("lat2", t1.getLatitude());
+            j.addProperty("long2", t1.getLongitude());
+            j.addProperty("time2", t1.getTime());
+            j.addProperty("speed2", t1.getSpeedMetersPerSec());
+            j.addProperty("mphPerSec", e.getMphPerSec());
+            return event("hardDriving", e.getCurrent().getDriverId(), j);
         });
     }
 }
@@ -0,0 +1,63 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+/**
+ * A hard braking or hard acceleration event.
+ */
+public class HardDrivingEvent {
+    private final VehicleGps previous;
+    private final VehicleGps current;
+    private final double mphPerSec;
+    
+    public HardDrivingEvent(VehicleGps previous, VehicleGps current, double mphPerSec) {
+        this.previous = previous;
+        this.current = current;
+        this.mphPerSec = mphPerSec;
+    }
+    
+    /**
+     * Get the reading before the speed change.
+     * @return the reading
+     */
+    public VehicleGps getPrevious() {
+        return previous;
+    }
+    
+    /**
+     * Get the reading after the speed change.
+     * @return the reading
+     */
+    public VehicleGps getCurrent() {
+        return current;
+    }
+    
+    /**
+     * Get the change in speed between the readings.
+     * @return the change, negative for braking
+     */
+    public double getMphPerSec() {
+        return mphPerSec;
+    }
+    
+    @Override
+    public String toString() {
+        return "t0=" + previous + " t1=" + current + " mphPerSec=" + mphPerSec;
+    }
+}
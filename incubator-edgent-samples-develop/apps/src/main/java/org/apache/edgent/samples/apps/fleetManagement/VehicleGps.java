@@ -0,0 +1,57 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.fleetManagement;
+
+import org.apache.edgent.samples.utils.sensor.GpsSensor;
+
+/**
+ * A GPS reading from a vehicle in a fleet.
+ */
+public class VehicleGps {
+    private final String vin;
+    private final String driverId;
+    private final GpsSensor gps;
+    
+    public VehicleGps(String vin, String driverId, GpsSensor gps) {
+        this.vin = vin;
+        this.driverId = driverId;
+        this.gps = gps;
+    }
+    
+    /**
+     * Get the vehicle identification number.  The fleet analytics are keyed by it.
+     * @return the VIN
+     */
+    public String getVin() {
+        return vin;
+    }
+    
+    public String getDriverId() {
+        return driverId;
+    }
+    
+    public GpsSensor getGps() {
+        return gps;
+    }
+    
+    @Override
+    public String toString() {
+        return vin + ", " + driverId + ", " + gps;
+    }
+}
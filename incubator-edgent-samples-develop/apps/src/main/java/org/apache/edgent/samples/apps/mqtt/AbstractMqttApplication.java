@@ -22,9 +22,12 @@ import static org.apache.edgent.connectors.iot.IotDevice.CMD_PAYLOAD;
 
 import java.util.Arrays;
 
+import org.apache.edgent.connectors.iot.IotDevice;
 import org.apache.edgent.connectors.mqtt.iot.MqttDevice;
 import org.apache.edgent.samples.apps.AbstractApplication;
 import org.apache.edgent.samples.apps.ApplicationUtilities;
+import org.apache.edgent.samples.apps.BatchingIotDevice;
+import org.apache.edgent.samples.apps.CommandDispatcher;
 import org.apache.edgent.samples.apps.TopologyProviderFactory;
 import org.apache.edgent.topology.Topology;
 
@@ -45,11 +48,14 @@ import com.google.gson.JsonObject;
  * <li>Provides a {@link TopologyProviderFactory}</li>
  * <li>Provides a {@link ApplicationUtilities}</li>
  * <li>Provides a {@link MqttDevice}</li>
+ * <li>Optional event batching, see {@link BatchingIotDevice}</li>
  * </ul>
  */
 public abstract class AbstractMqttApplication extends AbstractApplication {
     
     private MqttDevice mqttDevice;
+    private IotDevice iotDevice;
+    private CommandDispatcher commandDispatcher;
     
     public AbstractMqttApplication(String propsPath) throws Exception {
         super(propsPath);
@@ -60,6 +66,8 @@ public abstract class AbstractMqttApplication extends AbstractApplication {
         // Add an MQTT device communication manager to the topology
         updateTopicPrefix();
         mqttDevice = new MqttDevice(t, props);
+        iotDevice = BatchingIotDevice.fromConfig(mqttDevice, props);
+        commandDispatcher = new CommandDispatcher(iotDevice);
         System.out.println("MqttDevice serverURLs " + Arrays.toString(mqttDevice.getMqttConfig().getServerURLs()));
         System.out.println("MqttDevice clientId " + mqttDevice.getMqttConfig().getClientId());
         System.out.println("MqttDevice deviceId " + props.getProperty("mqttDevice.id"));
@@ -75,6 +83,29 @@ public abstract class AbstractMqttApplication extends AbstractApplication {
         return mqttDevice;
     }
     
+    /**
+     * Get the application's device for publishing events and
+     * receiving commands.
+     * <p>
+     * This is the {@link #mqttDevice()}, wrapped in a {@link BatchingIotDevice}
+     * when event batching is configured.
+     * @return the IotDevice
+     */
+    public IotDevice iotDevice() {
+        return iotDevice;
+    }
+    
+    /**
+     * Get the application's dispatcher for the {@link #iotDevice()} commands.
+     * <p>
+     * All of the application's command handlers share
+     * a single subscription to the device's commands.
+     * @return the dispatcher
+     */
+    public CommandDispatcher commandDispatcher() {
+        return commandDispatcher;
+    }
+    
     private void updateTopicPrefix() {
         String val = props.getProperty("mqttDevice.topic.prefix");
         if (val != null) {
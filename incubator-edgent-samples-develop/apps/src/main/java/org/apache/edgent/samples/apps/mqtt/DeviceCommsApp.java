@@ -18,11 +18,22 @@ under the License.
 */
 package org.apache.edgent.samples.apps.mqtt;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.util.Pair;
 import org.apache.edgent.connectors.iot.QoS;
 import org.apache.edgent.connectors.mqtt.MqttStreams;
+import org.apache.edgent.samples.apps.StartupTimeline;
 import org.apache.edgent.topology.TStream;
 import org.apache.edgent.topology.Topology;
 import org.apache.edgent.topology.json.JsonFunctions;
+import org.apache.edgent.topology.plumbing.PlumbingStreams;
 
 import com.google.gson.JsonObject;
 
@@ -35,12 +46,24 @@ import com.google.gson.JsonObject;
  * <p>
  * This client avoids the need for other MQTT clients (e.g., from a mosquitto
  * installation) to observe and control the applications.
+ * <p>
+ * In {@code watch} mode each event is written to System.out.  The payloads
+ * are decoded on {@code deviceComms.watch.threads} parallel channels
+ * (default 2, partitioned by topic so a topic's events stay in order)
+ * and the output is buffered and flushed every
+ * {@code deviceComms.watch.flush.msec} (default 200).
+ * <p>
+ * In {@code watch summary} mode, for watching high volume topics,
+ * the events aren't written. Instead, every {@code deviceComms.watch.summary.sec}
+ * (default 5) the messages/sec, bytes/sec and 99th percentile message size
+ * of each topic are written.
  */
 public class DeviceCommsApp extends AbstractMqttApplication {
     
-    private static final String usage = "Usage: watch | send <cmdLabel> <cmdArg>";
+    private static final String usage = "Usage: watch [summary] | send <cmdLabel> <cmdArg>";
 
     private String mode;
+    private boolean summary;
     private String cmdLabel;
     private String cmdArg;
     
@@ -60,6 +83,11 @@ public class DeviceCommsApp extends AbstractMqttApplication {
                 application.cmdLabel = args[i++];
                 application.cmdArg = args[i++];
             }
+            else if (i < args.length) {
+                if (!"summary".equals(args[i]))
+                    throw new IllegalArgumentException("Unsupported watch option: "+args[i]);
+                application.summary = true;
+            }
         
             application.run();
         }
@@ -102,13 +130,56 @@ public class DeviceCommsApp extends AbstractMqttApplication {
         else if (mode.equals("watch")) {
             String topicFilter = mqttDevice().eventTopic(null);
             System.out.println("Watching topic filter "+topicFilter);
-            TStream<String> events = mqtt.subscribe(topicFilter, QoS.FIRE_AND_FORGET,
-                    (topic,payload) -> { 
-                        String s = "\n# topic "+topic;
-                        s += "\n" + new String(payload);
-                        return s;
-                    });
-            events.print();
+            if (summary)
+                watchSummary(t, mqtt, topicFilter);
+            else
+                watch(t, mqtt, topicFilter);
+        }
+    }
+    
+    private void watch(Topology t, MqttStreams mqtt, String topicFilter) {
+        // Just capture the message in the subscriber's thread
+        // and decode it on the parallel channels.
+        TStream<Pair<String,byte[]>> msgs = mqtt.subscribe(topicFilter, QoS.FIRE_AND_FORGET,
+                (topic,payload) -> new Pair<>(topic, payload));
+        
+        int width = Integer.valueOf(config().getProperty("deviceComms.watch.threads", "2"));
+        TStream<String> events;
+        if (width > 1) {
+            events = PlumbingStreams.parallel(msgs, width,
+                    msg -> Math.floorMod(msg.getFirst().hashCode(), width),
+                    (channel, ch) -> channel.map(DeviceCommsApp::format));
+        }
+        else {
+            events = msgs.map(DeviceCommsApp::format);
         }
+        
+        PrintWriter console = bufferedConsole();
+        events.sink(s -> console.println(s));
+        long flushMsec = Long.valueOf(config().getProperty("deviceComms.watch.flush.msec", "200"));
+        t.poll(() -> { console.flush(); return null; }, flushMsec, TimeUnit.MILLISECONDS);
+    }
+    
+    private void watchSummary(Topology t, MqttStreams mqtt, String topicFilter) {
+        TopicRates rates = new TopicRates(20);
+        mqtt.subscribe(topicFilter, QoS.FIRE_AND_FORGET,
+                (topic,payload) -> new Pair<>(topic, payload.length))
+            .sink(msg -> rates.add(msg.getFirst(), msg.getSecond()));
+        
+        long sec = Long.valueOf(config().getProperty("deviceComms.watch.summary.sec", "5"));
+        PrintWriter console = bufferedConsole();
+        t.poll(() -> rates.report(), sec, TimeUnit.SECONDS)
+            .tag(StartupTimeline.TRIGGER_TAG)
+            .sink(report -> { console.print(report); console.flush(); });
+    }
+    
+    private static String format(Pair<String,byte[]> msg) {
+        return "\n# topic " + msg.getFirst()
+             + "\n" + new String(msg.getSecond(), StandardCharsets.UTF_8);
+    }
+    
+    private static PrintWriter bufferedConsole() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024));
     }
 }
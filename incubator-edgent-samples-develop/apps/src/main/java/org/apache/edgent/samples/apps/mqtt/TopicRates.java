@@ -0,0 +1,124 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+package org.apache.edgent.samples.apps.mqtt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+
+/**
+ * Per topic message rate summaries.
+ * <p>
+ * Accumulates the count and size of the messages received on each
+ * topic during a reporting period and summarizes them as
+ * messages/sec, bytes/sec and the 99th percentile message size.
+ * The percentile is estimated from a fixed size random sample of
+ * each topic's message sizes.
+ */
+public class TopicRates {
+    
+    private final int maxTopics;
+    private Map<String,TopicStats> topics = new HashMap<>();
+    private long periodStartMsec = System.currentTimeMillis();
+    
+    /**
+     * Create a summary.
+     * @param maxTopics the maximum number of topics, with the highest
+     *        message rates, in a report.
+     */
+    public TopicRates(int maxTopics) {
+        this.maxTopics = maxTopics;
+    }
+    
+    /**
+     * Add a message.
+     * @param topic the message's topic
+     * @param size the message's payload size in bytes
+     */
+    public synchronized void add(String topic, int size) {
+        TopicStats stats = topics.get(topic);
+        if (stats == null) {
+            stats = new TopicStats(topic);
+            topics.put(topic, stats);
+        }
+        stats.add(size);
+    }
+    
+    /**
+     * Summarize the period since the last report and start a new period.
+     * @return the report
+     */
+    public String report() {
+        Map<String,TopicStats> period;
+        long now = System.currentTimeMillis();
+        double sec;
+        synchronized (this) {
+            period = topics;
+            topics = new HashMap<>();
+            sec = Math.max(1, now - periodStartMsec) / 1000.0;
+            periodStartMsec = now;
+        }
+        
+        List<TopicStats> stats = new ArrayList<>(period.values());
+        stats.sort((s1, s2) -> Integer.compare(s2.count, s1.count));
+        long msgs = 0, bytes = 0;
+        for (TopicStats s : stats) {
+            msgs += s.count;
+            bytes += s.bytes;
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n# %.1fs: %d topics %,.0f msgs/sec %,.0f bytes/sec%n",
+                sec, stats.size(), msgs / sec, bytes / sec));
+        if (!stats.isEmpty())
+            sb.append(String.format("%12s %14s %9s  %s%n", "msgs/sec", "bytes/sec", "p99 size", "topic"));
+        for (TopicStats s : stats.subList(0, Math.min(maxTopics, stats.size()))) {
+            sb.append(String.format("%,12.1f %,14.0f %,9d  %s%n",
+                    s.count / sec, s.bytes / sec, s.p99Size(), s.topic));
+        }
+        if (stats.size() > maxTopics)
+            sb.append(String.format("%12s %d more topics%n", "...", stats.size() - maxTopics));
+        return sb.toString();
+    }
+    
+    private static class TopicStats {
+        final String topic;
+        int count;
+        long bytes;
+        final Histogram sizes = new Histogram(new UniformReservoir());
+        
+        TopicStats(String topic) {
+            this.topic = topic;
+        }
+        
+        void add(int size) {
+            count++;
+            bytes += size;
+            sizes.update(size);
+        }
+        
+        long p99Size() {
+            return (long) Math.ceil(sizes.getSnapshot().get99thPercentile());
+        }
+    }
+}
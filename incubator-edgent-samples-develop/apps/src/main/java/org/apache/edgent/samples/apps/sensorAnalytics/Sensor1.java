@@ -26,22 +26,22 @@ import static org.apache.edgent.samples.apps.JsonTuples.KEY_ID;
 import static org.apache.edgent.samples.apps.JsonTuples.KEY_READING;
 import static org.apache.edgent.samples.apps.JsonTuples.KEY_TS;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.math3.util.Pair;
 import org.apache.edgent.analytics.sensors.Range;
-import org.apache.edgent.analytics.sensors.Ranges;
 import org.apache.edgent.connectors.iot.QoS;
+import org.apache.edgent.connectors.mqtt.MqttConfig;
+import org.apache.edgent.connectors.mqtt.MqttStreams;
+import org.apache.edgent.function.Function;
 import org.apache.edgent.function.Supplier;
+import org.apache.edgent.samples.apps.AdaptivePressureReliever;
+import org.apache.edgent.samples.apps.ConfigValue;
 import org.apache.edgent.samples.apps.JsonTuples;
+import org.apache.edgent.samples.apps.StateCheckpoint;
 import org.apache.edgent.samples.utils.sensor.PeriodicRandomSensor;
 import org.apache.edgent.topology.TStream;
 import org.apache.edgent.topology.Topology;
-import org.apache.edgent.topology.plumbing.PlumbingStreams;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -71,6 +71,8 @@ import com.google.gson.JsonObject;
  *     <ul>
  *     <li>when enabled, invdividual outliers are published.</li>
  *     <li>Every 30 seconds a list of the last 10 outliers is published.</li>
+ *     <li>when {@code sensor1.raw1khz.publish=true}, the raw samples are
+ *     serialized directly to JSON bytes and published.</li>
  *     </ul>
  *     </li>
  * </ul>
@@ -78,7 +80,8 @@ import com.google.gson.JsonObject;
  * The sample also demonstrates:
  * <ul>
  * <li>Dynamic configuration control - subscribe to a MQTT broker
- *     to receive commands to adjust the threshold detection range value. 
+ *     to receive commands to adjust the threshold detection range value,
+ *     or hot reload the value from a changed configuration file.
  *     </li>
  * <li>Generally, the configuration of the processing is driven via an
  *     external configuration description.
@@ -93,10 +96,16 @@ public class Sensor1 {
     private final SensorAnalyticsApplication app;
     private final Topology t;
     private final String sensorId = "sensor1";
+    private final int queueCapacity;
+    private final long publishMaxDelaySec;
 
     public Sensor1(Topology t, SensorAnalyticsApplication app) {
         this.t = t;
         this.app = app;
+        // pressure reliever capacity
+        this.queueCapacity = app.executionProfile().queueCapacity(30);
+        this.publishMaxDelaySec = Long.valueOf(app.config().getProperty(
+                app.utils().getSensorPropertyName(sensorId, "maxDelaySec", "publish"), "30"));
     }
     
     /**
@@ -104,29 +113,23 @@ public class Sensor1 {
      */
     public void addAnalytics() {
 
-        // Need synchronization for set/get of dynamically changeable values.
-        AtomicReference<Range<Integer>> range = new AtomicReference<>();
-        AtomicReference<Boolean> isPublish1hzOutsideRange = new AtomicReference<>();
-        
-        // Initialize the controls
-        range.set(app.utils().getRangeInteger(sensorId, "outside1hzMeanRange"));
-        isPublish1hzOutsideRange.set(false);
+        // Dynamically changeable values.  The values are parsed once
+        // and hot path reads are a simple volatile read.
+        ConfigValue<Range<Integer>> range =
+                app.utils().getRangeIntegerValue(sensorId, "outside1hzMeanRange");
+        ConfigValue<Boolean> isPublish1hzOutsideRange = app.configRegistry().booleanValue(
+                app.utils().getSensorPropertyName(sensorId, "outside1hzMeanRange", "publish"), false);
+        range.subscribe(newRange ->
+                System.out.println("===== Changing range to "+newRange+" ======"));
+        isPublish1hzOutsideRange.subscribe(b ->
+                System.out.println("===== Changing isPublish1hzOutsideRange to "+b+" ======"));
         
         // Handle the sensor's device commands
-        app.mqttDevice().commands(commandId("set1hzMeanRangeThreshold"))
-            .tag(commandId("set1hzMeanRangeThresholdCmd"))
-            .sink(jo -> {
-                    Range<Integer> newRange = Ranges.valueOfInteger(getCommandValue(jo));
-                    System.out.println("===== Changing range to "+newRange+" ======");
-                    range.set(newRange);
-                });
-        app.mqttDevice().commands(commandId("setPublish1hzOutsideRange"))
-            .tag(commandId("setPublish1hzOutsideRangeCmd"))
-            .sink(jo -> {
-                    Boolean b = new Boolean(getCommandValue(jo));
-                    System.out.println("===== Changing isPublish1hzOutsideRange to "+b+" ======");
-                    isPublish1hzOutsideRange.set(b);
-                });
+        app.commandDispatcher().handle(commandId("set1hzMeanRangeThreshold"),
+                jo -> app.configRegistry().update(range.name(), getCommandValue(jo)));
+        app.commandDispatcher().handle(commandId("setPublish1hzOutsideRange"),
+                jo -> app.configRegistry().update(isPublish1hzOutsideRange.name(),
+                        getCommandValue(jo)));
         
         // Create a raw simulated sensor stream of 1000 tuples/sec.
         // Each tuple is Pair<Long timestampMsec, sensor-reading (0..255)>.
@@ -136,20 +139,34 @@ public class Sensor1 {
                 .tag("raw1khz");
         traceStream(raw1khz, "raw1khz");
         
+        // Optionally publish the raw samples.  At 1000 samples per second
+        // they're serialized directly to their wrapped sample's JSON bytes.
+        if (Boolean.valueOf(app.config().getProperty(
+                app.utils().getSensorPropertyName(sensorId, "raw1khz", "publish"), "false")))
+            publishRaw(raw1khz, "raw1khzEvent");
+        
         // Wrap the raw sensor reading in a JsonObject for convenience.
-        TStream<JsonObject> j1khz = JsonTuples.wrap(raw1khz, sensorId)
+        TStream<JsonObject> j1khz = JsonTuples.wrap(raw1khz, sensorId, Integer.class)
                 .tag("j1khz");
         traceStream(j1khz, "j1khz");
         
+        // All of the streams are this sensor's samples so their key is fixed.
+        Function<JsonObject,String> sensorKeyFn = JsonTuples.keyFn(sensorId);
+        
         // Data-reduction: reduce 1khz samples down to
         // 1hz aggregate statistics samples.
-        TStream<JsonObject> j1hzStats = j1khz.last(1000, JsonTuples.keyFn())
+        TStream<JsonObject> j1hzStats = j1khz.last(1000, sensorKeyFn)
                 .batch(JsonTuples.statistics(MIN, MAX, MEAN, STDDEV))
                 .tag("1hzStats");
         
+        // Retain the trailing window's samples across application restarts
+        // so the trailing mean is correct right away.
+        j1hzStats = app.checkpoint().retain(sensorId + ".1hzStats",
+                j1hzStats, 30, sensorKeyFn);
+        
         // Create a 30 second sliding window of average trailing Mean values
         // and enrich samples with that information.
-        j1hzStats = j1hzStats.last(30, JsonTuples.keyFn()).aggregate(
+        j1hzStats = j1hzStats.last(30, sensorKeyFn).aggregate(
             (samples, key) -> {
                 // enrich and return the most recently added tuple
                 JsonObject jo = samples.get(samples.size()-1);
@@ -161,6 +178,7 @@ public class Sensor1 {
                 jo.addProperty("AvgTrailingMeanCnt", samples.size());
                 return jo;
             })
+            .filter(jo -> !StateCheckpoint.isReplayed(jo))
             .tag("1hzStats.enriched");
         traceStream(j1hzStats, "j1hzStats");
 
@@ -178,20 +196,24 @@ public class Sensor1 {
         app.utils().logStream(outside1hzMeanRange, "ALERT", "outside1hzMeanRange");
         
         // Conditionally publish every outside1hzMeanRange event.
-        // Use a pressureReliever to prevent backpressure if the broker
-        // can't be contacted.
-        // TODO enhance MqttDevice with configurable reliever. 
-        app.mqttDevice().events(
-                PlumbingStreams.pressureReliever(
+        // Use a pressure reliever to prevent backpressure if the broker
+        // can't be contacted.  The events are distinct so they aren't
+        // coalesced, the oldest are dropped.
+        String outsideEventId = app.sensorEventId(sensorId, "outside1hzMeanRangeEvent");
+        app.iotDevice().events(
+                AdaptivePressureReliever.relieve(
                     outside1hzMeanRange.filter(tuple -> isPublish1hzOutsideRange.get())
                                        .tag("outside1hzMeanRangeEvent.conditional"),
-                    tuple -> 0, 30).tag("outside1hzMeanRangeEvent.pressureRelieved"),
-                app.sensorEventId(sensorId, "outside1hzMeanRangeEvent"), QoS.FIRE_AND_FORGET);
+                    outsideEventId, null,
+                    queueCapacity, publishMaxDelaySec, TimeUnit.SECONDS),
+                outsideEventId, QoS.FIRE_AND_FORGET);
         
         // Demonstrate periodic publishing of a sliding window if
         // something changed since it was last published.
-        periodicallyPublishLastNInfo(outside1hzMeanRange, 10, 30,
-                "periodicLastOutsideRangeEvent");
+        periodicallyPublishLastNInfo(
+                app.checkpoint().retain(sensorId + ".lastOutsideRange",
+                        outside1hzMeanRange, 10, sensorKeyFn),
+                10, 30, "periodicLastOutsideRangeEvent");
         
         // TODO histogram: #alerts over the last 8hr
 
@@ -210,62 +232,59 @@ public class Sensor1 {
         // Demonstrate periodic publishing of a sliding window if
         // something changed since it was last published.
 
-        // Maintain a sliding window of the last N tuples.
-        // TODO today, windows don't provide "anytime" access to their collection
-        // so maintain our own current copy of the collection that we can
-        // access it when needed.
-        // 
-        List<JsonObject> lastN = Collections.synchronizedList(new ArrayList<>());
-        stream.last(count, JsonTuples.keyFn())
-            .aggregate((samples, key) -> samples)
-            .tag(event+".lastN")
-            .sink(samples -> {
-                    // Capture the new list/window.  
-                    synchronized(lastN) {
-                        lastN.clear();
-                        lastN.addAll(samples);
-                    }
-                });
-    
-        // Publish the lastN (with trimmed down info) every nSec seconds
-        // if anything changed since the last publish.
-        TStream<JsonObject> periodicLastN = 
-                t.poll(() -> 1, nSec, TimeUnit.SECONDS).tag(event+".trigger")
-                .filter(trigger -> !lastN.isEmpty()).tag(event+".changed")
-                .map(trigger -> {
-                    synchronized(lastN) {
-                        // create a single JsonObject with the list
-                        // of reduced-content samples
-                        JsonObject jo = new JsonObject();
-                        jo.addProperty(KEY_ID, sensorId);
-                        jo.addProperty(KEY_TS, System.currentTimeMillis());
-                        jo.addProperty("window", count);
-                        jo.addProperty("pubFreqSec", nSec);
-                        JsonArray ja = new JsonArray();
-                        jo.add("lastN", ja);
-                        for (JsonObject j : lastN) {
-                            JsonObject jo2 = new JsonObject();
-                            ja.add(jo2);
-                            jo2.add(KEY_TS, j.get(KEY_TS));
-                            // reduce size: include only 2 significant digits
-                            jo2.addProperty(KEY_READING, String.format("%.2f", 
-                                JsonTuples.getStatistic(j, MEAN).getAsDouble()));
-                        }
-                        lastN.clear();
-                        return jo;
+        // Maintain the last N tuples and publish them (with trimmed down info)
+        // every nSec seconds if anything changed since the last publish.
+        TStream<JsonObject> periodicLastN = app.lastNPublisher(nSec)
+                .lastN(stream, count, (samples, timestamp) -> {
+                    // create a single JsonObject with the list
+                    // of reduced-content samples
+                    JsonObject jo = new JsonObject();
+                    jo.addProperty(KEY_ID, sensorId);
+                    jo.addProperty(KEY_TS, timestamp);
+                    jo.addProperty("window", count);
+                    jo.addProperty("pubFreqSec", nSec);
+                    JsonArray ja = new JsonArray();
+                    jo.add("lastN", ja);
+                    for (JsonObject j : samples) {
+                        JsonObject jo2 = new JsonObject();
+                        ja.add(jo2);
+                        jo2.add(KEY_TS, j.get(KEY_TS));
+                        // reduce size: include only 2 significant digits
+                        double mean = JsonTuples.getStatistic(j, MEAN).getAsDouble();
+                        jo2.addProperty(KEY_READING, Math.round(mean * 100) / 100.0);
                     }
+                    return jo;
                 })
                 .tag(event);
 
         traceStream(periodicLastN, event);
 
-        // Use a pressureReliever to prevent backpressure if the broker
-        // can't be contacted.
-        // TODO enhance MqttDevice with configurable reliever. 
-        app.mqttDevice().events(
-                PlumbingStreams.pressureReliever(periodicLastN, tuple -> 0, 30)
-                    .tag(event+".pressureRelieved"),
-                app.sensorEventId(sensorId, event), QoS.FIRE_AND_FORGET);
+        // Use a pressure reliever to prevent backpressure if the broker
+        // can't be contacted.  Only the sensor's newest lastN
+        // is worth publishing.
+        String eventId = app.sensorEventId(sensorId, event);
+        app.iotDevice().events(
+                AdaptivePressureReliever.relieve(periodicLastN, eventId,
+                    tuple -> tuple.get(KEY_ID).getAsString(),
+                    queueCapacity, publishMaxDelaySec, TimeUnit.SECONDS),
+                eventId, QoS.FIRE_AND_FORGET);
+    }
+    
+    /**
+     * Publish raw samples directly to the MQTT broker.
+     * @param raw the raw samples
+     * @param event sensor's publish event label
+     */
+    private void publishRaw(TStream<Pair<Long,Integer>> raw, String event) {
+        // a separate connection, with a generated client id, from the device's
+        MqttStreams mqtt = new MqttStreams(t, () -> {
+                MqttConfig config = MqttConfig.fromProperties(app.config());
+                config.setClientId(null);
+                return config;
+            });
+        String topic = app.mqttDevice().eventTopic(app.sensorEventId(sensorId, event));
+        mqtt.publish(raw, sample -> topic, JsonTuples.encoder(sensorId, Integer.class),
+                sample -> QoS.FIRE_AND_FORGET, sample -> false);
     }
     
     private String commandId(String commandId) {
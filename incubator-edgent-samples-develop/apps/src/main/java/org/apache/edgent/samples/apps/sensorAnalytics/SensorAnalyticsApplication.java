@@ -18,6 +18,11 @@ under the License.
 */
 package org.apache.edgent.samples.apps.sensorAnalytics;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.samples.apps.LastNPublisher;
 import org.apache.edgent.samples.apps.mqtt.AbstractMqttApplication;
 import org.apache.edgent.topology.Topology;
 
@@ -27,6 +32,8 @@ import org.apache.edgent.topology.Topology;
  */
 public class SensorAnalyticsApplication extends AbstractMqttApplication {
     
+    private final Map<Integer,LastNPublisher> lastNPublishers = new HashMap<>();
+    
     public static void main(String[] args) throws Exception {
         if (args.length != 1)
             throw new Exception("missing pathname to application properties file");
@@ -54,4 +61,17 @@ public class SensorAnalyticsApplication extends AbstractMqttApplication {
         // TODO Add the "sensor2" analytics to the topology
         // TODO Add the "sensor3" analytics to the topology
     }
+    
+    /**
+     * Get the application's LastNPublisher for a publish frequency.
+     * <p>
+     * All sensors publishing at the same frequency share a single publisher
+     * and hence a single periodic trigger.
+     * @param nSec publish frequency
+     * @return the publisher
+     */
+    public LastNPublisher lastNPublisher(int nSec) {
+        return lastNPublishers.computeIfAbsent(nSec,
+                k -> new LastNPublisher(t, nSec, TimeUnit.SECONDS));
+    }
 }
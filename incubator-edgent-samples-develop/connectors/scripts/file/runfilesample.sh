@@ -23,7 +23,9 @@ UBER_JAR=`echo ${CONNECTOR_SAMPLES_DIR}/target/edgent-samples-connectors-*-uber.
 # Runs the File connector sample
 #
 # ./runfilesample.sh writer
+# ./runfilesample.sh segmentedwriter
 # ./runfilesample.sh reader
+# ./runfilesample.sh parallelreader
 
 sampledir=/tmp/fileConnectorSample
 if [ ! -e $sampledir ]; then
@@ -35,10 +37,14 @@ export CLASSPATH=${UBER_JAR}
 app=$1; shift
 if [ "$app" == "writer" ]; then
     java org.apache.edgent.samples.connectors.file.FileWriterApp $sampledir
+elif [ "$app" == "segmentedwriter" ]; then
+    java org.apache.edgent.samples.connectors.file.FileWriterApp $sampledir segmented
 elif [ "$app" == "reader" ]; then
     java org.apache.edgent.samples.connectors.file.FileReaderApp $sampledir
+elif [ "$app" == "parallelreader" ]; then
+    java org.apache.edgent.samples.connectors.file.FileReaderApp $sampledir parallel
 else
     echo "unrecognized mode '$app'"
-    echo "usage: $0 'writer|reader'"
+    echo "usage: $0 'writer|segmentedwriter|reader|parallelreader'"
     exit 1
 fi
@@ -39,10 +39,16 @@ export CLASSPATH=${UBER_JAR}:$DERBY_HOME/lib/derby.jar
 app=$1; shift
 if [ "$app" == "writer" ]; then
     java org.apache.edgent.samples.connectors.jdbc.SimpleWriterApp jdbc.properties
+elif [ "$app" == "benchmark" ]; then
+    java org.apache.edgent.samples.connectors.jdbc.JdbcWriterBenchmark jdbc.properties
+elif [ "$app" == "cachebenchmark" ]; then
+    java org.apache.edgent.samples.connectors.jdbc.LookupCacheBenchmark jdbc.properties
+elif [ "$app" == "bulkload" ]; then
+    java org.apache.edgent.samples.connectors.jdbc.BulkLoadApp jdbc.properties
 elif [ "$app" == "reader" ]; then
     java org.apache.edgent.samples.connectors.jdbc.SimpleReaderApp jdbc.properties
 else
     echo "unrecognized mode '$app'"
-    echo "usage: $0 writer|reader"
+    echo "usage: $0 writer|reader|bulkload|benchmark|cachebenchmark"
     exit 1
 fi
@@ -23,7 +23,9 @@ UBER_JAR=`echo ${CONNECTOR_SAMPLES_DIR}/target/edgent-samples-connectors-*-uber.
 # Runs the Kafka Publisher or Subscriber Client
 #
 # ./runkafkaclient.sh pub
+# ./runkafkaclient.sh pub throughput [bootstrap.servers=mock] [batch.size=<value>] ...
 # ./runkafkaclient.sh sub
+# ./runkafkaclient.sh sub workers=<value>
 # ./runkafkaclient.sh -h
 
 export CLASSPATH=${UBER_JAR}
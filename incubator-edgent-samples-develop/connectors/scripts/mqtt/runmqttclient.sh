@@ -23,6 +23,7 @@ UBER_JAR=`echo ${CONNECTOR_SAMPLES_DIR}/target/edgent-samples-connectors-*-uber.
 # Runs the MQTT Publisher or Subscriber client
 #
 # ./runmqttclient.sh pub
+# ./runmqttclient.sh pub throughput qos=1 [maxInflight=<value>] [standIn=<ackDelayMillis>]
 # ./runmqttclient.sh sub
 # ./runmqttclient.sh -h
 
@@ -18,6 +18,9 @@ under the License.
 */
 package org.apache.edgent.samples.connectors;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 import org.apache.edgent.function.Supplier;
 
 /**
@@ -26,11 +29,21 @@ import org.apache.edgent.function.Supplier;
 public class MsgSupplier implements Supplier<String> {
     private static final long serialVersionUID = 1L;
     private final int maxCnt;
+    private final boolean verbose;
     private int cnt;
     private boolean done;
     
     public MsgSupplier(int maxCnt) {
+        this(maxCnt, true);
+    }
+    
+    /**
+     * @param maxCnt the number of messages to generate, -1 for no limit
+     * @param verbose print each generated message
+     */
+    public MsgSupplier(int maxCnt, boolean verbose) {
         this.maxCnt = maxCnt;
+        this.verbose = verbose;
     }
 
     @Override
@@ -44,7 +57,33 @@ public class MsgSupplier implements Supplier<String> {
             return null;
         }
         String msg = String.format("Message-%d from %s", cnt, Util.simpleTS());
-        System.out.println("poll generated msg to publish: " + msg);
+        if (verbose)
+            System.out.println("poll generated msg to publish: " + msg);
         return msg;
     }
+    
+    /**
+     * Iterate over the generated messages, e.g., for
+     * {@code Topology.source()} to publish them as fast as possible.
+     * @return the messages
+     */
+    public Iterable<String> iterable() {
+        return () -> new Iterator<String>() {
+            private String next = get();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                String msg = next;
+                next = get();
+                return msg;
+            }
+        };
+    }
 }
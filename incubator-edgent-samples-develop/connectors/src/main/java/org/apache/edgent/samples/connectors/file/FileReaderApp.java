@@ -28,15 +28,26 @@ import org.apache.edgent.topology.Topology;
 
 /**
  * Watch a directory for files and convert their contents into a stream.
+ * <p>
+ * With the optional {@code parallel} argument the files are read with a
+ * {@link ParallelFileReader}, which reads large files in chunks on a
+ * pool of workers, decompresses {@code .gz} files and records the
+ * files it has read so they aren't read again after a restart.
  */
 public class FileReaderApp {
     private final String directory;
     private static final String baseLeafname = "FileSample";
+    private boolean parallel;
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1)
+        if (args.length < 1)
             throw new Exception("missing pathname to an existing directory");
         FileReaderApp reader = new FileReaderApp(args[0]);
+        if (args.length > 1) {
+            if (!"parallel".equals(args[1]))
+                throw new Exception("unrecognized reader '" + args[1] + "'");
+            reader.parallel = true;
+        }
         reader.run();
     }
    
@@ -61,19 +72,36 @@ public class FileReaderApp {
         // watch for files
         TStream<String> pathnames = FileStreams.directoryWatcher(t, () -> directory);
         
-        // create a stream containing the files' contents.
-        // use a preFn to include a separator in the results.
-        // use a postFn to delete the file once its been processed.
-        TStream<String> contents = FileStreams.textFileReader(pathnames,
-                tuple -> "<PRE-FUNCTION> "+tuple, 
-                (tuple,exception) -> {
-                    // exercise a little caution in case the user pointed
-                    // us at a directory with other things in it
-                    if (tuple.contains("/"+baseLeafname+"_")) { 
-                        new File(tuple).delete();
-                    }
-                    return null;
-                });
+        TStream<String> contents;
+        if (parallel) {
+            // create a stream containing the files' contents, read by
+            // a worker per core in 4MB chunks.
+            // record the files read in a hidden progress file and
+            // delete the sample files once they're recorded.
+            contents = ParallelFileReader.read(pathnames,
+                    Runtime.getRuntime().availableProcessors(), 4 * 1024 * 1024,
+                    directory + "/." + baseLeafname + ".progress",
+                    pathname -> {
+                        if (pathname.contains("/"+baseLeafname+"_")) {
+                            new File(pathname).delete();
+                        }
+                    });
+        }
+        else {
+            // create a stream containing the files' contents.
+            // use a preFn to include a separator in the results.
+            // use a postFn to delete the file once its been processed.
+            contents = FileStreams.textFileReader(pathnames,
+                    tuple -> "<PRE-FUNCTION> "+tuple, 
+                    (tuple,exception) -> {
+                        // exercise a little caution in case the user pointed
+                        // us at a directory with other things in it
+                        if (tuple.contains("/"+baseLeafname+"_")) { 
+                            new File(tuple).delete();
+                        }
+                        return null;
+                    });
+        }
         
         // print out what's being read
         contents.print();
@@ -35,16 +35,27 @@ import org.apache.edgent.topology.Topology;
 
 /**
  * Write a TStream&lt;String&gt; to files.
+ * <p>
+ * With the optional {@code segmented} argument the stream is written with a
+ * {@link SegmentedFileWriter}, which batches the writes and fsyncs
+ * once per group commit interval, instead of
+ * {@link FileStreams#textFileWriter(TStream, org.apache.edgent.function.Supplier, org.apache.edgent.function.Supplier) textFileWriter}.
  */
 public class FileWriterApp {
     private final String directory;
     private final String basePathname;
     private static final String baseLeafname = "FileSample";
+    private boolean segmented;
     
     public static void main(String[] args) throws Exception {
-        if (args.length != 1)
+        if (args.length < 1)
             throw new Exception("missing pathname to an existing directory");
         FileWriterApp writer = new FileWriterApp(args[0]);
+        if (args.length > 1) {
+            if (!"segmented".equals(args[1]))
+                throw new Exception("unrecognized writer '" + args[1] + "'");
+            writer.segmented = true;
+        }
         writer.run();
     }
     
@@ -82,7 +93,16 @@ public class FileWriterApp {
             }, 1, TimeUnit.SECONDS);
         
         // write the stream
-        FileStreams.textFileWriter(stream, () -> basePathname, () -> policy);
+        if (segmented) {
+            // finalize segments at 1MB or 5 seconds, keep 3,
+            // and fsync once a second
+            SegmentedFileWriter.write(stream, basePathname,
+                    1024 * 1024, TimeUnit.SECONDS.toMillis(5), 3,
+                    TimeUnit.SECONDS.toMillis(1));
+        }
+        else {
+            FileStreams.textFileWriter(stream, () -> basePathname, () -> policy);
+        }
         
         // run the application / topology
         System.out.println("starting the producer writing to directory " + directory);
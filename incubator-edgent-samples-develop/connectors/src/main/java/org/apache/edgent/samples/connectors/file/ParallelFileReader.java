@@ -0,0 +1,373 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.edgent.function.Consumer;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Pipe;
+import org.apache.edgent.topology.TStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read the contents of files, as named by a stream of pathnames,
+ * into a stream of lines using a pool of worker threads.
+ * <p>
+ * Up to {@code workers} files are read concurrently.  A file larger
+ * than {@code chunkBytes} is split into line aligned chunks that are
+ * read with positional {@code FileChannel} reads and decoded by the
+ * workers.  A file whose name ends with {@code .gz} is decompressed
+ * as it is read; a gzip stream can't be split so it is read by a
+ * single worker.  A file's lines are submitted in file order, a chunk
+ * at a time, but the lines of concurrently read files are interleaved.
+ * At most {@code workers + 1} chunks, of all of the files, are read
+ * ahead of their submission, which bounds the memory used by the chunks.
+ * Lines are decoded as UTF-8 and the line terminator,
+ * {@code \n} or {@code \r\n}, is removed.
+ * <p>
+ * When a progress pathname is supplied each completely read file is
+ * recorded in it, along with its size and modification time.  A recorded
+ * file that is unchanged isn't read again, e.g., after a restart.
+ * A file that no longer exists, e.g., because {@code completeFn} deleted it,
+ * is forgotten, and the progress file is compacted to the recorded files
+ * that still exist when the reader is initialized.
+ * The progress file should be hidden (start with {@code .}) when it
+ * is in the watched directory so that the directory watcher ignores it.
+ */
+public class ParallelFileReader extends Pipe<String,String> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(ParallelFileReader.class);
+    private static final int SCAN_SIZE = 64 * 1024;
+    private static final int GZIP_BATCH = 1024;
+    
+    private final int workers;
+    private final int chunkBytes;
+    private final String progressPathname;
+    private final Consumer<String> completeFn;
+    
+    private transient ExecutorService files;
+    private transient ExecutorService chunks;
+    private transient Object submitLock;
+    // a permit for each chunk read but not yet submitted, for all files
+    private transient Semaphore chunkPermits;
+    // guarded by this
+    private transient Map<String,String> progress;
+    
+    /**
+     * Read the contents of files into a stream of lines.
+     * 
+     * @param pathnames the stream of pathnames to read
+     * @param workers the number of worker threads
+     * @param chunkBytes the nominal size of a file chunk
+     * @param progressPathname the pathname of the progress file, null for none
+     * @param completeFn function called with a pathname once the file
+     *        has been read and recorded, e.g., to delete it.  May be null.
+     * @return the stream of lines
+     */
+    public static TStream<String> read(TStream<String> pathnames, int workers,
+            int chunkBytes, String progressPathname, Consumer<String> completeFn) {
+        return pathnames.pipe(new ParallelFileReader(workers, chunkBytes,
+                progressPathname, completeFn));
+    }
+    
+    /**
+     * Create a parallel file reader.
+     * @param workers the number of worker threads
+     * @param chunkBytes the nominal size of a file chunk
+     * @param progressPathname the pathname of the progress file, null for none
+     * @param completeFn function called with a pathname once the file
+     *        has been read and recorded, e.g., to delete it.  May be null.
+     */
+    public ParallelFileReader(int workers, int chunkBytes,
+            String progressPathname, Consumer<String> completeFn) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers");
+        if (chunkBytes < SCAN_SIZE)
+            throw new IllegalArgumentException("chunkBytes");
+        this.workers = workers;
+        this.chunkBytes = chunkBytes;
+        this.progressPathname = progressPathname;
+        this.completeFn = completeFn;
+    }
+    
+    @Override
+    public void initialize(OpletContext<String, String> context) {
+        super.initialize(context);
+        files = Executors.newFixedThreadPool(workers, threads(context.getId() + ".file"));
+        chunks = Executors.newFixedThreadPool(workers, threads(context.getId() + ".chunk"));
+        submitLock = new Object();
+        chunkPermits = new Semaphore(workers + 1);
+        progress = new HashMap<>();
+        if (progressPathname != null)
+            loadProgress();
+    }
+    
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void accept(String pathname) {
+        files.execute(() -> {
+            try {
+                readFile(pathname);
+            }
+            catch (Exception e) {
+                logger.error("Unable to read file {}", pathname, e);
+            }
+        });
+    }
+    
+    private void readFile(String pathname) throws Exception {
+        File file = new File(pathname);
+        String stamp = file.length() + " " + file.lastModified();
+        if (isComplete(pathname, stamp)) {
+            logger.debug("skipping previously read file {}", pathname);
+        }
+        else {
+            if (pathname.endsWith(".gz"))
+                readGzip(file);
+            else
+                readChunks(file);
+            complete(pathname, stamp);
+        }
+        if (completeFn != null) {
+            completeFn.accept(pathname);
+            if (!file.exists())
+                forget(pathname);
+        }
+    }
+    
+    private void readGzip(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file), SCAN_SIZE),
+                StandardCharsets.UTF_8), SCAN_SIZE)) {
+            List<String> lines = new ArrayList<>(GZIP_BATCH);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == GZIP_BATCH) {
+                    submitAll(lines);
+                    lines.clear();
+                }
+            }
+            submitAll(lines);
+        }
+    }
+    
+    private void readChunks(File file) throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ArrayDeque<Future<List<String>>> pending = new ArrayDeque<>();
+            try {
+                long start = 0;
+                while (start < size) {
+                    long end = lineEnd(channel, Math.min(size, start + chunkBytes), size);
+                    // bound the memory used by the chunks waiting to be submitted,
+                    // submitting this file's chunks while waiting for a permit
+                    // so that the files holding permits always make progress
+                    while (!chunkPermits.tryAcquire()) {
+                        if (pending.isEmpty()) {
+                            chunkPermits.acquire();
+                            break;
+                        }
+                        submitNext(pending);
+                    }
+                    long chunkStart = start;
+                    pending.add(chunks.submit(() -> readChunk(channel, chunkStart, end)));
+                    start = end;
+                }
+                while (!pending.isEmpty())
+                    submitNext(pending);
+            }
+            finally {
+                // after a failure
+                for (Future<List<String>> chunk : pending)
+                    chunk.cancel(true);
+                chunkPermits.release(pending.size());
+            }
+        }
+    }
+    
+    private void submitNext(ArrayDeque<Future<List<String>>> pending)
+            throws InterruptedException, ExecutionException {
+        List<String> lines = pending.peek().get();
+        pending.remove();
+        try {
+            submitAll(lines);
+        }
+        finally {
+            chunkPermits.release();
+        }
+    }
+    
+    /**
+     * Get the position after the end of the line containing {@code position}.
+     */
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position - 1);
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i;
+            }
+            position += n;
+        }
+        return size;
+    }
+    
+    private static List<String> readChunk(FileChannel channel, long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0)
+                throw new IOException("unexpected end of file");
+        }
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                lines.add(line(bytes, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < bytes.length)
+            lines.add(line(bytes, lineStart, bytes.length));
+        return lines;
+    }
+    
+    private static String line(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r')
+            end--;
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+    
+    private void submitAll(List<String> lines) {
+        synchronized (submitLock) {
+            for (String line : lines)
+                submit(line);
+        }
+    }
+    
+    private synchronized boolean isComplete(String pathname, String stamp) {
+        return stamp.equals(progress.get(pathname));
+    }
+    
+    private void loadProgress() {
+        Path path = Paths.get(progressPathname);
+        if (!Files.exists(path))
+            return;
+        List<String> entries;
+        try {
+            entries = Files.readAllLines(path, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            logger.error("Unable to load progress file {}", path, e);
+            return;
+        }
+        for (String entry : entries) {
+            // <size> <lastModified> <pathname>
+            String[] fields = entry.split(" ", 3);
+            if (fields.length == 3)
+                progress.put(fields[2], fields[0] + " " + fields[1]);
+        }
+        progress.keySet().removeIf(pathname -> !new File(pathname).exists());
+        logger.info("{} previously read files recorded in {}", progress.size(), path);
+        
+        // drop the entries of files that are gone, or were read again
+        if (progress.size() < entries.size())
+            compactProgress(path);
+    }
+    
+    private void compactProgress(Path path) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String,String> entry : progress.entrySet())
+            sb.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+        Path tmp = Paths.get(progressPathname + ".tmp");
+        try {
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            logger.error("Unable to compact progress file {}", path, e);
+        }
+    }
+    
+    private synchronized void forget(String pathname) {
+        progress.remove(pathname);
+    }
+    
+    private synchronized void complete(String pathname, String stamp) {
+        progress.put(pathname, stamp);
+        if (progressPathname == null)
+            return;
+        String entry = stamp + " " + pathname + "\n";
+        try (FileChannel channel = FileChannel.open(Paths.get(progressPathname),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+        catch (IOException e) {
+            logger.error("Unable to record progress for {}", pathname, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        files.shutdownNow();
+        chunks.shutdownNow();
+    }
+}
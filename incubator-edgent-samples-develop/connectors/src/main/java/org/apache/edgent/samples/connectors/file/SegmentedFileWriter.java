@@ -0,0 +1,452 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Sink;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A high throughput sink that writes a stream's tuples as lines
+ * to a sequence of segment files.
+ * <p>
+ * Each tuple's {@code toString()} is encoded as UTF-8 into a set of
+ * direct buffers.  The buffers are written to the active segment with a
+ * single gathering {@code FileChannel} write when they are all full,
+ * so a write system call covers many tuples.  Every {@code commitMsec}
+ * the buffered tuples are written and the segment is forced to storage,
+ * i.e., all the tuples received since the previous commit are made
+ * durable by one fsync.  The fsync is done outside of the writer's lock
+ * so it doesn't stall the arrival of new tuples.
+ * <p>
+ * Files are named as with
+ * {@link org.apache.edgent.connectors.file.FileWriterPolicy FileWriterPolicy}.
+ * The active segment is the hidden file {@code .<baseLeafname>} in
+ * the base pathname's directory.  A segment is finalized by renaming it
+ * to {@code <basePathname>_YYYYMMDD_HHMMSS[_<n>]} once it reaches
+ * {@code segmentBytes} or it has been active for {@code segmentMsec}.
+ * The age is checked when committing so a segment may be active for up
+ * to {@code commitMsec} longer.  A finalized segment is forced to storage
+ * in the background.  Only the most recent {@code retainFiles}
+ * finalized segments are kept, including those of previous runs.
+ * <p>
+ * An active segment left by a previous run, e.g., one that crashed,
+ * is finalized when the writer opens its first segment so the tuples
+ * committed to it are kept.
+ *
+ * @param <T> Tuple type
+ */
+public class SegmentedFileWriter<T> extends Sink<T> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedFileWriter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GATHER_BUFFERS = 8;
+    
+    private final String basePathname;
+    private final long segmentBytes;
+    private final long segmentMsec;
+    private final int retainFiles;
+    private final long commitMsec;
+    
+    // guarded by this
+    private transient CharsetEncoder encoder;
+    private transient ByteBuffer[] buffers;
+    private transient int current;
+    private transient FileChannel channel;
+    private transient long segmentStart;
+    private transient long segmentWritten;
+    private transient boolean uncommitted;
+    private transient ArrayDeque<Path> retained;
+    private transient List<Future<?>> sealing;
+    private transient String lastYmdhms;
+    private transient int ymdhmsCount;
+    private transient long tupleCount;
+    private transient long writeCount;
+    private transient long segmentCount;
+    
+    private final AtomicLong commitCount = new AtomicLong();
+    private transient ScheduledExecutorService executor;
+    private transient ScheduledFuture<?> committer;
+    
+    /**
+     * Write a stream's tuples to segment files.
+     * 
+     * @param <T> Tuple type
+     * @param stream the stream
+     * @param basePathname the base pathname of the segment files
+     * @param segmentBytes finalize a segment once it reaches this size
+     * @param segmentMsec finalize a segment once it has been active this long, 0 for no limit
+     * @param retainFiles the number of finalized segments to keep
+     * @param commitMsec the interval between group commits
+     * @return the sink
+     */
+    public static <T> TSink<T> write(TStream<T> stream, String basePathname,
+            long segmentBytes, long segmentMsec, int retainFiles, long commitMsec) {
+        return stream.sink(new SegmentedFileWriter<>(basePathname,
+                segmentBytes, segmentMsec, retainFiles, commitMsec));
+    }
+    
+    /**
+     * Create a segmented file writer.
+     * @param basePathname the base pathname of the segment files
+     * @param segmentBytes finalize a segment once it reaches this size
+     * @param segmentMsec finalize a segment once it has been active this long, 0 for no limit
+     * @param retainFiles the number of finalized segments to keep
+     * @param commitMsec the interval between group commits
+     */
+    public SegmentedFileWriter(String basePathname, long segmentBytes,
+            long segmentMsec, int retainFiles, long commitMsec) {
+        if (segmentBytes < 1)
+            throw new IllegalArgumentException("segmentBytes");
+        if (segmentMsec < 0)
+            throw new IllegalArgumentException("segmentMsec");
+        if (retainFiles < 1)
+            throw new IllegalArgumentException("retainFiles");
+        if (commitMsec < 1)
+            throw new IllegalArgumentException("commitMsec");
+        this.basePathname = basePathname;
+        this.segmentBytes = segmentBytes;
+        this.segmentMsec = segmentMsec;
+        this.retainFiles = retainFiles;
+        this.commitMsec = commitMsec;
+        setSinker(this::write);
+    }
+    
+    @Override
+    public void initialize(OpletContext<T, Void> context) {
+        super.initialize(context);
+        executor = context.getService(ScheduledExecutorService.class);
+        encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffers = new ByteBuffer[GATHER_BUFFERS];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        sealing = new ArrayList<>();
+    }
+    
+    @Override
+    public void start() {
+        super.start();
+        committer = executor.scheduleAtFixedRate(this::commit,
+                commitMsec, commitMsec, TimeUnit.MILLISECONDS);
+    }
+    
+    private synchronized void write(T tuple) {
+        try {
+            if (channel == null)
+                open();
+            encode(tuple.toString());
+            ByteBuffer buffer = buffers[current];
+            if (!buffer.hasRemaining())
+                buffer = nextBuffer();
+            buffer.put((byte) '\n');
+            tupleCount++;
+            if (segmentWritten + buffered() >= segmentBytes)
+                finalizeSegment(true);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private void encode(String line) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(line);
+        ByteBuffer buffer = buffers[current];
+        for (;;) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (!result.isOverflow())
+                break;
+            buffer = nextBuffer();
+        }
+        encoder.reset();
+    }
+    
+    private ByteBuffer nextBuffer() throws IOException {
+        if (current + 1 < buffers.length)
+            current++;
+        else
+            writeBuffers();
+        return buffers[current];
+    }
+    
+    private long buffered() {
+        long bytes = 0;
+        for (int i = 0; i <= current; i++)
+            bytes += buffers[i].position();
+        return bytes;
+    }
+    
+    private void writeBuffers() throws IOException {
+        int count = current + 1;
+        for (int i = 0; i < count; i++)
+            buffers[i].flip();
+        ByteBuffer last = buffers[current];
+        while (last.hasRemaining())
+            segmentWritten += channel.write(buffers, 0, count);
+        for (int i = 0; i < count; i++)
+            buffers[i].clear();
+        current = 0;
+        writeCount++;
+        uncommitted = true;
+    }
+    
+    private void open() throws IOException {
+        if (retained == null)
+            recover();
+        channel = FileChannel.open(activePath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentStart = System.currentTimeMillis();
+        segmentWritten = 0;
+        uncommitted = false;
+    }
+    
+    private Path activePath() {
+        Path base = Paths.get(basePathname);
+        return base.resolveSibling("." + base.getFileName());
+    }
+    
+    private Path finalPath() {
+        for (;;) {
+            String ymdhms = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            Path path;
+            if (ymdhms.equals(lastYmdhms)) {
+                ymdhmsCount++;
+                path = Paths.get(String.format("%s_%s_%d", basePathname, ymdhms, ymdhmsCount));
+            }
+            else {
+                lastYmdhms = ymdhms;
+                ymdhmsCount = 0;
+                path = Paths.get(String.format("%s_%s", basePathname, ymdhms));
+            }
+            // don't replace a segment of a previous run
+            if (!Files.exists(path))
+                return path;
+        }
+    }
+    
+    /**
+     * Pick up the segments of previous runs and finalize their active segment.
+     */
+    private void recover() throws IOException {
+        Path base = Paths.get(basePathname).toAbsolutePath();
+        Pattern pattern = Pattern.compile(Pattern.quote(base.getFileName().toString())
+                + "_(\\d{8}_\\d{6})(?:_(\\d+))?");
+        List<Path> previous = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(base.getParent())) {
+            for (Path path : dir) {
+                if (pattern.matcher(path.getFileName().toString()).matches())
+                    previous.add(path);
+            }
+        }
+        previous.sort(Comparator.comparing((Path path) -> group(pattern, path, 1))
+                .thenComparingLong(path -> Long.valueOf(group(pattern, path, 2))));
+        retained = new ArrayDeque<>(previous);
+        
+        Path active = activePath();
+        if (Files.exists(active)) {
+            if (Files.size(active) == 0)
+                Files.delete(active);
+            else {
+                Path path = finalPath();
+                Files.move(active, path, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("finalized segment {} of a previous run", path);
+                retained.add(path);
+            }
+        }
+        trimRetained();
+    }
+    
+    private static String group(Pattern pattern, Path path, int group) {
+        Matcher m = pattern.matcher(path.getFileName().toString());
+        m.matches();
+        return m.group(group) != null ? m.group(group) : "0";
+    }
+    
+    private void finalizeSegment(boolean background) throws IOException {
+        if (buffered() > 0)
+            writeBuffers();
+        FileChannel toSeal = channel;
+        channel = null;
+        Path path = finalPath();
+        Files.move(activePath(), path, StandardCopyOption.ATOMIC_MOVE);
+        segmentCount++;
+        logger.trace("finalized segment {}", path);
+        retained.add(path);
+        trimRetained();
+        if (background) {
+            // force the segment without stalling the tuples
+            sealing.removeIf(Future::isDone);
+            sealing.add(executor.submit(() -> seal(toSeal, path)));
+        }
+        else
+            seal(toSeal, path);
+    }
+    
+    private void trimRetained() throws IOException {
+        while (retained.size() > retainFiles) {
+            Path old = retained.remove();
+            logger.trace("deleting segment {}", old);
+            Files.deleteIfExists(old);
+        }
+    }
+    
+    private void seal(FileChannel toSeal, Path path) {
+        try {
+            toSeal.force(false);
+            commitCount.incrementAndGet();
+        }
+        catch (IOException e) {
+            logger.error("Unable to commit segment {}", path, e);
+        }
+        finally {
+            try {
+                toSeal.close();
+            }
+            catch (IOException e) {
+                logger.error("Unable to close segment {}", path, e);
+            }
+        }
+    }
+    
+    private void commit() {
+        FileChannel toForce;
+        synchronized (this) {
+            if (channel == null)
+                return;
+            try {
+                if (buffered() > 0)
+                    writeBuffers();
+                if (segmentMsec > 0
+                        && System.currentTimeMillis() - segmentStart >= segmentMsec) {
+                    finalizeSegment(true);
+                    return;
+                }
+            }
+            catch (IOException e) {
+                logger.error("Unable to write segment {}", activePath(), e);
+                return;
+            }
+            if (!uncommitted)
+                return;
+            uncommitted = false;
+            toForce = channel;
+        }
+        try {
+            toForce.force(false);
+            commitCount.incrementAndGet();
+        }
+        catch (ClosedChannelException e) {
+            // finalized concurrently, which forced the segment
+        }
+        catch (IOException e) {
+            logger.error("Unable to commit segment {}", activePath(), e);
+        }
+    }
+    
+    /**
+     * Get the number of tuples written.
+     * @return the count
+     */
+    public synchronized long getTupleCount() {
+        return tupleCount;
+    }
+    
+    /**
+     * Get the number of gathering writes.
+     * @return the count
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+    
+    /**
+     * Get the number of group commits.
+     * @return the count
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+    
+    /**
+     * Get the number of finalized segments.
+     * @return the count
+     */
+    public synchronized long getSegmentCount() {
+        return segmentCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committer != null)
+            committer.cancel(false);
+        List<Future<?>> toWait;
+        synchronized (this) {
+            if (channel != null)
+                finalizeSegment(false);
+            toWait = sealing == null ? new ArrayList<>() : new ArrayList<>(sealing);
+        }
+        // wait for the finalized segments to be forced
+        try {
+            for (Future<?> f : toWait)
+                f.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            logger.error("Unable to commit a segment", e.getCause());
+        }
+        // the sinker is this writer's write(), so Sink.close() has nothing to close
+    }
+}
@@ -27,6 +27,8 @@ under the License.
  * <ul>
  * <li>FileReaderApp.java - a simple directory watcher and file reader application topology</li>
  * <li>FileWriterApp.java - a simple file writer application topology</li>
+ * <li>ParallelFileReader.java - a chunked, gzip aware parallel file reader</li>
+ * <li>SegmentedFileWriter.java - a group commit segment file sink</li>
  * </ul>
  */
 package org.apache.edgent.samples.connectors.file;
@@ -0,0 +1,648 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.edgent.connectors.jdbc.CheckedFunction;
+import org.apache.edgent.connectors.jdbc.CheckedSupplier;
+import org.apache.edgent.connectors.jdbc.ParameterSetter;
+import org.apache.edgent.function.BiConsumer;
+import org.apache.edgent.function.BiFunction;
+import org.apache.edgent.function.Consumer;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.function.Supplier;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Sink;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Batched alternatives to
+ * {@link org.apache.edgent.connectors.jdbc.JdbcStreams JdbcStreams}
+ * for writing stream tuples to a table and for keyed lookups.
+ * <p>
+ * <b>Writing</b>
+ * <p>
+ * Rather than executing the statement once per tuple, tuples are
+ * collected into a batch that is executed with a single
+ * {@code executeBatch()} once it holds {@code batchSize} tuples or its
+ * first tuple has waited {@code lingerMsec}.  The connection doesn't
+ * auto-commit: the transaction is committed every {@code batchesPerCommit}
+ * batches, whenever a batch is executed because it lingered and once
+ * executed rows have waited {@code lingerMsec} for more batches.
+ * <p>
+ * When a batch fails the transaction is rolled back and its uncommitted
+ * tuples are retried by splitting them in half and executing and committing
+ * each half separately, recursively.  Splitting isolates a tuple that
+ * can't be written, e.g., a duplicate key, which is then logged and dropped.
+ * Only a failure to execute the batch is split: a batch whose connection
+ * can't be opened, or whose statement can't be prepared, e.g., because of
+ * a SQL syntax error, fails as a whole.
+ * A batch that fails with a transient error, e.g., a deadlock or lost
+ * connection, isn't split: it's retried whole after a backoff, by the
+ * job's executor so that the stream isn't blocked, and its tuples are
+ * dropped once they have been retried {@value #MAX_RETRIES} times.
+ * Tuples that arrive during the backoff are written after the retry.
+ * <p>
+ * If the job has a {@code MetricRegistry} the following metrics are
+ * registered with the name {@code jdbcBatch.<name>.<metric>}:
+ * <ul>
+ * <li>{@code rows} - meter of the committed rows, i.e., rows/second</li>
+ * <li>{@code batchLatency} - timer of the batch executions</li>
+ * <li>{@code failedRows} - counter of the dropped rows</li>
+ * </ul>
+ * <p>
+ * <b>Lookups</b>
+ * <p>
+ * Rather than executing a query per tuple, the keys of the tuples
+ * are collected until there are {@code batchSize} tuples or the first
+ * tuple has waited {@code lingerMsec}.  A single {@code WHERE key IN (...)}
+ * query retrieves the rows for all of the distinct keys and the rows are
+ * joined with the tuples, which are submitted in their original order.
+ * If the job has a {@code MetricRegistry} the {@code queryLatency}
+ * timer and the {@code unknownKeys} and {@code failedLookups} counters
+ * are registered with the name {@code jdbcLookup.<name>.<metric>}.
+ */
+public class BatchedJdbcStreams implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(BatchedJdbcStreams.class);
+    
+    /** The number of times a transient failure is retried. */
+    public static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MSEC = 100;
+    
+    private final CheckedSupplier<DataSource> dataSourceFn;
+    private final CheckedFunction<DataSource,Connection> connFn;
+    private final int batchSize;
+    private final long lingerMsec;
+    private final int batchesPerCommit;
+    
+    /**
+     * Create a batched JDBC connector.
+     * 
+     * @param dataSourceFn function that yields the {@link DataSource}
+     *              for the database.
+     * @param connFn function that yields a {@link Connection} from a {@code DataSource}.
+     * @param batchSize the maximum number of tuples in a batch
+     * @param lingerMsec the maximum time a tuple waits for its batch to fill
+     * @param batchesPerCommit the number of batches in a write transaction
+     */
+    public BatchedJdbcStreams(CheckedSupplier<DataSource> dataSourceFn,
+            CheckedFunction<DataSource,Connection> connFn,
+            int batchSize, long lingerMsec, int batchesPerCommit) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize");
+        if (lingerMsec < 1)
+            throw new IllegalArgumentException("lingerMsec");
+        if (batchesPerCommit < 1)
+            throw new IllegalArgumentException("batchesPerCommit");
+        this.dataSourceFn = dataSourceFn;
+        this.connFn = connFn;
+        this.batchSize = batchSize;
+        this.lingerMsec = lingerMsec;
+        this.batchesPerCommit = batchesPerCommit;
+    }
+    
+    /**
+     * Function that yields a value from the current row of a {@code ResultSet}.
+     *
+     * @param <R> Value type
+     */
+    @FunctionalInterface
+    public interface RowFunction<R> extends Serializable {
+        /**
+         * Get the value from the current row.
+         * @param rSet the result set
+         * @return the value
+         * @throws SQLException on failure
+         */
+        R apply(ResultSet rSet) throws SQLException;
+    }
+    
+    /**
+     * Write stream tuples using a batched SQL statement.
+     * 
+     * @param <T> Tuple type
+     * @param stream tuples to write
+     * @param name the name of the writer's metrics
+     * @param stmtSupplier supplies the SQL statement
+     * @param paramSetter sets the statement's parameters from a tuple
+     * @return the sink
+     */
+    public <T> TSink<T> executeBatch(TStream<T> stream, String name,
+            Supplier<String> stmtSupplier, ParameterSetter<T> paramSetter) {
+        return stream.sink(new BatchedStatement<>(this, name, stmtSupplier, paramSetter));
+    }
+    
+    /**
+     * Look up the row for each stream tuple's key using batched queries.
+     * <p>
+     * The query's {@code ?} parameter, which must be its only parameter,
+     * is expanded to the batch's key list, e.g.,
+     * {@code "SELECT id, firstname, lastname FROM persons WHERE id IN (?)"}.
+     * Keys are set with {@code PreparedStatement.setObject()} and the
+     * value returned by {@code rowKeyFn} must {@code equals()} the tuple's key.
+     * A tuple whose key has no row is passed to {@code unknownFn}.
+     * A tuple is dropped if {@code joinFn} returns null or its batch's query fails.
+     * Use {@link #executeLookup(TStream, String, Supplier, Function, RowFunction, RowFunction, BiFunction, Consumer, LookupCache, BiConsumer)}
+     * to be told of the tuples whose query failed.
+     * 
+     * @param <T> Tuple type
+     * @param <K> Key type
+     * @param <V> Row type
+     * @param <R> Result type
+     * @param stream tuples to look up
+     * @param name the name of the lookup's metrics
+     * @param querySupplier supplies the SQL query
+     * @param keyFn function that yields a tuple's key
+     * @param rowKeyFn function that yields the key of a result row
+     * @param rowFn function that yields the value of a result row
+     * @param joinFn function that joins a tuple with its key's row value
+     * @param unknownFn function called with a tuple whose key has no row. May be null.
+     * @return the stream of joined results
+     */
+    public <T,K,V,R> TStream<R> executeLookup(TStream<T> stream, String name,
+            Supplier<String> querySupplier, Function<T,K> keyFn,
+            RowFunction<K> rowKeyFn, RowFunction<V> rowFn,
+            BiFunction<T,V,R> joinFn, Consumer<T> unknownFn) {
+        return executeLookup(stream, name, querySupplier, keyFn, rowKeyFn,
+                rowFn, joinFn, unknownFn, null);
+    }
+    
+    /**
+     * Look up the row for each stream tuple's key using batched queries
+     * and a read-through cache of the row values.
+     * <p>
+     * As {@link #executeLookup(TStream, String, Supplier, Function, RowFunction, RowFunction, BiFunction, Consumer)}
+     * except that a tuple whose key's value, or unknown key, is cached
+     * is resolved from the cache rather than queried.
+     * 
+     * @param <T> Tuple type
+     * @param <K> Key type
+     * @param <V> Row type
+     * @param <R> Result type
+     * @param stream tuples to look up
+     * @param name the name of the lookup's metrics
+     * @param querySupplier supplies the SQL query
+     * @param keyFn function that yields a tuple's key
+     * @param rowKeyFn function that yields the key of a result row
+     * @param rowFn function that yields the value of a result row
+     * @param joinFn function that joins a tuple with its key's row value
+     * @param unknownFn function called with a tuple whose key has no row. May be null.
+     * @param cache the cache of row values. May be null.
+     * @return the stream of joined results
+     */
+    public <T,K,V,R> TStream<R> executeLookup(TStream<T> stream, String name,
+            Supplier<String> querySupplier, Function<T,K> keyFn,
+            RowFunction<K> rowKeyFn, RowFunction<V> rowFn,
+            BiFunction<T,V,R> joinFn, Consumer<T> unknownFn,
+            LookupCache<K,V> cache) {
+        return executeLookup(stream, name, querySupplier, keyFn, rowKeyFn,
+                rowFn, joinFn, unknownFn, cache, null);
+    }
+    
+    /**
+     * Look up the row for each stream tuple's key using batched queries,
+     * a read-through cache of the row values and a failure function.
+     * <p>
+     * As {@link #executeLookup(TStream, String, Supplier, Function, RowFunction, RowFunction, BiFunction, Consumer, LookupCache)}
+     * except that a tuple whose batch's query fails is passed to
+     * {@code failedFn}, with the query's exception, rather than being
+     * silently dropped.  The failure has already been logged.
+     * 
+     * @param <T> Tuple type
+     * @param <K> Key type
+     * @param <V> Row type
+     * @param <R> Result type
+     * @param stream tuples to look up
+     * @param name the name of the lookup's metrics
+     * @param querySupplier supplies the SQL query
+     * @param keyFn function that yields a tuple's key
+     * @param rowKeyFn function that yields the key of a result row
+     * @param rowFn function that yields the value of a result row
+     * @param joinFn function that joins a tuple with its key's row value
+     * @param unknownFn function called with a tuple whose key has no row. May be null.
+     * @param cache the cache of row values. May be null.
+     * @param failedFn function called with a tuple whose query failed. May be null.
+     * @return the stream of joined results
+     */
+    public <T,K,V,R> TStream<R> executeLookup(TStream<T> stream, String name,
+            Supplier<String> querySupplier, Function<T,K> keyFn,
+            RowFunction<K> rowKeyFn, RowFunction<V> rowFn,
+            BiFunction<T,V,R> joinFn, Consumer<T> unknownFn,
+            LookupCache<K,V> cache, BiConsumer<T,SQLException> failedFn) {
+        return stream.pipe(new BatchedLookup<>(this, name, querySupplier,
+                keyFn, rowKeyFn, rowFn, joinFn, unknownFn, cache, failedFn));
+    }
+    
+    CheckedSupplier<DataSource> getDataSourceFn() {
+        return dataSourceFn;
+    }
+    
+    CheckedFunction<DataSource,Connection> getConnFn() {
+        return connFn;
+    }
+    
+    int getBatchSize() {
+        return batchSize;
+    }
+    
+    long getLingerMsec() {
+        return lingerMsec;
+    }
+    
+    /**
+     * Determine whether a failure may succeed if retried.
+     * @param e the failure
+     * @return true if transient
+     */
+    static boolean isTransient(SQLException e) {
+        for (SQLException x = e; x != null; x = x.getNextException()) {
+            if (x instanceof SQLTransientException || x instanceof SQLRecoverableException)
+                return true;
+            // connection exception or transaction rollback (e.g., deadlock)
+            String state = x.getSQLState();
+            if (state != null && (state.startsWith("08") || state.startsWith("40")))
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * The batch writer oplet.
+     *
+     * @param <T> Tuple type
+     */
+    static class BatchedStatement<T> extends Sink<T> {
+        private static final long serialVersionUID = 1L;
+        
+        private final BatchedJdbcStreams connector;
+        private final String name;
+        private final Supplier<String> stmtSupplier;
+        private final ParameterSetter<T> paramSetter;
+        
+        private transient ScheduledExecutorService executor;
+        private transient MetricRegistry registry;
+        private transient Meter rowsMeter;
+        private transient Timer batchTimer;
+        private transient Counter failedCounter;
+        
+        // guarded by this
+        private transient DataSource ds;
+        private transient Connection cn;
+        private transient PreparedStatement stmt;
+        private transient List<T> batch;
+        private transient List<T> uncommitted;
+        private transient int uncommittedBatches;
+        private transient ScheduledFuture<?> lingerFlush;
+        // rows awaiting a retry after a transient failure
+        private transient List<T> pending;
+        private transient int pendingAttempt;
+        private transient ScheduledFuture<?> retryFuture;
+        private transient boolean closing;
+        private transient long rowCount;
+        private transient long failedCount;
+        
+        BatchedStatement(BatchedJdbcStreams connector, String name,
+                Supplier<String> stmtSupplier, ParameterSetter<T> paramSetter) {
+            this.connector = connector;
+            this.name = name;
+            this.stmtSupplier = stmtSupplier;
+            this.paramSetter = paramSetter;
+            setSinker(this::write);
+        }
+        
+        @Override
+        public void initialize(OpletContext<T, Void> context) {
+            super.initialize(context);
+            executor = context.getService(ScheduledExecutorService.class);
+            registry = context.getService(MetricRegistry.class);
+            if (registry != null) {
+                rowsMeter = registry.meter(metricName("rows"));
+                batchTimer = registry.timer(metricName("batchLatency"));
+                failedCounter = registry.counter(metricName("failedRows"));
+            }
+            batch = new ArrayList<>(connector.batchSize);
+            uncommitted = new ArrayList<>();
+            pending = new ArrayList<>();
+        }
+        
+        private String metricName(String metric) {
+            return MetricRegistry.name("jdbcBatch", name, metric);
+        }
+        
+        private synchronized void write(T tuple) {
+            batch.add(tuple);
+            // the batch is written once the pending retry completes
+            if (!pending.isEmpty())
+                return;
+            if (batch.size() >= connector.batchSize)
+                flush(false);
+            else if (lingerFlush == null)
+                lingerFlush = executor.schedule(() -> lingerFlush(),
+                        connector.lingerMsec, TimeUnit.MILLISECONDS);
+        }
+        
+        private synchronized void lingerFlush() {
+            lingerFlush = null;
+            flush(true);
+        }
+        
+        private void flush(boolean commit) {
+            if (lingerFlush != null) {
+                lingerFlush.cancel(false);
+                lingerFlush = null;
+            }
+            if (!pending.isEmpty() || (batch.isEmpty() && uncommitted.isEmpty()))
+                return;
+            List<T> rows = batch;
+            batch = new ArrayList<>(connector.batchSize);
+            try {
+                connect();
+            }
+            catch (SQLException e) {
+                List<T> replay = new ArrayList<>(uncommitted);
+                replay.addAll(rows);
+                uncommitted.clear();
+                uncommittedBatches = 0;
+                unwritable(replay, 0, e);
+                return;
+            }
+            try {
+                if (!rows.isEmpty()) {
+                    executeBatch(rows);
+                    uncommitted.addAll(rows);
+                    uncommittedBatches++;
+                }
+                if (commit || uncommittedBatches >= connector.batchesPerCommit)
+                    commit();
+                else if (!closing)
+                    // commit the executed rows if no more tuples arrive
+                    lingerFlush = executor.schedule(() -> lingerFlush(),
+                            connector.lingerMsec, TimeUnit.MILLISECONDS);
+            }
+            catch (SQLException e) {
+                logger.warn("Batch {} failed, retrying {} rows: {}", name,
+                        uncommitted.size() + rows.size(), e.toString());
+                rollback(e);
+                List<T> replay = new ArrayList<>(uncommitted);
+                replay.addAll(rows);
+                uncommitted.clear();
+                uncommittedBatches = 0;
+                if (isTransient(e))
+                    retryLater(replay, 0);
+                else
+                    execute(replay, 0);
+            }
+        }
+        
+        private void connect() throws SQLException {
+            if (cn != null)
+                return;
+            try {
+                if (ds == null)
+                    ds = connector.dataSourceFn.get();
+                cn = connector.connFn.apply(ds);
+                cn.setAutoCommit(false);
+                stmt = cn.prepareStatement(stmtSupplier.get());
+            }
+            catch (SQLException e) {
+                disconnect();
+                throw e;
+            }
+            catch (Exception e) {
+                disconnect();
+                // e.g., the DataSource is unavailable, so it may be retried
+                throw new SQLTransientConnectionException("Unable to connect", "08001", e);
+            }
+        }
+        
+        private void executeBatch(List<T> rows) throws SQLException {
+            long start = System.nanoTime();
+            for (T row : rows) {
+                paramSetter.setParameters(row, stmt);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            if (batchTimer != null)
+                batchTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        
+        private void commit() throws SQLException {
+            cn.commit();
+            committed(uncommitted.size());
+            uncommitted.clear();
+            uncommittedBatches = 0;
+        }
+        
+        private void committed(int rows) {
+            rowCount += rows;
+            if (rowsMeter != null)
+                rowsMeter.mark(rows);
+        }
+        
+        private void rollback(SQLException cause) {
+            try {
+                if (stmt != null)
+                    stmt.clearBatch();
+                if (cn != null)
+                    cn.rollback();
+            }
+            catch (SQLException e) {
+                logger.trace("rollback failed", e);
+                disconnect();
+                return;
+            }
+            if (isTransient(cause))
+                disconnect();
+        }
+        
+        private void disconnect() {
+            try {
+                if (cn != null)
+                    cn.close();
+            }
+            catch (SQLException e) {
+                logger.trace("close failed", e);
+            }
+            cn = null;
+            stmt = null;
+        }
+        
+        /**
+         * Execute and commit rows, splitting them on a non-transient failure
+         * and retrying them later on a transient failure.
+         */
+        private void execute(List<T> rows, int attempt) {
+            if (!pending.isEmpty()) {
+                // keep behind the rows already awaiting a retry
+                pending.addAll(rows);
+                return;
+            }
+            try {
+                connect();
+            }
+            catch (SQLException e) {
+                unwritable(rows, attempt, e);
+                return;
+            }
+            try {
+                executeBatch(rows);
+                cn.commit();
+                committed(rows.size());
+            }
+            catch (SQLException e) {
+                rollback(e);
+                if (isTransient(e)) {
+                    retryLater(rows, attempt);
+                }
+                else if (rows.size() == 1) {
+                    failed(rows, e.toString());
+                }
+                else {
+                    int half = rows.size() / 2;
+                    execute(new ArrayList<>(rows.subList(0, half)), attempt);
+                    execute(new ArrayList<>(rows.subList(half, rows.size())), attempt);
+                }
+            }
+        }
+        
+        /**
+         * Handle rows that couldn't be written because the connection or
+         * statement failed, rather than the rows.  The rows are retried
+         * as a whole if the failure is transient, otherwise dropped.
+         */
+        private void unwritable(List<T> rows, int attempt, SQLException e) {
+            if (isTransient(e)) {
+                logger.warn("Batch {} unable to connect, retrying {} rows: {}", name,
+                        rows.size(), e.toString());
+                retryLater(rows, attempt);
+                return;
+            }
+            logger.error("Batch {} unable to open its connection or statement, dropping {} rows",
+                    name, rows.size(), e);
+            dropped(rows.size());
+        }
+        
+        /**
+         * Retry rows after a backoff, or drop them if their retries
+         * are exhausted.
+         * @param attempt the number of retries of the rows so far
+         */
+        private void retryLater(List<T> rows, int attempt) {
+            if (closing) {
+                failed(rows, "closed");
+                return;
+            }
+            if (attempt >= MAX_RETRIES) {
+                failed(rows, "retries exhausted");
+                return;
+            }
+            pending.addAll(rows);
+            pendingAttempt = attempt;
+            if (retryFuture == null)
+                retryFuture = executor.schedule(() -> retryPending(),
+                        RETRY_BACKOFF_MSEC << attempt, TimeUnit.MILLISECONDS);
+        }
+        
+        private synchronized void retryPending() {
+            retryFuture = null;
+            if (pending.isEmpty())
+                return;
+            List<T> rows = pending;
+            pending = new ArrayList<>();
+            execute(rows, pendingAttempt + 1);
+            // write the tuples that arrived during the backoff
+            if (pending.isEmpty() && !closing)
+                flush(true);
+        }
+        
+        private void failed(List<T> rows, String reason) {
+            dropped(rows.size());
+            for (T row : rows)
+                logger.error("Batch {} unable to write {}: {}", name, row, reason);
+        }
+        
+        private void dropped(int rows) {
+            failedCount += rows;
+            if (failedCounter != null)
+                failedCounter.inc(rows);
+        }
+        
+        /**
+         * Get the number of committed rows.
+         * @return the count
+         */
+        synchronized long getRowCount() {
+            return rowCount;
+        }
+        
+        /**
+         * Get the number of rows dropped because they couldn't be written.
+         * @return the count
+         */
+        synchronized long getFailedCount() {
+            return failedCount;
+        }
+        
+        @Override
+        public void close() {
+            synchronized (this) {
+                // make one last attempt to write the pending rows
+                closing = true;
+                if (retryFuture != null) {
+                    retryFuture.cancel(false);
+                    retryFuture = null;
+                }
+                List<T> rows = pending;
+                pending = new ArrayList<>();
+                if (!rows.isEmpty())
+                    execute(rows, MAX_RETRIES);
+                flush(true);
+                disconnect();
+            }
+            if (registry != null)
+                registry.removeMatching((metricName, metric) ->
+                        metricName.startsWith(MetricRegistry.name("jdbcBatch", name) + "."));
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.edgent.function.BiConsumer;
+import org.apache.edgent.function.BiFunction;
+import org.apache.edgent.function.Consumer;
+import org.apache.edgent.function.Function;
+import org.apache.edgent.function.Supplier;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Pipe;
+import org.apache.edgent.samples.connectors.jdbc.BatchedJdbcStreams.RowFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The batched lookup oplet.
+ * <p>
+ * The IN list is padded, by repeating the last key, to a power of two
+ * so that only a few distinct statements are prepared and cached.
+ * <p>
+ * With a {@link LookupCache} a tuple whose key is cached is resolved
+ * without a query.  It is submitted immediately unless it must wait,
+ * to preserve the tuple order, for a batch that is being collected.
+ * Keys due to be refreshed are added to the next query, as long as
+ * it has fewer than {@code batchSize} keys, otherwise they wait for
+ * a later query.
+ * <p>
+ * When a query fails its unresolved tuples are passed to the failure
+ * function, with the exception, and counted rather than submitted.
+ *
+ * @param <T> Tuple type
+ * @param <K> Key type
+ * @param <V> Row type
+ * @param <R> Result type
+ * @see BatchedJdbcStreams#executeLookup(org.apache.edgent.topology.TStream, String, Supplier, Function, RowFunction, RowFunction, BiFunction, Consumer, LookupCache, BiConsumer)
+ */
+class BatchedLookup<T,K,V,R> extends Pipe<T,R> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(BatchedLookup.class);
+    
+    private final BatchedJdbcStreams connector;
+    private final String name;
+    private final Supplier<String> querySupplier;
+    private final Function<T,K> keyFn;
+    private final RowFunction<K> rowKeyFn;
+    private final RowFunction<V> rowFn;
+    private final BiFunction<T,V,R> joinFn;
+    private final Consumer<T> unknownFn;
+    private final LookupCache<K,V> cache;
+    private final BiConsumer<T,SQLException> failedFn;
+    
+    private transient ScheduledExecutorService executor;
+    private transient MetricRegistry registry;
+    private transient Timer queryTimer;
+    private transient Counter unknownCounter;
+    private transient Counter failedCounter;
+    
+    // guarded by this
+    private transient DataSource ds;
+    private transient Connection cn;
+    private transient Map<Integer,PreparedStatement> statements;
+    private transient List<Pending<T,K,V>> batch;
+    private transient LinkedHashSet<K> refreshKeys;
+    private transient ScheduledFuture<?> lingerLookup;
+    private transient long queryCount;
+    
+    BatchedLookup(BatchedJdbcStreams connector, String name,
+            Supplier<String> querySupplier, Function<T,K> keyFn,
+            RowFunction<K> rowKeyFn, RowFunction<V> rowFn,
+            BiFunction<T,V,R> joinFn, Consumer<T> unknownFn,
+            LookupCache<K,V> cache, BiConsumer<T,SQLException> failedFn) {
+        checkQuery(querySupplier.get());
+        this.connector = connector;
+        this.name = name;
+        this.querySupplier = querySupplier;
+        this.keyFn = keyFn;
+        this.rowKeyFn = rowKeyFn;
+        this.rowFn = rowFn;
+        this.joinFn = joinFn;
+        this.unknownFn = unknownFn;
+        this.cache = cache;
+        this.failedFn = failedFn;
+    }
+    
+    /**
+     * A tuple waiting for its batch's query.
+     */
+    private static final class Pending<T,K,V> {
+        final T tuple;
+        final K key;
+        boolean resolved;
+        V value;
+        
+        Pending(T tuple, K key) {
+            this.tuple = tuple;
+            this.key = key;
+        }
+    }
+    
+    @Override
+    public void initialize(OpletContext<T, R> context) {
+        super.initialize(context);
+        executor = context.getService(ScheduledExecutorService.class);
+        registry = context.getService(MetricRegistry.class);
+        if (registry != null) {
+            queryTimer = registry.timer(metricName("queryLatency"));
+            unknownCounter = registry.counter(metricName("unknownKeys"));
+            failedCounter = registry.counter(metricName("failedLookups"));
+            if (cache != null)
+                cache.register(registry);
+        }
+        statements = new HashMap<>();
+        batch = new ArrayList<>(connector.getBatchSize());
+        refreshKeys = new LinkedHashSet<>();
+    }
+    
+    private String metricName(String metric) {
+        return MetricRegistry.name("jdbcLookup", name, metric);
+    }
+
+    @Override
+    public synchronized void accept(T tuple) {
+        Pending<T,K,V> pending = new Pending<>(tuple, keyFn.apply(tuple));
+        if (cache != null) {
+            LookupCache.Entry<V> entry = cache.get(pending.key);
+            if (entry != null) {
+                if (cache.refreshDue(entry))
+                    refreshKeys.add(pending.key);
+                if (batch.isEmpty()) {
+                    emit(tuple, entry.value);
+                    if (refreshKeys.size() >= connector.getBatchSize())
+                        lookup();
+                    else
+                        scheduleLookup();
+                    return;
+                }
+                pending.resolved = true;
+                pending.value = entry.value;
+            }
+        }
+        batch.add(pending);
+        if (batch.size() >= connector.getBatchSize()
+                || refreshKeys.size() >= connector.getBatchSize())
+            lookup();
+        else
+            scheduleLookup();
+    }
+    
+    private void scheduleLookup() {
+        if (lingerLookup == null && (!batch.isEmpty() || !refreshKeys.isEmpty()))
+            lingerLookup = executor.schedule(() -> lingerLookup(),
+                    connector.getLingerMsec(), TimeUnit.MILLISECONDS);
+    }
+    
+    private synchronized void lingerLookup() {
+        lingerLookup = null;
+        lookup();
+    }
+    
+    private void lookup() {
+        if (lingerLookup != null) {
+            lingerLookup.cancel(false);
+            lingerLookup = null;
+        }
+        if (batch.isEmpty() && refreshKeys.isEmpty())
+            return;
+        List<Pending<T,K,V>> tuples = batch;
+        batch = new ArrayList<>(connector.getBatchSize());
+        // the batch's keys fit, the refresh keys fill the rest of the query
+        LinkedHashSet<K> keys = new LinkedHashSet<>();
+        for (Pending<T,K,V> pending : tuples) {
+            if (!pending.resolved)
+                keys.add(pending.key);
+        }
+        for (Iterator<K> it = refreshKeys.iterator();
+                it.hasNext() && keys.size() < connector.getBatchSize(); ) {
+            keys.add(it.next());
+            it.remove();
+        }
+        
+        Map<K,V> rows = null;
+        SQLException failure = null;
+        if (!keys.isEmpty()) {
+            try {
+                rows = query(new ArrayList<>(keys));
+            }
+            catch (SQLException e) {
+                logger.error("Lookup {} unable to query {} keys", name, keys.size(), e);
+                disconnect();
+                failure = e;
+            }
+            if (cache != null) {
+                for (K key : keys) {
+                    if (rows != null)
+                        cache.put(key, rows.get(key));
+                    else
+                        cache.refreshFailed(key);
+                }
+            }
+        }
+        
+        // fan the rows back out in tuple order.
+        // a failed query's unresolved tuples are reported as failed.
+        for (Pending<T,K,V> pending : tuples) {
+            if (pending.resolved)
+                emit(pending.tuple, pending.value);
+            else if (rows != null)
+                emit(pending.tuple, rows.get(pending.key));
+            else
+                failed(pending.tuple, failure);
+        }
+        scheduleLookup();
+    }
+    
+    private void emit(T tuple, V row) {
+        if (row != null) {
+            R result = joinFn.apply(tuple, row);
+            if (result != null)
+                submit(result);
+        }
+        else {
+            if (unknownCounter != null)
+                unknownCounter.inc();
+            if (unknownFn != null)
+                unknownFn.accept(tuple);
+        }
+    }
+    
+    private void failed(T tuple, SQLException e) {
+        if (failedCounter != null)
+            failedCounter.inc();
+        if (failedFn != null)
+            failedFn.accept(tuple, e);
+    }
+    
+    private Map<K,V> query(List<K> keys) throws SQLException {
+        int size = Integer.highestOneBit(keys.size());
+        if (size < keys.size())
+            size <<= 1;
+        PreparedStatement stmt = statement(size);
+        for (int i = 0; i < size; i++)
+            stmt.setObject(i + 1, keys.get(Math.min(i, keys.size() - 1)));
+        
+        long start = System.nanoTime();
+        Map<K,V> rows = new HashMap<>();
+        try (ResultSet rSet = stmt.executeQuery()) {
+            while (rSet.next())
+                rows.put(rowKeyFn.apply(rSet), rowFn.apply(rSet));
+        }
+        if (queryTimer != null)
+            queryTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        queryCount++;
+        return rows;
+    }
+    
+    private PreparedStatement statement(int nKeys) throws SQLException {
+        if (cn == null) {
+            try {
+                if (ds == null)
+                    ds = connector.getDataSourceFn().get();
+                cn = connector.getConnFn().apply(ds);
+            }
+            catch (SQLException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new SQLException("Unable to connect", e);
+            }
+        }
+        PreparedStatement stmt = statements.get(nKeys);
+        if (stmt == null) {
+            stmt = cn.prepareStatement(expand(querySupplier.get(), nKeys));
+            statements.put(nKeys, stmt);
+        }
+        return stmt;
+    }
+    
+    /**
+     * Check that the query's only parameter is its key parameter.
+     * The keys are the only values bound to the query.
+     * @throws IllegalArgumentException if the query doesn't have
+     *         exactly one {@code ?}
+     */
+    static void checkQuery(String query) {
+        int marker = query.indexOf('?');
+        if (marker < 0)
+            throw new IllegalArgumentException("query has no key parameter: " + query);
+        if (query.indexOf('?', marker + 1) >= 0)
+            throw new IllegalArgumentException("query has more than one parameter: " + query);
+    }
+    
+    /**
+     * Replace the query's {@code ?} with {@code nKeys} parameter markers.
+     */
+    static String expand(String query, int nKeys) {
+        checkQuery(query);
+        int marker = query.indexOf('?');
+        StringBuilder sb = new StringBuilder(query.length() + 2 * nKeys);
+        sb.append(query, 0, marker);
+        for (int i = 0; i < nKeys; i++)
+            sb.append(i == 0 ? "?" : ",?");
+        sb.append(query, marker + 1, query.length());
+        return sb.toString();
+    }
+    
+    private void disconnect() {
+        try {
+            if (cn != null)
+                cn.close();
+        }
+        catch (SQLException e) {
+            logger.trace("close failed", e);
+        }
+        cn = null;
+        statements.clear();
+    }
+    
+    /**
+     * Get the number of queries executed.
+     * @return the count
+     */
+    synchronized long getQueryCount() {
+        return queryCount;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            // nothing uses a refresh now
+            refreshKeys.clear();
+            lookup();
+            disconnect();
+        }
+        if (registry != null) {
+            registry.removeMatching((metricName, metric) ->
+                    metricName.startsWith(MetricRegistry.name("jdbcLookup", name) + "."));
+            if (cache != null)
+                cache.unregister(registry);
+        }
+    }
+}
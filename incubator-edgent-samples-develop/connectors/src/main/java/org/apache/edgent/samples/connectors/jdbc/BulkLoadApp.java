@@ -0,0 +1,77 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+/**
+ * Bulk load a person data file into the persons table, e.g., to seed
+ * a reference table with millions of rows.
+ * <p>
+ * Unlike {@link SimpleWriterApp} this doesn't use a topology: the file
+ * is streamed, parsed and inserted with JDBC batches by
+ * {@link PersonData#bulkLoadPersonData(DataSource, Properties)}, using
+ * constant memory.  When the "persondata.import" property is "derby"
+ * the file is instead imported by the database with
+ * {@link PersonData#importPersonData(DataSource, Properties)}.
+ */
+public class BulkLoadApp {
+    private final Properties props;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1)
+            throw new Exception("missing pathname to jdbc.properties file");
+        BulkLoadApp loader = new BulkLoadApp(args[0]);
+        loader.run();
+    }
+
+    /**
+     * @param jdbcPropsPath pathname to properties file
+     */
+    BulkLoadApp(String jdbcPropsPath) throws Exception {
+        props = new Properties();
+        props.load(Files.newBufferedReader(new File(jdbcPropsPath).toPath()));
+    }
+    
+    private void run() throws Exception {
+        DataSource ds = DbUtils.getDataSource(props);
+        DbUtils.initDb(ds);
+        
+        String mode = props.getProperty("persondata.import", "batch");
+        long start = System.nanoTime();
+        if ("derby".equals(mode)) {
+            PersonData.importPersonData(ds, props);
+        }
+        else if ("batch".equals(mode)) {
+            PersonData.bulkLoadPersonData(ds, props);
+        }
+        else {
+            throw new IllegalArgumentException("unrecognized persondata.import '" + mode + "'");
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        long nRows = DbUtils.countRows(ds, "persons");
+        System.out.println(String.format("loaded %d persons from %s in %.1f sec (%.0f rows/sec) using %s",
+                nRows, props.getProperty("persondata.path"), secs, nRows / secs, mode));
+    }
+}
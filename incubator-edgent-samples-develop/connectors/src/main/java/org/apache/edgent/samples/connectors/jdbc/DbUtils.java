@@ -20,9 +20,14 @@ package org.apache.edgent.samples.connectors.jdbc;
 
 import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -30,19 +35,75 @@ import javax.sql.DataSource;
  * Utilities for the sample's non-streaming JDBC database related actions.
  */
 public class DbUtils {
+    private static final Map<String,DataSource> dataSources = new ConcurrentHashMap<>();
     
     /**
      * Get the JDBC {@link DataSource} for the database.
      * <p>
      * The "db.name" property specifies the name of the database.
      * Defaults to "JdbcConnectorSampleDb".
+     * <p>
+     * The DataSource's connections are pooled, see
+     * {@link #getPooledDataSource(DataSource, Properties)}, unless the
+     * "db.pool.maxConnections" property is 0.  Calls with the same
+     * "db.*" properties share the pooled DataSource.
      * 
      * @param props configuration properties
      * @return the DataSource
      * @throws Exception on failure
      */
     public static DataSource getDataSource(Properties props) throws Exception {
-        return createDerbyEmbeddedDataSource(props);
+        if (Integer.valueOf(props.getProperty("db.pool.maxConnections", "4")) == 0)
+            return createDerbyEmbeddedDataSource(props);
+        
+        Map<String,String> dbProps = new TreeMap<>();
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith("db."))
+                dbProps.put(name, props.getProperty(name));
+        }
+        String key = dbProps.toString();
+        DataSource ds = dataSources.get(key);
+        if (ds == null) {
+            synchronized (dataSources) {
+                ds = dataSources.get(key);
+                if (ds == null) {
+                    ds = getPooledDataSource(createDerbyEmbeddedDataSource(props), props);
+                    dataSources.put(key, ds);
+                }
+            }
+        }
+        return ds;
+    }
+    
+    /**
+     * Get a pooled DataSource for a DataSource of any JDBC driver.
+     * <p>
+     * The following properties configure the pool:
+     * <ul>
+     * <li>"db.pool.minConnections" - the minimum number of connections
+     *      kept open.  Defaults to 1.</li>
+     * <li>"db.pool.maxConnections" - the maximum number of open connections.
+     *      Defaults to 4.</li>
+     * <li>"db.pool.idleSec" - close a connection that has been idle this long.
+     *      Defaults to 60.</li>
+     * <li>"db.pool.statementCacheSize" - the number of prepared statements
+     *      cached per connection.  Defaults to 32.</li>
+     * <li>"db.pool.maxWaitSec" - the maximum time to wait for a connection.
+     *      Defaults to 30.</li>
+     * </ul>
+     * 
+     * @param ds the DataSource of the pooled connections
+     * @param props configuration properties
+     * @return the pooled DataSource
+     */
+    public static PooledDataSource getPooledDataSource(DataSource ds, Properties props) {
+        int max = Integer.valueOf(props.getProperty("db.pool.maxConnections", "4"));
+        return new PooledDataSource(ds,
+                Math.min(max, Integer.valueOf(props.getProperty("db.pool.minConnections", "1"))),
+                max,
+                TimeUnit.SECONDS.toMillis(Long.valueOf(props.getProperty("db.pool.idleSec", "60"))),
+                Integer.valueOf(props.getProperty("db.pool.statementCacheSize", "32")),
+                TimeUnit.SECONDS.toMillis(Long.valueOf(props.getProperty("db.pool.maxWaitSec", "30"))));
     }
     
     /**
@@ -63,15 +124,31 @@ public class DbUtils {
      * @throws Exception on failure
      */
     public static void purgeTables(DataSource ds) throws Exception {
-        try (Connection cn = ds.getConnection()) {
-            Statement stmt = cn.createStatement();
+        try (Connection cn = ds.getConnection();
+                Statement stmt = cn.createStatement()) {
             stmt.execute("DELETE FROM persons");
         }
     }
 
+    /**
+     * Count a table's rows.
+     * @param ds the DataSource
+     * @param table the table
+     * @return the number of rows
+     * @throws Exception on failure
+     */
+    public static long countRows(DataSource ds, String table) throws Exception {
+        try (Connection cn = ds.getConnection();
+                Statement stmt = cn.createStatement();
+                ResultSet rSet = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rSet.next();
+            return rSet.getLong(1);
+        }
+    }
+
     private static void createTables(DataSource ds) throws Exception {
-        try (Connection cn = ds.getConnection()) {
-            Statement stmt = cn.createStatement();
+        try (Connection cn = ds.getConnection();
+                Statement stmt = cn.createStatement()) {
             stmt.execute("CREATE TABLE persons "
                     + "("
                     + "id INTEGER NOT NULL,"
@@ -0,0 +1,203 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.edgent.connectors.jdbc.JdbcStreams;
+import org.apache.edgent.connectors.jdbc.ParameterSetter;
+import org.apache.edgent.execution.Job;
+import org.apache.edgent.providers.direct.DirectProvider;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+import org.apache.edgent.topology.plumbing.PlumbingStreams;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Compare the insert rate of
+ * {@link JdbcStreams#executeStatement(TStream, org.apache.edgent.function.Supplier, ParameterSetter)
+ * JdbcStreams.executeStatement()}, which executes a statement per tuple,
+ * with {@link BatchedJdbcStreams}.
+ * <p>
+ * The "benchmark.rows" property specifies the number of rows to insert,
+ * default 20000.  The "writer.batch.*" properties configure the batching as
+ * for {@link SimpleWriterApp}, except that "writer.batch.size"
+ * defaults to 500.
+ * <p>
+ * The batched inserts are also run with the tuples split over
+ * "writer.threads" (default 4) writers, each on its own thread and
+ * connection from the {@link DbUtils} connection pool.
+ */
+public class JdbcWriterBenchmark {
+    // give up waiting for the rows when none are inserted for this long
+    private static final long STALL_MSEC = 10_000;
+    
+    private final Properties props;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1)
+            throw new Exception("missing pathname to jdbc.properties file");
+        JdbcWriterBenchmark benchmark = new JdbcWriterBenchmark(args[0]);
+        benchmark.run();
+    }
+
+    /**
+     * @param jdbcPropsPath pathname to properties file
+     */
+    JdbcWriterBenchmark(String jdbcPropsPath) throws Exception {
+        props = new Properties();
+        props.load(Files.newBufferedReader(new File(jdbcPropsPath).toPath()));
+    }
+    
+    private void run() throws Exception {
+        int nRows = Integer.valueOf(props.getProperty("benchmark.rows", "20000"));
+        int batchSize = Integer.valueOf(props.getProperty("writer.batch.size", "500"));
+        long lingerMsec = Long.valueOf(props.getProperty("writer.batch.lingerMsec", "100"));
+        int perCommit = Integer.valueOf(props.getProperty("writer.batch.perCommit", "1"));
+        int nThreads = Integer.valueOf(props.getProperty("writer.threads", "4"));
+        // a connection per writer and one to count the rows
+        props.putIfAbsent("db.pool.maxConnections", String.valueOf(nThreads + 1));
+        
+        List<Person> persons = new ArrayList<>(nRows);
+        for (int id = 1; id <= nRows; id++)
+            persons.add(new Person(id, "first" + id, "last" + id));
+        
+        ParameterSetter<Person> paramSetter = (person,stmt) -> {
+            stmt.setInt(1, person.id);
+            stmt.setString(2, person.firstName);
+            stmt.setString(3, person.lastName);
+        };
+        
+        DataSource ds = DbUtils.getDataSource(props);
+        DbUtils.initDb(ds);
+        
+        double perRow = measure(ds, persons, t -> {
+                JdbcStreams myDb = new JdbcStreams(t,
+                        () -> DbUtils.getDataSource(props),
+                        dataSource -> dataSource.getConnection());
+                myDb.executeStatement(t.collection(persons),
+                        () -> "INSERT INTO persons VALUES(?,?,?)", paramSetter);
+            });
+        System.out.println(String.format("per-row inserts: %.0f rows/sec", perRow));
+        
+        DbUtils.purgeTables(ds);
+        double batched = measure(ds, persons, t -> {
+                BatchedJdbcStreams myDb = new BatchedJdbcStreams(
+                        () -> DbUtils.getDataSource(props),
+                        dataSource -> dataSource.getConnection(),
+                        batchSize, lingerMsec, perCommit);
+                myDb.executeBatch(t.collection(persons), "benchmark",
+                        () -> "INSERT INTO persons VALUES(?,?,?)", paramSetter);
+            });
+        System.out.println(String.format("batched inserts (batchSize=%d perCommit=%d): %.0f rows/sec",
+                batchSize, perCommit, batched));
+        System.out.println(String.format("speedup: %.1fx", batched / perRow));
+        
+        DbUtils.purgeTables(ds);
+        double parallel = measure(ds, persons, t -> {
+                BatchedJdbcStreams myDb = new BatchedJdbcStreams(
+                        () -> DbUtils.getDataSource(props),
+                        dataSource -> dataSource.getConnection(),
+                        batchSize, lingerMsec, perCommit);
+                List<TStream<Person>> channels = t.collection(persons)
+                        .split(nThreads, person -> person.id % nThreads);
+                for (int i = 0; i < nThreads; i++) {
+                    myDb.executeBatch(PlumbingStreams.isolate(channels.get(i), batchSize * 4),
+                            "benchmark" + i,
+                            () -> "INSERT INTO persons VALUES(?,?,?)", paramSetter);
+                }
+            });
+        System.out.println(String.format("batched inserts with %d writers: %.0f rows/sec",
+                nThreads, parallel));
+        if (ds instanceof PooledDataSource) {
+            PooledDataSource pool = (PooledDataSource) ds;
+            System.out.println(String.format("connections created: %d, statements prepared: %d, reused: %d",
+                    pool.getCreatedCount(), pool.getStatementMissCount(), pool.getStatementHitCount()));
+        }
+        DbUtils.purgeTables(ds);
+    }
+    
+    private interface TopologyBuilder {
+        void build(Topology t) throws Exception;
+    }
+    
+    /**
+     * Run a topology that inserts the persons and return the rows/second.
+     * <p>
+     * The wait ends once the rows have been inserted, the batched writers'
+     * {@code failedRows} counters account for the missing rows, or no rows
+     * have been inserted for a while.  Any shortfall is reported.
+     */
+    private static double measure(DataSource ds, List<Person> persons,
+            TopologyBuilder builder) throws Exception {
+        DirectProvider tp = new DirectProvider();
+        MetricRegistry registry = new MetricRegistry();
+        tp.getServices().addService(MetricRegistry.class, registry);
+        Topology t = tp.newTopology("jdbcWriterBenchmark");
+        builder.build(t);
+        
+        long start = System.nanoTime();
+        Job job = tp.submit(t).get();
+        long rows = 0;
+        long failed = 0;
+        long progressTime = start;
+        try (Connection cn = ds.getConnection()) {
+            Statement stmt = cn.createStatement();
+            for (;;) {
+                long n;
+                try (ResultSet rSet = stmt.executeQuery("SELECT COUNT(*) FROM persons")) {
+                    rSet.next();
+                    n = rSet.getLong(1);
+                }
+                failed = 0;
+                for (Counter counter : registry.getCounters((name, metric) ->
+                        name.endsWith(".failedRows")).values())
+                    failed += counter.getCount();
+                long now = System.nanoTime();
+                if (n > rows) {
+                    rows = n;
+                    progressTime = now;
+                }
+                if (rows + failed >= persons.size()
+                        || now - progressTime > TimeUnit.MILLISECONDS.toNanos(STALL_MSEC))
+                    break;
+                Thread.sleep(10);
+            }
+        }
+        double secs = (progressTime - start) / 1e9;
+        job.stateChange(Job.Action.CLOSE);
+        if (rows < persons.size())
+            System.out.println(String.format("%d of %d rows weren't inserted, %d failed",
+                    persons.size() - rows, persons.size(), failed));
+        return secs > 0 ? rows / secs : 0;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A bounded, expiring cache of looked up values for a read-through
+ * lookup, e.g.,
+ * {@link BatchedJdbcStreams#executeLookup(org.apache.edgent.topology.TStream, String, org.apache.edgent.function.Supplier, org.apache.edgent.function.Function, BatchedJdbcStreams.RowFunction, BatchedJdbcStreams.RowFunction, org.apache.edgent.function.BiFunction, org.apache.edgent.function.Consumer, LookupCache)
+ * BatchedJdbcStreams.executeLookup()}.
+ * <p>
+ * The cache holds at most {@code maxSize} keys, evicting the least
+ * recently used key.  A value expires {@code ttl} after it was looked up.
+ * A key that has no value, i.e., an unknown key, is also cached and
+ * expires after {@code negativeTtl}.
+ * A value that is used within {@code refreshAhead} of its expiry is due to
+ * be refreshed: the value is still used and the key is looked up again in
+ * the background so that a hot key doesn't miss when it expires.
+ * <p>
+ * When registered with a {@code MetricRegistry} the following gauges
+ * are registered with the name {@code lookupCache.<name>.<metric>}:
+ * <ul>
+ * <li>{@code hits} - the number of lookups served by the cache,
+ *      including unknown keys</li>
+ * <li>{@code misses} - the number of lookups not in the cache or expired</li>
+ * <li>{@code evictions} - the number of keys evicted to bound the size</li>
+ * <li>{@code refreshes} - the number of keys refreshed ahead of expiry</li>
+ * <li>{@code size} - the number of cached keys</li>
+ * </ul>
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LookupCache<K,V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final String name;
+    private final int maxSize;
+    private final long ttlMsec;
+    private final long negativeTtlMsec;
+    private final long refreshAheadMsec;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    // guarded by this
+    private transient LinkedHashMap<K,Entry<V>> entries;
+    
+    /**
+     * A cached value.
+     *
+     * @param <V> Value type
+     */
+    static final class Entry<V> {
+        /** The value, null for an unknown key. */
+        final V value;
+        final long expires;
+        final long refreshAt;
+        boolean refreshing;
+        
+        Entry(V value, long expires, long refreshAt) {
+            this.value = value;
+            this.expires = expires;
+            this.refreshAt = refreshAt;
+        }
+    }
+    
+    /**
+     * Create a lookup cache.
+     * @param name the name of the cache's metrics
+     * @param maxSize the maximum number of cached keys
+     * @param ttl the time a value is cached
+     * @param negativeTtl the time an unknown key is cached, 0 to not cache unknown keys
+     * @param refreshAhead refresh a used value this long before it expires, 0 for no refresh
+     * @param unit the unit of the times
+     */
+    public LookupCache(String name, int maxSize, long ttl, long negativeTtl,
+            long refreshAhead, TimeUnit unit) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize");
+        if (ttl < 1)
+            throw new IllegalArgumentException("ttl");
+        if (negativeTtl < 0)
+            throw new IllegalArgumentException("negativeTtl");
+        if (refreshAhead < 0 || refreshAhead >= ttl)
+            throw new IllegalArgumentException("refreshAhead");
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMsec = unit.toMillis(ttl);
+        this.negativeTtlMsec = unit.toMillis(negativeTtl);
+        this.refreshAheadMsec = unit.toMillis(refreshAhead);
+    }
+    
+    private LinkedHashMap<K,Entry<V>> entries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<K,Entry<V>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K,Entry<V>> eldest) {
+                    if (size() <= maxSize)
+                        return false;
+                    evictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+        return entries;
+    }
+    
+    /**
+     * Get a key's cached value.
+     * @param key the key
+     * @return the entry, null if the key isn't cached or has expired
+     */
+    synchronized Entry<V> get(K key) {
+        Entry<V> entry = entries().get(key);
+        if (entry != null && System.currentTimeMillis() >= entry.expires) {
+            entries().remove(key);
+            entry = null;
+        }
+        if (entry == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return entry;
+    }
+    
+    /**
+     * Determine whether a key should be refreshed ahead of its expiry.
+     * A key is due at most once until it is put again.
+     * @param entry the key's entry
+     * @return true if the key is due to be refreshed
+     */
+    synchronized boolean refreshDue(Entry<V> entry) {
+        if (refreshAheadMsec == 0 || entry.value == null || entry.refreshing
+                || System.currentTimeMillis() < entry.refreshAt)
+            return false;
+        entry.refreshing = true;
+        refreshes.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * Cache a key's looked up value.
+     * @param key the key
+     * @param value the value, null if the key is unknown
+     */
+    synchronized void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        if (value != null)
+            entries().put(key, new Entry<>(value, now + ttlMsec, now + ttlMsec - refreshAheadMsec));
+        else if (negativeTtlMsec > 0)
+            entries().put(key, new Entry<>(null, now + negativeTtlMsec, Long.MAX_VALUE));
+        else
+            entries().remove(key);
+    }
+    
+    /**
+     * Clear a key's refresh after its lookup failed so that it is due again.
+     * @param key the key
+     */
+    synchronized void refreshFailed(K key) {
+        Entry<V> entry = entries().get(key);
+        if (entry != null)
+            entry.refreshing = false;
+    }
+    
+    /**
+     * Get the number of cached keys.
+     * @return the size
+     */
+    public synchronized int size() {
+        return entries().size();
+    }
+    
+    /**
+     * Get the number of lookups served by the cache.
+     * @return the count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * Get the number of lookups that weren't served by the cache.
+     * @return the count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    /**
+     * Get the number of keys evicted to bound the cache's size.
+     * @return the count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    /**
+     * Get the number of keys refreshed ahead of their expiry.
+     * @return the count
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+    
+    /**
+     * Register the cache's metrics.
+     * @param registry the registry
+     */
+    void register(MetricRegistry registry) {
+        register(registry, "hits", () -> getHitCount());
+        register(registry, "misses", () -> getMissCount());
+        register(registry, "evictions", () -> getEvictionCount());
+        register(registry, "refreshes", () -> getRefreshCount());
+        register(registry, "size", () -> size());
+    }
+    
+    private <T> void register(MetricRegistry registry, String metric, Gauge<T> gauge) {
+        String metricName = MetricRegistry.name("lookupCache", name, metric);
+        registry.remove(metricName);
+        registry.register(metricName, gauge);
+    }
+    
+    /**
+     * Unregister the cache's metrics.
+     * @param registry the registry
+     */
+    void unregister(MetricRegistry registry) {
+        registry.removeMatching((metricName, metric) ->
+                metricName.startsWith(MetricRegistry.name("lookupCache", name) + "."));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.edgent.execution.Job;
+import org.apache.edgent.providers.direct.DirectProvider;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Measure the queries avoided by a {@link LookupCache} in front of
+ * a JDBC person lookup whose ids have a Zipfian distribution,
+ * i.e., a few hot ids are looked up most of the time.
+ * <p>
+ * The following properties configure the benchmark:
+ * <ul>
+ * <li>"benchmark.rows" - the number of persons in the table, default 20000</li>
+ * <li>"benchmark.lookups" - the number of lookups, default 200000</li>
+ * <li>"benchmark.zipf.exponent" - the Zipf exponent, default 1.0</li>
+ * <li>"reader.batch.size" - the lookup batch size, default 1</li>
+ * <li>"reader.cache.size" - the cache size, default 1000</li>
+ * </ul>
+ * A tenth of the lookups are of unknown ids, which are negatively cached.
+ */
+public class LookupCacheBenchmark {
+    // give up waiting for the lookups when none complete for this long
+    private static final long STALL_MSEC = 10_000;
+    
+    private final Properties props;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1)
+            throw new Exception("missing pathname to jdbc.properties file");
+        LookupCacheBenchmark benchmark = new LookupCacheBenchmark(args[0]);
+        benchmark.run();
+    }
+
+    /**
+     * @param jdbcPropsPath pathname to properties file
+     */
+    LookupCacheBenchmark(String jdbcPropsPath) throws Exception {
+        props = new Properties();
+        props.load(Files.newBufferedReader(new File(jdbcPropsPath).toPath()));
+    }
+    
+    private void run() throws Exception {
+        int nRows = Integer.valueOf(props.getProperty("benchmark.rows", "20000"));
+        int nLookups = Integer.valueOf(props.getProperty("benchmark.lookups", "200000"));
+        double exponent = Double.valueOf(props.getProperty("benchmark.zipf.exponent", "1.0"));
+        int batchSize = Integer.valueOf(props.getProperty("reader.batch.size", "1"));
+        int cacheSize = Integer.valueOf(props.getProperty("reader.cache.size", "1000"));
+        
+        DataSource ds = DbUtils.getDataSource(props);
+        DbUtils.initDb(ds);
+        insertPersons(ds, nRows);
+        
+        // ids above nRows are unknown
+        List<PersonId> personIds = zipfIds(nRows + nRows / 10, exponent, nLookups);
+        
+        System.out.println(String.format("%d lookups of %d ids, zipf exponent %.2f, batch size %d",
+                nLookups, nRows, exponent, batchSize));
+        long uncached = measure(personIds, batchSize, null);
+        LookupCache<Integer,Person> cache = new LookupCache<>("benchmark", cacheSize,
+                300, 60, 30, TimeUnit.SECONDS);
+        long cached = measure(personIds, batchSize, cache);
+        System.out.println(String.format("cache size %d: hits %d misses %d evictions %d hit ratio %.1f%%",
+                cacheSize, cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount(),
+                100.0 * cache.getHitCount() / nLookups));
+        System.out.println(String.format("queries avoided: %d (%.1f%%)",
+                uncached - cached, 100.0 * (uncached - cached) / uncached));
+        DbUtils.purgeTables(ds);
+    }
+    
+    private static void insertPersons(DataSource ds, int nRows) throws Exception {
+        try (Connection cn = ds.getConnection()) {
+            cn.setAutoCommit(false);
+            PreparedStatement stmt = cn.prepareStatement("INSERT INTO persons VALUES(?,?,?)");
+            for (int id = 1; id <= nRows; id++) {
+                stmt.setInt(1, id);
+                stmt.setString(2, "first" + id);
+                stmt.setString(3, "last" + id);
+                stmt.addBatch();
+                if (id % 1000 == 0)
+                    stmt.executeBatch();
+            }
+            stmt.executeBatch();
+            cn.commit();
+        }
+    }
+    
+    /**
+     * Generate ids in [1, nIds] with a Zipfian distribution.
+     * The ids are shuffled so that the hot ids are spread over the table.
+     */
+    private static List<PersonId> zipfIds(int nIds, double exponent, int count) {
+        double[] cdf = new double[nIds];
+        double sum = 0;
+        for (int rank = 1; rank <= nIds; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        Random random = new Random(42);
+        int[] idOfRank = new int[nIds];
+        for (int i = 0; i < nIds; i++)
+            idOfRank[i] = i + 1;
+        for (int i = nIds - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = idOfRank[i];
+            idOfRank[i] = idOfRank[j];
+            idOfRank[j] = id;
+        }
+        List<PersonId> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            if (rank < 0)
+                rank = -rank - 1;
+            ids.add(new PersonId(idOfRank[Math.min(rank, nIds - 1)]));
+        }
+        return ids;
+    }
+    
+    /**
+     * Run the lookups and return the number of queries.
+     * <p>
+     * Lookups whose query failed are counted as processed and reported.
+     * The wait also ends if no lookups complete for a while.
+     */
+    private long measure(List<PersonId> personIds, int batchSize,
+            LookupCache<Integer,Person> cache) throws Exception {
+        DirectProvider tp = new DirectProvider();
+        MetricRegistry registry = new MetricRegistry();
+        tp.getServices().addService(MetricRegistry.class, registry);
+        Topology t = tp.newTopology("lookupCacheBenchmark");
+        
+        BatchedJdbcStreams myDb = new BatchedJdbcStreams(
+                () -> DbUtils.getDataSource(props),
+                dataSource -> dataSource.getConnection(),
+                batchSize, 10, 1);
+        AtomicLong processed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        TStream<Person> persons = myDb.executeLookup(t.collection(personIds), "benchmark",
+                () -> "SELECT id, firstname, lastname FROM persons WHERE id IN (?)",
+                personId -> personId.id,
+                rSet -> rSet.getInt("id"),
+                rSet -> new Person(rSet.getInt("id"),
+                                rSet.getString("firstname"),
+                                rSet.getString("lastname")),
+                (personId,person) -> person,
+                personId -> processed.incrementAndGet(),
+                cache,
+                (personId,exc) -> { failed.incrementAndGet(); processed.incrementAndGet(); });
+        persons.sink(person -> processed.incrementAndGet());
+        
+        long start = System.nanoTime();
+        Job job = tp.submit(t).get();
+        long done = 0;
+        long progressTime = start;
+        while (done < personIds.size()) {
+            Thread.sleep(10);
+            long now = System.nanoTime();
+            long n = processed.get();
+            if (n > done) {
+                done = n;
+                progressTime = now;
+            }
+            else if (now - progressTime > TimeUnit.MILLISECONDS.toNanos(STALL_MSEC))
+                break;
+        }
+        double secs = (progressTime - start) / 1e9;
+        long queries = registry.timer(MetricRegistry.name("jdbcLookup", "benchmark", "queryLatency")).getCount();
+        job.stateChange(Job.Action.CLOSE);
+        
+        System.out.println(String.format("%s: %d queries, %.0f lookups/sec",
+                cache == null ? "uncached" : "cached", queries, done / secs));
+        if (failed.get() > 0 || done < personIds.size())
+            System.out.println(String.format("%s: %d of %d lookups failed, %d are incomplete",
+                    cache == null ? "uncached" : "cached", failed.get(), personIds.size(),
+                    personIds.size() - done));
+        return queries;
+    }
+}
@@ -20,13 +20,24 @@ package org.apache.edgent.samples.connectors.jdbc;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
+import javax.sql.DataSource;
+
+import org.apache.edgent.function.Supplier;
+
 /**
  * Utilities for loading the sample's person data.
  */
@@ -40,47 +51,268 @@ public class PersonData {
      * @throws Exception on failure
      */
     public static List<Person> loadPersonData(Properties props) throws Exception {
-        String pathname = props.getProperty("persondata.path");
         List<Person> persons = new ArrayList<>();
-        Path path = new File(pathname).toPath();
-        try (BufferedReader br = Files.newBufferedReader(path)) {
-            int lineno = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                lineno++;
-                Object[] fields = parseLine(line, lineno, pathname);
-                if (fields == null)
-                    continue;
-                persons.add(new Person((Integer)fields[0], (String)fields[1], (String)fields[2]));
-            }
+        try (PersonIterator it = new PersonIterator(props.getProperty("persondata.path"))) {
+            while (it.hasNext())
+                persons.add(it.next());
         }
         return persons;
     }
     
-    private static Object[] parseLine(String line, int lineno, String pathname) {
-        line = line.trim();
-        if (line.startsWith("#"))
+    /**
+     * Stream the person data from the path specified by the "persondata.path"
+     * property.
+     * <p>
+     * The file is read as the returned {@code Iterable} is iterated so the
+     * memory used doesn't depend on the size of the file, e.g.,
+     * {@code t.source(() -> PersonData.streamPersonData(props))}.
+     * A read failure is thrown as a {@code RuntimeException}.
+     * The file is closed when it has been read or fails to be read.
+     * Use {@link #personDataSource(Properties)} for a source whose file
+     * is also closed when its job is closed.
+     * @param props configuration properties
+     * @return the person data
+     */
+    public static Iterable<Person> streamPersonData(Properties props) {
+        String pathname = props.getProperty("persondata.path");
+        return () -> new PersonIterator(pathname);
+    }
+    
+    /**
+     * Supply the person data from the path specified by the "persondata.path"
+     * property for a topology source, e.g.,
+     * {@code t.source(PersonData.personDataSource(props))}.
+     * <p>
+     * As {@link #streamPersonData(Properties)} except that the file is
+     * also closed when the source is closed, e.g., the job is closed
+     * before the whole file has been read.
+     * @param props configuration properties
+     * @return the source's supplier
+     */
+    public static Supplier<Iterable<Person>> personDataSource(Properties props) {
+        return new PersonSource(props.getProperty("persondata.path"));
+    }
+    
+    /**
+     * Load the person data into the persons table using JDBC batches.
+     * <p>
+     * The file is streamed, see {@link #streamPersonData(Properties)}.
+     * The "persondata.batch.size" property specifies the number of rows in
+     * a batch, default 1000, and the "persondata.commit.batches" property
+     * the number of batches in a transaction, default 10.
+     * @param ds the DataSource
+     * @param props configuration properties
+     * @return the number of rows loaded
+     * @throws Exception on failure
+     */
+    public static long bulkLoadPersonData(DataSource ds, Properties props) throws Exception {
+        int batchSize = Integer.valueOf(props.getProperty("persondata.batch.size", "1000"));
+        int commitRows = batchSize * Integer.valueOf(props.getProperty("persondata.commit.batches", "10"));
+        long nRows = 0;
+        try (Connection cn = ds.getConnection();
+                PreparedStatement stmt = cn.prepareStatement("INSERT INTO persons VALUES(?,?,?)");
+                PersonIterator it = new PersonIterator(props.getProperty("persondata.path"))) {
+            cn.setAutoCommit(false);
+            while (it.hasNext()) {
+                Person person = it.next();
+                stmt.setInt(1, person.id);
+                stmt.setString(2, person.firstName);
+                stmt.setString(3, person.lastName);
+                stmt.addBatch();
+                nRows++;
+                if (nRows % batchSize == 0)
+                    stmt.executeBatch();
+                if (nRows % commitRows == 0)
+                    cn.commit();
+            }
+            stmt.executeBatch();
+            cn.commit();
+        }
+        return nRows;
+    }
+    
+    /**
+     * Import the person data into the persons table using Derby's
+     * {@code SYSCS_UTIL.SYSCS_IMPORT_TABLE} procedure.
+     * <p>
+     * The database reads the file directly, which is the fastest way to
+     * load a large file, but the file must contain only
+     * {@code id,firstName,lastName} lines: no comments and no spaces
+     * around the names.
+     * @param ds the DataSource for a Derby database
+     * @param props configuration properties
+     * @throws Exception on failure
+     */
+    public static void importPersonData(DataSource ds, Properties props) throws Exception {
+        String pathname = new File(props.getProperty("persondata.path")).getAbsolutePath();
+        try (Connection cn = ds.getConnection();
+                CallableStatement stmt = cn.prepareCall(
+                        "CALL SYSCS_UTIL.SYSCS_IMPORT_TABLE(null, 'PERSONS', ?, ',', null, 'UTF-8', 0)")) {
+            stmt.setString(1, pathname);
+            stmt.execute();
+        }
+    }
+    
+    /**
+     * Supplies the person data and closes the files it's reading when closed.
+     */
+    private static class PersonSource implements Supplier<Iterable<Person>>, AutoCloseable {
+        private static final long serialVersionUID = 1L;
+        private final String pathname;
+        private transient List<PersonIterator> iterators;
+        
+        PersonSource(String pathname) {
+            this.pathname = pathname;
+        }
+
+        @Override
+        public Iterable<Person> get() {
+            return () -> {
+                PersonIterator it = new PersonIterator(pathname);
+                synchronized (this) {
+                    if (iterators == null)
+                        iterators = new ArrayList<>();
+                    iterators.add(it);
+                }
+                return it;
+            };
+        }
+
+        @Override
+        public synchronized void close() {
+            if (iterators != null) {
+                for (PersonIterator it : iterators)
+                    it.close();
+                iterators.clear();
+            }
+        }
+    }
+    
+    /**
+     * Reads and parses the person data a line at a time.
+     * The file is closed once it has been read, a line can't be read
+     * or parsed, or the iterator is closed.
+     */
+    private static class PersonIterator implements Iterator<Person>, AutoCloseable {
+        private final String pathname;
+        private BufferedReader br;
+        private volatile boolean closed;
+        private int lineno;
+        private Person next;
+        
+        PersonIterator(String pathname) {
+            this.pathname = pathname;
+            Path path = new File(pathname).toPath();
+            try {
+                br = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !closed) {
+                try {
+                    String line = br.readLine();
+                    if (line == null) {
+                        close();
+                        break;
+                    }
+                    lineno++;
+                    next = parseLine(line, lineno, pathname);
+                }
+                catch (IOException e) {
+                    if (closed)
+                        break;
+                    close();
+                    throw new RuntimeException(e);
+                }
+                catch (RuntimeException e) {
+                    close();
+                    throw e;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Person person = next;
+            next = null;
+            return person;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                br.close();
+            }
+            catch (IOException e) {
+                // nothing more is read
+            }
+        }
+    }
+    
+    /**
+     * Parse a line without splitting it: the fields are located by
+     * their separators and the id is parsed in place.
+     */
+    private static Person parseLine(String line, int lineno, String pathname) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ')
+            start++;
+        while (end > start && line.charAt(end - 1) <= ' ')
+            end--;
+        if (line.startsWith("#", start))
             return null;
 
         // id,firstName,lastName
-        String[] items = line.split(",");
-        if (items.length < 3)
+        int comma1 = line.indexOf(',', start);
+        int comma2 = comma1 < 0 ? -1 : line.indexOf(',', comma1 + 1);
+        if (comma2 < 0 || comma2 >= end)
             throw new IllegalArgumentException("Invalid data on line "+lineno+" in "+pathname);
-        int id;
-        try {
-           id = new Integer(items[0]);
-           if (id < 1)
-               throw new IllegalArgumentException("Invalid data on line "+lineno+" in "+pathname);
-        }
-        catch (NumberFormatException e) {
+        int comma3 = line.indexOf(',', comma2 + 1);
+        if (comma3 < 0 || comma3 > end)
+            comma3 = end;
+        
+        int id = parseId(line, start, comma1);
+        if (id < 1)
             throw new IllegalArgumentException("Invalid data on line "+lineno+" in "+pathname);
-        }
         
-        Object[] fields = new Object[3];
-        fields[0] = id;
-        fields[1] = items[1].trim();
-        fields[2] = items[2].trim();
-        return fields;
+        return new Person(id, trim(line, comma1 + 1, comma2), trim(line, comma2 + 1, comma3));
+    }
+    
+    /**
+     * Parse a positive decimal id.
+     * @return the id, or -1 if it isn't valid
+     */
+    private static int parseId(String line, int start, int end) {
+        if (start == end || end - start > 10)
+            return -1;
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id > Integer.MAX_VALUE ? -1 : (int) id;
+    }
+    
+    private static String trim(String line, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ')
+            start++;
+        while (end > start && line.charAt(end - 1) <= ' ')
+            end--;
+        return line.substring(start, end);
     }
 
     /**
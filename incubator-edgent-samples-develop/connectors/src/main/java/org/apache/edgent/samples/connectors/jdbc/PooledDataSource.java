@@ -0,0 +1,536 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.jdbc;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A connection pool in front of another {@link DataSource}, for any
+ * JDBC driver.
+ * <p>
+ * A connection's {@code close()} returns it to the pool.  Its open
+ * statements are closed, an uncommitted transaction is rolled back and
+ * auto-commit, the transaction isolation and read-only mode are restored
+ * to those of the newly opened connection.  At most {@code maxConnections} connections
+ * are open; {@code getConnection()} waits up to {@code maxWaitMsec} for
+ * one to be returned.  Connections that have been idle for
+ * {@code idleMsec} are closed, keeping at least {@code minConnections}.
+ * <p>
+ * Each connection caches up to {@code statementCacheSize} prepared
+ * statements by their SQL.  A {@code prepareStatement(sql)} reuses an idle
+ * cached statement and the statement's {@code close()} returns it to the
+ * cache, so a statement is prepared once per connection rather than once
+ * per use.
+ */
+public class PooledDataSource implements DataSource, AutoCloseable {
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PooledDataSource.class);
+    
+    private final DataSource target;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long idleMsec;
+    private final int statementCacheSize;
+    private final long maxWaitMsec;
+    private final ScheduledExecutorService evictor;
+    
+    // guarded by this
+    private final ArrayDeque<Pooled> idle = new ArrayDeque<>();
+    private int open;
+    private boolean closed;
+    
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    
+    /**
+     * A pooled physical connection.
+     */
+    private final class Pooled {
+        final Connection connection;
+        final LinkedHashMap<String,PreparedStatement> statements;
+        final int isolation;
+        final boolean readOnly;
+        long idleSince;
+        
+        Pooled(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.isolation = connection.getTransactionIsolation();
+            this.readOnly = connection.isReadOnly();
+            this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize)
+                        return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+    }
+    
+    /**
+     * Create a connection pool.
+     * @param target the DataSource of the pooled connections
+     * @param minConnections the minimum number of connections kept open
+     * @param maxConnections the maximum number of open connections
+     * @param idleMsec close a connection that has been idle this long
+     * @param statementCacheSize the number of prepared statements cached per connection, 0 for none
+     * @param maxWaitMsec the maximum time to wait for a connection
+     */
+    public PooledDataSource(DataSource target, int minConnections, int maxConnections,
+            long idleMsec, int statementCacheSize, long maxWaitMsec) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections");
+        if (minConnections < 0 || minConnections > maxConnections)
+            throw new IllegalArgumentException("minConnections");
+        if (idleMsec < 1)
+            throw new IllegalArgumentException("idleMsec");
+        if (statementCacheSize < 0)
+            throw new IllegalArgumentException("statementCacheSize");
+        this.target = target;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.idleMsec = idleMsec;
+        this.statementCacheSize = statementCacheSize;
+        this.maxWaitMsec = maxWaitMsec;
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PooledDataSource-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleMsec / 2);
+        evictor.scheduleWithFixedDelay(() -> evictIdle(), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Pooled pooled = checkout();
+        if (pooled == null) {
+            Connection connection = null;
+            try {
+                connection = target.getConnection();
+                pooled = new Pooled(connection);
+                created.incrementAndGet();
+            }
+            catch (SQLException | RuntimeException e) {
+                if (connection != null) {
+                    try {
+                        connection.close();
+                    }
+                    catch (SQLException x) {
+                        logger.trace("close failed", x);
+                    }
+                }
+                synchronized (this) {
+                    open--;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+        ConnectionHandler handler = new ConnectionHandler(pooled);
+        handler.proxy = (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+        return handler.proxy;
+    }
+    
+    /**
+     * Take an idle connection or reserve a new one.
+     * @return the idle connection, null to open a new one
+     */
+    private synchronized Pooled checkout() throws SQLException {
+        long deadline = System.currentTimeMillis() + maxWaitMsec;
+        for (;;) {
+            if (closed)
+                throw new SQLException("pool is closed");
+            Pooled pooled = idle.pollFirst();
+            if (pooled != null) {
+                if (!pooled.connection.isClosed())
+                    return pooled;
+                open--;
+                continue;
+            }
+            if (open < maxConnections) {
+                open++;
+                return null;
+            }
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+                throw new SQLTransientConnectionException("Timed out waiting for a connection: "
+                        + maxConnections + " in use", "08001");
+            try {
+                wait(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection", e);
+            }
+        }
+    }
+    
+    private void checkin(Pooled pooled) {
+        boolean reusable;
+        try {
+            Connection connection = pooled.connection;
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (connection.getTransactionIsolation() != pooled.isolation)
+                connection.setTransactionIsolation(pooled.isolation);
+            if (connection.isReadOnly() != pooled.readOnly)
+                connection.setReadOnly(pooled.readOnly);
+            reusable = !connection.isClosed();
+        }
+        catch (SQLException e) {
+            logger.debug("discarding connection", e);
+            reusable = false;
+        }
+        synchronized (this) {
+            if (reusable && !closed) {
+                pooled.idleSince = System.currentTimeMillis();
+                idle.addFirst(pooled);
+            }
+            else {
+                open--;
+                closeQuietly(pooled);
+            }
+            notifyAll();
+        }
+    }
+    
+    private void evictIdle() {
+        List<Pooled> evicted = new ArrayList<>();
+        synchronized (this) {
+            long expired = System.currentTimeMillis() - idleMsec;
+            // the least recently used connections are at the end
+            Iterator<Pooled> it = idle.descendingIterator();
+            while (it.hasNext() && open > minConnections) {
+                Pooled pooled = it.next();
+                if (pooled.idleSince > expired)
+                    break;
+                it.remove();
+                open--;
+                evicted.add(pooled);
+            }
+        }
+        for (Pooled pooled : evicted)
+            closeQuietly(pooled);
+        if (!evicted.isEmpty())
+            logger.debug("closed {} idle connections", evicted.size());
+    }
+    
+    private void closeQuietly(Pooled pooled) {
+        for (PreparedStatement stmt : pooled.statements.values())
+            closeQuietly(stmt);
+        pooled.statements.clear();
+        try {
+            pooled.connection.close();
+        }
+        catch (SQLException e) {
+            logger.trace("close failed", e);
+        }
+    }
+    
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        }
+        catch (SQLException e) {
+            logger.trace("close failed", e);
+        }
+    }
+    
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * The logical connection given to a caller.
+     * A connection is used by one caller at a time.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Pooled pooled;
+        private final List<Statement> statements = new ArrayList<>();
+        private Connection proxy;
+        private boolean closed;
+        
+        ConnectionHandler(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!closed) {
+                    for (Statement stmt : new ArrayList<>(statements))
+                        closeQuietly(stmt);
+                    statements.clear();
+                    closed = true;
+                    checkin(pooled);
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Pooled(" + pooled.connection + ")";
+            default:
+                break;
+            }
+            if (closed)
+                throw new SQLException("connection is closed");
+            if ("prepareStatement".equals(method.getName()) && args.length == 1
+                    && statementCacheSize > 0)
+                return prepareCached((String) args[0]);
+            Object result = invokeTarget(pooled.connection, method, args);
+            if (result instanceof Statement)
+                return track(method.getReturnType(), null, (Statement) result);
+            return result;
+        }
+        
+        private PreparedStatement prepareCached(String sql) throws SQLException {
+            PreparedStatement cached = pooled.statements.remove(sql);
+            if (cached != null) {
+                statementHits.incrementAndGet();
+            }
+            else {
+                cached = pooled.connection.prepareStatement(sql);
+                statementMisses.incrementAndGet();
+            }
+            return (PreparedStatement) track(PreparedStatement.class, sql, cached);
+        }
+        
+        /**
+         * Wrap a statement so that it's closed when the connection is,
+         * and is no longer tracked once the caller closes it.
+         * @param type the statement's interface
+         * @param sql the SQL of a cached statement, null if not cached
+         * @param stmt the statement
+         */
+        private Statement track(Class<?> type, String sql, Statement stmt) {
+            Statement logical = (Statement) Proxy.newProxyInstance(
+                    PooledDataSource.class.getClassLoader(),
+                    new Class<?>[] { type },
+                    new StatementHandler(this, sql, stmt));
+            statements.add(logical);
+            return logical;
+        }
+        
+        /**
+         * Close a statement, returning a cached statement to the
+         * connection's cache.
+         */
+        private synchronized void release(Statement logical, String sql, Statement stmt) throws SQLException {
+            statements.remove(logical);
+            if (sql == null) {
+                stmt.close();
+                return;
+            }
+            PreparedStatement prepared = (PreparedStatement) stmt;
+            try {
+                prepared.clearParameters();
+                prepared.clearBatch();
+            }
+            catch (SQLException e) {
+                closeQuietly(prepared);
+                return;
+            }
+            if (pooled.statements.putIfAbsent(sql, prepared) != null)
+                closeQuietly(prepared);
+        }
+    }
+    
+    /**
+     * The logical statement given to a caller.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        // null if the statement isn't cached
+        private final String sql;
+        private final Statement stmt;
+        private boolean closed;
+        
+        StatementHandler(ConnectionHandler connection, String sql, Statement stmt) {
+            this.connection = connection;
+            this.sql = sql;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    connection.release((Statement) proxy, sql, stmt);
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "getConnection":
+                return connection.proxy;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                if (closed)
+                    throw new SQLException("statement is closed");
+                return invokeTarget(stmt, method, args);
+            }
+        }
+    }
+    
+    /**
+     * Get the number of open connections, in use or idle.
+     * @return the count
+     */
+    public synchronized int getOpenCount() {
+        return open;
+    }
+    
+    /**
+     * Get the number of idle connections.
+     * @return the count
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+    
+    /**
+     * Get the number of connections created.
+     * @return the count
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+    
+    /**
+     * Get the number of prepared statements served by a statement cache.
+     * @return the count
+     */
+    public long getStatementHitCount() {
+        return statementHits.get();
+    }
+    
+    /**
+     * Get the number of statements prepared because they weren't cached.
+     * @return the count
+     */
+    public long getStatementMissCount() {
+        return statementMisses.get();
+    }
+    
+    /**
+     * Close the idle connections and stop pooling.
+     * Connections in use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<Pooled> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            open -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        evictor.shutdownNow();
+        for (Pooled pooled : toClose)
+            closeQuietly(pooled);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pooled connections use the target's credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return target.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        return target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || target.isWrapperFor(iface);
+    }
+}
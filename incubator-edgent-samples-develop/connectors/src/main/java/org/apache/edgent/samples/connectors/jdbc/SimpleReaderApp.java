@@ -22,6 +22,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.edgent.connectors.jdbc.JdbcStreams;
 import org.apache.edgent.providers.direct.DirectProvider;
@@ -31,6 +32,17 @@ import org.apache.edgent.topology.Topology;
 /**
  * A simple JDBC connector sample demonstrating streaming read access
  * of a dbms table and creating stream tuples from the results.
+ * <p>
+ * When the "reader.batch.size" property is greater than 1 the ids of
+ * up to that many tuples are looked up with a single query using
+ * {@link BatchedJdbcStreams}.  The "reader.batch.lingerMsec" property
+ * (default 10) is the maximum time a tuple waits for its batch to fill.
+ * <p>
+ * When the "reader.cache.size" property is greater than 0 the looked up
+ * persons, and unknown ids, are cached in a {@link LookupCache} of that size.
+ * The "reader.cache.ttlSec" (default 300), "reader.cache.negativeTtlSec"
+ * (default 60) and "reader.cache.refreshAheadSec" (default 30) properties
+ * configure the cache.
  */
 public class SimpleReaderApp {
     private final Properties props;
@@ -72,26 +84,62 @@ public class SimpleReaderApp {
         
         // For each tuple on the stream, read info from the db table
         // using the "id", and create a Person tuple on the result stream.
-        TStream<Person> persons = myDb.executeStatement(personIds,
-                () -> "SELECT id, firstname, lastname FROM persons WHERE id = ?",
-                (personId,stmt) -> stmt.setInt(1, personId.id),
-                (personId,rSet,exc,resultStream) -> {
-                        if (exc != null) {
-                            // some failure processing this tuple. an error was logged.
-                            System.err.println("Unable to process id="+personId+": "+exc);
-                            return;
+        TStream<Person> persons;
+        int batchSize = Integer.valueOf(props.getProperty("reader.batch.size", "1"));
+        int cacheSize = Integer.valueOf(props.getProperty("reader.cache.size", "0"));
+        if (batchSize > 1 || cacheSize > 0) {
+            // Look up the ids of a batch of tuples with a single query
+            BatchedJdbcStreams myBatchedDb = new BatchedJdbcStreams(
+                    () -> DbUtils.getDataSource(props),
+                    dataSource -> dataSource.getConnection(),
+                    batchSize,
+                    Long.valueOf(props.getProperty("reader.batch.lingerMsec", "10")),
+                    1);
+            LookupCache<Integer,Person> cache = null;
+            if (cacheSize > 0) {
+                // Serve repeated ids from memory
+                cache = new LookupCache<>("persons", cacheSize,
+                        Long.valueOf(props.getProperty("reader.cache.ttlSec", "300")),
+                        Long.valueOf(props.getProperty("reader.cache.negativeTtlSec", "60")),
+                        Long.valueOf(props.getProperty("reader.cache.refreshAheadSec", "30")),
+                        TimeUnit.SECONDS);
+            }
+            persons = myBatchedDb.executeLookup(personIds, "persons",
+                    () -> "SELECT id, firstname, lastname FROM persons WHERE id IN (?)",
+                    personId -> personId.id,
+                    rSet -> rSet.getInt("id"),
+                    rSet -> new Person(rSet.getInt("id"),
+                                    rSet.getString("firstname"),
+                                    rSet.getString("lastname")),
+                    (personId,person) -> person,
+                    personId -> System.err.println("Unknown person id="+personId.id),
+                    cache,
+                    // the batch's query failed. an error was logged.
+                    (personId,exc) -> System.err.println("Unable to process id="+personId+": "+exc)
+                    );
+        }
+        else {
+            persons = myDb.executeStatement(personIds,
+                    () -> "SELECT id, firstname, lastname FROM persons WHERE id = ?",
+                    (personId,stmt) -> stmt.setInt(1, personId.id),
+                    (personId,rSet,exc,resultStream) -> {
+                            if (exc != null) {
+                                // some failure processing this tuple. an error was logged.
+                                System.err.println("Unable to process id="+personId+": "+exc);
+                                return;
+                            }
+                            if (rSet.next()) {
+                                resultStream.accept(
+                                        new Person(rSet.getInt("id"),
+                                                rSet.getString("firstname"),
+                                                rSet.getString("lastname")));
+                            }
+                            else {
+                                System.err.println("Unknown person id="+personId.id);
+                            }
                         }
-                        if (rSet.next()) {
-                            resultStream.accept(
-                                    new Person(rSet.getInt("id"),
-                                            rSet.getString("firstname"),
-                                            rSet.getString("lastname")));
-                        }
-                        else {
-                            System.err.println("Unknown person id="+personId.id);
-                        }
-                    }
-                );
+                    );
+        }
         
         // print out Person tuples as they are retrieved 
         persons.sink(person -> System.out.println("retrieved person: "+person));
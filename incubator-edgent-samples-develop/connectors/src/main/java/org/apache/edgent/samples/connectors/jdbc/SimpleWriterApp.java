@@ -30,6 +30,11 @@ import org.apache.edgent.topology.Topology;
 /**
  * A simple JDBC connector sample demonstrating streaming write access
  * of a dbms to add stream tuples to a table.
+ * <p>
+ * When the "writer.batch.size" property is greater than 1 the tuples
+ * are written in batches using {@link BatchedJdbcStreams}.
+ * The "writer.batch.lingerMsec" (default 100) and "writer.batch.perCommit"
+ * (default 1) properties configure the batching.
  */
 public class SimpleWriterApp {
     private final Properties props;
@@ -65,19 +70,40 @@ public class SimpleWriterApp {
                 () -> DbUtils.getDataSource(props),
                 dataSource -> dataSource.getConnection());
         
-        // Create a sample stream of Person tuples
-        TStream<Person> persons = t.collection(PersonData.loadPersonData(props));
+        // Create a sample stream of Person tuples.
+        // The file is read as the tuples are created rather than loaded into memory.
+        TStream<Person> persons = t.source(PersonData.personDataSource(props));
         
         // Write stream tuples to a table.
-        myDb.executeStatement(persons,
-                () -> "INSERT INTO persons VALUES(?,?,?)",
-                (person,stmt) -> {
-                    System.out.println("Inserting into persons table: person "+person);
-                    stmt.setInt(1, person.id);
-                    stmt.setString(2, person.firstName);
-                    stmt.setString(3, person.lastName);
-                    }
-                );
+        int batchSize = Integer.valueOf(props.getProperty("writer.batch.size", "1"));
+        if (batchSize > 1) {
+            // Write the tuples in batches
+            BatchedJdbcStreams myBatchedDb = new BatchedJdbcStreams(
+                    () -> DbUtils.getDataSource(props),
+                    dataSource -> dataSource.getConnection(),
+                    batchSize,
+                    Long.valueOf(props.getProperty("writer.batch.lingerMsec", "100")),
+                    Integer.valueOf(props.getProperty("writer.batch.perCommit", "1")));
+            myBatchedDb.executeBatch(persons, "persons",
+                    () -> "INSERT INTO persons VALUES(?,?,?)",
+                    (person,stmt) -> {
+                        stmt.setInt(1, person.id);
+                        stmt.setString(2, person.firstName);
+                        stmt.setString(3, person.lastName);
+                        }
+                    );
+        }
+        else {
+            myDb.executeStatement(persons,
+                    () -> "INSERT INTO persons VALUES(?,?,?)",
+                    (person,stmt) -> {
+                        System.out.println("Inserting into persons table: person "+person);
+                        stmt.setInt(1, person.id);
+                        stmt.setString(2, person.firstName);
+                        stmt.setString(3, person.lastName);
+                        }
+                    );
+        }
         
         // run the application / topology
         tp.submit(t);
@@ -27,6 +27,12 @@ under the License.
  * <ul>
  * <li>SimpleReaderApp.java - a simple dbms reader application topology</li>
  * <li>SimpleWriterApp.java - a simple dbms writer application topology</li>
+ * <li>BulkLoadApp.java - streams a person data file into the table</li>
+ * <li>BatchedJdbcStreams.java - a batched, transactional table writer and batched keyed lookups</li>
+ * <li>PooledDataSource.java - a connection pool with prepared statement caching</li>
+ * <li>LookupCache.java - a read-through cache for batched lookups</li>
+ * <li>LookupCacheBenchmark.java - measures the queries avoided by the cache</li>
+ * <li>JdbcWriterBenchmark.java - compares per-row and batched insert rates</li>
  * </ul>
  */
 package org.apache.edgent.samples.connectors.jdbc;
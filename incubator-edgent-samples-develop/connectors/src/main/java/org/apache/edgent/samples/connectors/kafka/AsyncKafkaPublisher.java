@@ -0,0 +1,250 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.function.Supplier;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Sink;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * A sink that publishes a stream's tuples to a Kafka topic and
+ * measures the publish throughput and acknowledgement latency.
+ * <p>
+ * {@link org.apache.edgent.connectors.kafka.KafkaProducer KafkaProducer}
+ * doesn't expose the producer's send completion so this sink uses a
+ * Kafka producer directly, created from the same configuration.
+ * Each tuple is sent asynchronously with a completion callback,
+ * so the producer batches records (see the {@code batch.size},
+ * {@code linger.ms}, {@code compression.type}, {@code acks} and
+ * {@code max.in.flight.requests.per.connection} configuration items)
+ * without the stream waiting for the broker.  The time from send to
+ * completion is the record's ack latency.
+ * <p>
+ * If {@code bootstrap.servers} is {@value #MOCK_SERVERS} the records are
+ * sent to an in-process {@code MockProducer} that acknowledges each record
+ * immediately, which measures the overhead of the topology and the sink.
+ * <p>
+ * Every {@code reportSec} seconds the published and acknowledged records/sec,
+ * the recent ack latencies and the number of failed records are printed.
+ * The following metrics are registered with the job's {@code MetricRegistry},
+ * if it has one, with the name {@code kafkaPublisher.<topic>.<metric>}:
+ * <ul>
+ * <li>{@code published} - a meter of the records sent</li>
+ * <li>{@code ackLatency} - a timer of the records' ack latency</li>
+ * <li>{@code failed} - a counter of the records whose send failed</li>
+ * </ul>
+ */
+public class AsyncKafkaPublisher extends Sink<String> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(AsyncKafkaPublisher.class);
+
+    /**
+     * The {@code bootstrap.servers} value that selects the in-process stand-in.
+     */
+    public static final String MOCK_SERVERS = "mock";
+
+    private final Supplier<Map<String,Object>> configFn;
+    private final String topic;
+    private final long reportSec;
+
+    private transient Producer<byte[],byte[]> producer;
+    private transient MockProducer mockProducer;
+    private transient MetricRegistry registry;
+    private transient boolean ownRegistry;
+    private transient Meter publishedMeter;
+    private transient Timer ackTimer;
+    private transient Counter failedCounter;
+    private transient ScheduledExecutorService executor;
+    private transient ScheduledFuture<?> reporter;
+
+    // guarded by this
+    private transient long lastReportTime;
+    private transient long lastPublished;
+    private transient long lastAcked;
+
+    /**
+     * Publish a stream's tuples to a topic.
+     * The String tuple is the message value.
+     *
+     * @param stream the stream
+     * @param configFn the Kafka producer configuration
+     * @param topic the topic
+     * @param reportSec the interval between throughput reports, 0 for none
+     * @return the sink
+     */
+    public static TSink<String> publish(TStream<String> stream,
+            Supplier<Map<String,Object>> configFn, String topic, long reportSec) {
+        return stream.sink(new AsyncKafkaPublisher(configFn, topic, reportSec));
+    }
+
+    /**
+     * Create a publisher.
+     * @param configFn the Kafka producer configuration
+     * @param topic the topic
+     * @param reportSec the interval between throughput reports, 0 for none
+     */
+    public AsyncKafkaPublisher(Supplier<Map<String,Object>> configFn,
+            String topic, long reportSec) {
+        if (reportSec < 0)
+            throw new IllegalArgumentException("reportSec");
+        this.configFn = configFn;
+        this.topic = topic;
+        this.reportSec = reportSec;
+        setSinker(this::publish);
+    }
+
+    @Override
+    public void initialize(OpletContext<String, Void> context) {
+        super.initialize(context);
+        executor = context.getService(ScheduledExecutorService.class);
+        registry = context.getService(MetricRegistry.class);
+        if (registry == null) {
+            registry = new MetricRegistry();
+            ownRegistry = true;
+        }
+        publishedMeter = registry.meter(metricName("published"));
+        ackTimer = registry.timer(metricName("ackLatency"));
+        failedCounter = registry.counter(metricName("failed"));
+        producer = newProducer();
+    }
+
+    private String metricName(String metric) {
+        return MetricRegistry.name("kafkaPublisher", topic, metric);
+    }
+
+    private Producer<byte[],byte[]> newProducer() {
+        Map<String,Object> config = new HashMap<>(configFn.get());
+        if (MOCK_SERVERS.equals(config.get("bootstrap.servers"))) {
+            // the 0.8.2 client's MockProducer is a Producer<byte[],byte[]>
+            mockProducer = new MockProducer(true);
+            return mockProducer;
+        }
+        return new KafkaProducer<>(config,
+                new ByteArraySerializer(), new ByteArraySerializer());
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        synchronized (this) {
+            lastReportTime = System.nanoTime();
+        }
+        if (reportSec > 0)
+            reporter = executor.scheduleAtFixedRate(this::report,
+                    reportSec, reportSec, TimeUnit.SECONDS);
+    }
+
+    private void publish(String tuple) {
+        long sendTime = System.nanoTime();
+        ProducerRecord<byte[],byte[]> record = new ProducerRecord<>(topic,
+                tuple.getBytes(StandardCharsets.UTF_8));
+        publishedMeter.mark();
+        producer.send(record, (metadata, e) -> {
+            if (e == null)
+                ackTimer.update(System.nanoTime() - sendTime, TimeUnit.NANOSECONDS);
+            else {
+                failedCounter.inc();
+                logger.trace("send to {} failed", topic, e);
+            }
+        });
+        // the stand-in keeps every record sent
+        if (mockProducer != null)
+            mockProducer.clear();
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double sec = (now - lastReportTime) / 1e9;
+        long published = publishedMeter.getCount();
+        long acked = ackTimer.getCount();
+        Snapshot latency = ackTimer.getSnapshot();
+        System.out.println(String.format(
+                "published %.0f/sec acked %.0f/sec"
+                + " ack latency msec p50=%.2f p99=%.2f max=%.2f"
+                + " failed %d",
+                (published - lastPublished) / sec, (acked - lastAcked) / sec,
+                latency.getMedian() / 1e6, latency.get99thPercentile() / 1e6,
+                latency.getMax() / 1e6, failedCounter.getCount()));
+        lastReportTime = now;
+        lastPublished = published;
+        lastAcked = acked;
+    }
+
+    /**
+     * Get the number of records published.
+     * @return the count
+     */
+    public long getPublishedCount() {
+        return publishedMeter.getCount();
+    }
+
+    /**
+     * Get the number of records acknowledged.
+     * @return the count
+     */
+    public long getAckedCount() {
+        return ackTimer.getCount();
+    }
+
+    /**
+     * Get the number of records whose send failed.
+     * @return the count
+     */
+    public long getFailedCount() {
+        return failedCounter.getCount();
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null)
+            reporter.cancel(false);
+        if (producer != null) {
+            // completes the outstanding sends
+            producer.close();
+            if (reportSec > 0)
+                report();
+        }
+        if (!ownRegistry)
+            registry.removeMatching((metricName, metric) ->
+                    metricName.startsWith(MetricRegistry.name("kafkaPublisher", topic) + "."));
+    }
+}
@@ -46,6 +46,19 @@ import org.apache.edgent.samples.connectors.Options;
  * See the Apache Kafka link above for information about setting up a Kafka
  * cluster as well as creating a topic.
  * <p>
+ * The publisher's batching can be tuned with the Kafka producer
+ * configuration items {@code batch.size}, {@code linger.ms},
+ * {@code compression.type}, {@code acks} and
+ * {@code max.in.flight.requests.per.connection}.
+ * The {@code throughput} option publishes the messages as fast as possible,
+ * and reports the records/sec and ack latency, using {@link AsyncKafkaPublisher}.
+ * With {@code bootstrap.servers=mock} it publishes to an in-process
+ * stand-in instead of a Kafka cluster.
+ * <p>
+ * The {@code workers} option subscribes with {@link PartitionedKafkaConsumer},
+ * which consumes the topic's partitions with that many threads and commits
+ * the offsets of the processed messages.
+ * <p>
  * This may be executed from as:
  * <UL>
  * <LI>
@@ -66,7 +79,14 @@ public class KafkaClient {
             + "\n" + "[bootstrap.servers=<value>]"
             + "\n" + "[zookeeper.connect=<value>]"
             + "\n" + "[group.id=<value>]"
+            + "\n" + "[workers=<value>]"
             + "\n" + "[pubcnt=<value>]"
+            + "\n" + "[throughput]"
+            + "\n" + "[batch.size=<value>]"
+            + "\n" + "[linger.ms=<value>]"
+            + "\n" + "[compression.type=<value>]"
+            + "\n" + "[acks=<value>]"
+            + "\n" + "[max.in.flight.requests.per.connection=<value>]"
             ;
 
     public static void main(String[] args) throws Exception {
@@ -123,8 +143,15 @@ public class KafkaClient {
     static final String OPT_BOOTSTRAP_SERVERS = "bootstrap.servers";
     static final String OPT_ZOOKEEPER_CONNECT = "zookeeper.connect";
     static final String OPT_GROUP_ID = "group.id";
+    static final String OPT_WORKERS = "workers";
     static final String OPT_TOPIC = "topic";
     static final String OPT_PUB_CNT = "pubcnt";
+    static final String OPT_THROUGHPUT = "throughput";
+    static final String OPT_BATCH_SIZE = "batch.size";
+    static final String OPT_LINGER_MS = "linger.ms";
+    static final String OPT_COMPRESSION_TYPE = "compression.type";
+    static final String OPT_ACKS = "acks";
+    static final String OPT_MAX_IN_FLIGHT = "max.in.flight.requests.per.connection";
     
     private static void initHandlers(Options opts) {
         // options for which we have a default
@@ -136,9 +163,16 @@ public class KafkaClient {
         opts.addHandler(OPT_ZOOKEEPER_CONNECT, v -> v, "localhost:2181");
         opts.addHandler(OPT_TOPIC, v -> v, "kafkaSampleTopic");
         opts.addHandler(OPT_PUB_CNT, v -> Integer.valueOf(v), -1);
+        opts.addHandler(OPT_THROUGHPUT, null, false);
 
         // optional options (no default value)
         opts.addHandler(OPT_GROUP_ID, v -> v);
+        opts.addHandler(OPT_WORKERS, v -> Integer.valueOf(v));
+        opts.addHandler(OPT_BATCH_SIZE, v -> v);
+        opts.addHandler(OPT_LINGER_MS, v -> v);
+        opts.addHandler(OPT_COMPRESSION_TYPE, v -> v);
+        opts.addHandler(OPT_ACKS, v -> v);
+        opts.addHandler(OPT_MAX_IN_FLIGHT, v -> v);
     }
     
 }
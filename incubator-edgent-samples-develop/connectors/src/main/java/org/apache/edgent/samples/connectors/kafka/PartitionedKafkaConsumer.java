@@ -0,0 +1,387 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.edgent.execution.services.RuntimeServices;
+import org.apache.edgent.function.Consumer;
+import org.apache.edgent.function.Supplier;
+import org.apache.edgent.topology.TStream;
+import org.apache.edgent.topology.Topology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import kafka.api.PartitionOffsetRequestInfo;
+import kafka.cluster.Broker;
+import kafka.common.TopicAndPartition;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerIterator;
+import kafka.consumer.KafkaStream;
+import kafka.javaapi.OffsetRequest;
+import kafka.javaapi.OffsetResponse;
+import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.TopicMetadata;
+import kafka.javaapi.TopicMetadataRequest;
+import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.message.MessageAndMetadata;
+
+/**
+ * Subscribe to a Kafka topic with a worker thread per consumer stream.
+ * <p>
+ * The consumer group's partitions of the topic are distributed over
+ * {@code workers} consumer streams, each consumed by its own thread.
+ * A partition is only consumed by one stream so the messages of a partition
+ * are submitted in order, while messages of different partitions are
+ * submitted concurrently.  The stream's downstream processing must
+ * be thread safe.
+ * <p>
+ * Offsets are not committed automatically.  Every {@code commitMsec}
+ * the offsets of the messages whose submit has returned are committed.
+ * Unless the stream is isolated downstream the submit returns once the
+ * message has been processed.  If processing a message throws an exception
+ * no further offsets are committed and the subscriber stops, so the
+ * uncommitted messages are delivered again when it is restarted,
+ * i.e., the messages are processed at least once.
+ * <p>
+ * The configuration is that of the high level consumer of
+ * {@link org.apache.edgent.connectors.kafka.KafkaConsumer KafkaConsumer},
+ * e.g., {@code zookeeper.connect} and {@code group.id}.
+ * If it includes {@code bootstrap.servers}, the partitions' log end offsets
+ * are requested every {@code lagSec} seconds from their leaders.
+ * The following metrics are registered with the job's
+ * {@code MetricRegistry}, if it has one, with the name
+ * {@code kafkaConsumer.<topic>.<metric>}:
+ * <ul>
+ * <li>{@code received} - a meter of the messages processed</li>
+ * <li>{@code partition<n>.offset} - the offset of the last message
+ *     processed from partition n</li>
+ * <li>{@code partition<n>.lag} - the number of messages in partition n
+ *     after the last one processed</li>
+ * </ul>
+ */
+public class PartitionedKafkaConsumer implements Consumer<Consumer<String>>, AutoCloseable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedKafkaConsumer.class);
+    private static final int SO_TIMEOUT = 10000;
+
+    private final Supplier<Map<String,Object>> configFn;
+    private final Supplier<RuntimeServices> servicesFn;
+    private final String topic;
+    private final int workers;
+    private final long commitMsec;
+    private final long lagSec;
+
+    private transient ConsumerConnector connector;
+    private transient ExecutorService executor;
+    private transient ScheduledFuture<?> committer;
+    private transient ScheduledFuture<?> lagSampler;
+    private transient String bootstrapServers;
+    private transient MetricRegistry registry;
+    private transient Meter receivedMeter;
+    private final Map<Integer,PartitionState> partitions = new ConcurrentHashMap<>();
+
+    // read locked while a message is consumed and processed,
+    // write locked to commit the processed offsets
+    private final ReadWriteLock processing = new ReentrantReadWriteLock();
+    // guarded by processing
+    private boolean uncommitted;
+    private volatile boolean stopped;
+
+    private static class PartitionState {
+        volatile long offset = -1;
+        volatile long logEndOffset = -1;
+
+        long lag() {
+            if (offset < 0 || logEndOffset < 0)
+                return 0;
+            return Math.max(0, logEndOffset - (offset + 1));
+        }
+    }
+
+    /**
+     * Subscribe to a topic.  The message value, decoded as UTF-8,
+     * is the tuple.
+     *
+     * @param t the topology
+     * @param configFn the Kafka consumer configuration
+     * @param topic the topic
+     * @param workers the number of consumer streams and threads
+     * @param commitMsec the interval between offset commits
+     * @param lagSec the interval between log end offset requests
+     * @return the stream of messages
+     */
+    public static TStream<String> subscribe(Topology t,
+            Supplier<Map<String,Object>> configFn, String topic,
+            int workers, long commitMsec, long lagSec) {
+        return t.events(new PartitionedKafkaConsumer(configFn,
+                t.getRuntimeServiceSupplier(), topic, workers, commitMsec, lagSec));
+    }
+
+    PartitionedKafkaConsumer(Supplier<Map<String,Object>> configFn,
+            Supplier<RuntimeServices> servicesFn, String topic,
+            int workers, long commitMsec, long lagSec) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers");
+        if (commitMsec < 1)
+            throw new IllegalArgumentException("commitMsec");
+        if (lagSec < 1)
+            throw new IllegalArgumentException("lagSec");
+        this.configFn = configFn;
+        this.servicesFn = servicesFn;
+        this.topic = topic;
+        this.workers = workers;
+        this.commitMsec = commitMsec;
+        this.lagSec = lagSec;
+    }
+
+    @Override
+    public void accept(Consumer<String> submitter) {
+        RuntimeServices services = servicesFn.get();
+        ScheduledExecutorService scheduler = services.getService(ScheduledExecutorService.class);
+        ThreadFactory threadFactory = services.getService(ThreadFactory.class);
+        if (threadFactory == null)
+            threadFactory = Executors.defaultThreadFactory();
+        registry = services.getService(MetricRegistry.class);
+        if (registry != null)
+            receivedMeter = registry.meter(metricName("received"));
+
+        Properties props = new Properties();
+        for (Map.Entry<String,Object> e : configFn.get().entrySet()) {
+            if (e.getKey().equals("bootstrap.servers"))
+                bootstrapServers = e.getValue().toString();
+            else
+                props.put(e.getKey(), e.getValue().toString());
+        }
+        props.put("auto.commit.enable", "false");
+        connector = kafka.consumer.Consumer.createJavaConsumerConnector(
+                new ConsumerConfig(props));
+        List<KafkaStream<byte[],byte[]>> streams = connector.createMessageStreams(
+                Collections.singletonMap(topic, workers)).get(topic);
+
+        executor = Executors.newFixedThreadPool(workers, threadFactory);
+        for (KafkaStream<byte[],byte[]> stream : streams)
+            executor.submit(() -> consume(stream, submitter));
+        committer = scheduler.scheduleAtFixedRate(this::commit,
+                commitMsec, commitMsec, TimeUnit.MILLISECONDS);
+        if (bootstrapServers != null)
+            lagSampler = scheduler.scheduleAtFixedRate(this::sampleLogEndOffsets,
+                    lagSec, lagSec, TimeUnit.SECONDS);
+    }
+
+    private String metricName(String metric) {
+        return MetricRegistry.name("kafkaConsumer", topic, metric);
+    }
+
+    private String metricName(int partition, String metric) {
+        return MetricRegistry.name("kafkaConsumer", topic, "partition" + partition, metric);
+    }
+
+    private void consume(KafkaStream<byte[],byte[]> stream, Consumer<String> submitter) {
+        ConsumerIterator<byte[],byte[]> it = stream.iterator();
+        try {
+            // hasNext() waits for a message without consuming it,
+            // next() consumes it, i.e., includes it in the next commit
+            while (it.hasNext()) {
+                processing.readLock().lock();
+                try {
+                    if (stopped)
+                        return;
+                    MessageAndMetadata<byte[],byte[]> msg = it.next();
+                    try {
+                        submitter.accept(new String(msg.message(), StandardCharsets.UTF_8));
+                    }
+                    catch (RuntimeException e) {
+                        logger.error("Unable to process partition {} offset {} of {}, stopping",
+                                msg.partition(), msg.offset(), topic, e);
+                        stopped = true;
+                        return;
+                    }
+                    partition(msg.partition()).offset = msg.offset();
+                    uncommitted = true;
+                    if (receivedMeter != null)
+                        receivedMeter.mark();
+                }
+                finally {
+                    processing.readLock().unlock();
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.error("Unable to consume {}", topic, e);
+        }
+        finally {
+            if (stopped)
+                shutdown();
+        }
+    }
+
+    private PartitionState partition(int partition) {
+        return partitions.computeIfAbsent(partition, p -> {
+            PartitionState state = new PartitionState();
+            if (registry != null) {
+                registry.register(metricName(p, "offset"),
+                        (Gauge<Long>) () -> state.offset);
+                registry.register(metricName(p, "lag"),
+                        (Gauge<Long>) () -> state.lag());
+            }
+            return state;
+        });
+    }
+
+    private void commit() {
+        processing.writeLock().lock();
+        try {
+            if (stopped || !uncommitted)
+                return;
+            // all consumed messages have been processed
+            connector.commitOffsets(true);
+            uncommitted = false;
+        }
+        catch (Exception e) {
+            logger.error("Unable to commit offsets of {}", topic, e);
+        }
+        finally {
+            processing.writeLock().unlock();
+        }
+    }
+
+    private void sampleLogEndOffsets() {
+        try {
+            Map<Broker,List<Integer>> leaders = partitionLeaders();
+            for (Map.Entry<Broker,List<Integer>> e : leaders.entrySet())
+                requestLogEndOffsets(e.getKey(), e.getValue());
+        }
+        catch (Exception e) {
+            logger.trace("Unable to get the log end offsets of {}", topic, e);
+        }
+    }
+
+    private Map<Broker,List<Integer>> partitionLeaders() {
+        String[] hostPort = bootstrapServers.split(",")[0].trim().split(":");
+        SimpleConsumer consumer = new SimpleConsumer(hostPort[0],
+                Integer.valueOf(hostPort[1]), SO_TIMEOUT, 64 * 1024, "lag");
+        try {
+            Map<Broker,List<Integer>> leaders = new HashMap<>();
+            List<TopicMetadata> metadata = consumer.send(
+                    new TopicMetadataRequest(Collections.singletonList(topic))).topicsMetadata();
+            for (TopicMetadata tm : metadata) {
+                for (PartitionMetadata pm : tm.partitionsMetadata()) {
+                    // only the partitions consumed by this subscriber
+                    if (pm.leader() != null && partitions.containsKey(pm.partitionId()))
+                        leaders.computeIfAbsent(pm.leader(), b -> new ArrayList<>())
+                                .add(pm.partitionId());
+                }
+            }
+            return leaders;
+        }
+        finally {
+            consumer.close();
+        }
+    }
+
+    private void requestLogEndOffsets(Broker leader, List<Integer> partitionIds) {
+        Map<TopicAndPartition,PartitionOffsetRequestInfo> requestInfo = new HashMap<>();
+        for (int p : partitionIds)
+            requestInfo.put(new TopicAndPartition(topic, p),
+                    new PartitionOffsetRequestInfo(kafka.api.OffsetRequest.LatestTime(), 1));
+        SimpleConsumer consumer = new SimpleConsumer(leader.host(), leader.port(),
+                SO_TIMEOUT, 64 * 1024, "lag");
+        try {
+            OffsetResponse response = consumer.getOffsetsBefore(new OffsetRequest(
+                    requestInfo, kafka.api.OffsetRequest.CurrentVersion(), "lag"));
+            for (int p : partitionIds) {
+                long[] offsets = response.offsets(topic, p);
+                if (response.errorCode(topic, p) == 0 && offsets.length > 0)
+                    partition(p).logEndOffset = offsets[0];
+            }
+        }
+        finally {
+            consumer.close();
+        }
+    }
+
+    private synchronized void shutdown() {
+        if (connector != null) {
+            connector.shutdown();
+            connector = null;
+        }
+    }
+
+    /**
+     * Get the last processed offset of each partition.
+     * @return map of partition to offset
+     */
+    public Map<Integer,Long> getOffsets() {
+        Map<Integer,Long> offsets = new HashMap<>();
+        partitions.forEach((p, state) -> offsets.put(p, state.offset));
+        return offsets;
+    }
+
+    @Override
+    public void close() {
+        if (committer != null)
+            committer.cancel(false);
+        if (lagSampler != null)
+            lagSampler.cancel(false);
+        // commit what's been processed and stop consuming
+        commit();
+        processing.writeLock().lock();
+        try {
+            stopped = true;
+        }
+        finally {
+            processing.writeLock().unlock();
+        }
+        shutdown();
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(SO_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (registry != null)
+            registry.removeMatching((metricName, metric) ->
+                    metricName.startsWith(MetricRegistry.name("kafkaConsumer", topic) + "."));
+    }
+}
@@ -18,8 +18,14 @@ under the License.
 */
 package org.apache.edgent.samples.connectors.kafka;
 
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_ACKS;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_BATCH_SIZE;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_BOOTSTRAP_SERVERS;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_COMPRESSION_TYPE;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_LINGER_MS;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_MAX_IN_FLIGHT;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_PUB_CNT;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_THROUGHPUT;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_TOPIC;
 
 import java.util.HashMap;
@@ -36,8 +42,13 @@ import org.apache.edgent.connectors.kafka.KafkaProducer;
 
 /**
  * A Kafka producer/publisher topology application.
+ * <p>
+ * In throughput mode the messages are generated as fast as possible
+ * and published with {@link AsyncKafkaPublisher}, which reports the
+ * records/sec and ack latency.
  */
 public class PublisherApp {
+    private static final long REPORT_SEC = 5;
     private final TopologyProvider tp;
     private final Options options;
 
@@ -56,13 +67,23 @@ public class PublisherApp {
      */
     public Topology buildAppTopology() {
         Topology t = tp.newTopology("kafkaClientPublisher");
+        boolean throughput = options.get(OPT_THROUGHPUT);
+        Map<String,Object> config = newConfig();
+        
+        if (throughput) {
+            // Generate the tuples as fast as the publisher accepts them
+            int pubcnt = options.get(OPT_PUB_CNT);
+            TStream<String> msgs = t.source(() -> new MsgSupplier(pubcnt, false).iterable());
+            
+            AsyncKafkaPublisher.publish(msgs, () -> config, options.get(OPT_TOPIC), REPORT_SEC);
+            return t;
+        }
         
         // Create a sample stream of tuples to publish
         TStream<String> msgs = t.poll(new MsgSupplier(options.get(OPT_PUB_CNT)),
                                         1L, TimeUnit.SECONDS);
 
         // Create the KafkaProducer broker connector
-        Map<String,Object> config = newConfig();
         KafkaProducer kafka = new KafkaProducer(t, () -> config);
         
         // Publish the stream to the topic.  The String tuple is the message value.
@@ -75,6 +96,13 @@ public class PublisherApp {
         Map<String,Object> config = new HashMap<>();
         // required kafka configuration items
         config.put("bootstrap.servers", options.get(OPT_BOOTSTRAP_SERVERS));
+        // optional producer batching configuration items
+        for (String opt : new String[] { OPT_BATCH_SIZE, OPT_LINGER_MS,
+                OPT_COMPRESSION_TYPE, OPT_ACKS, OPT_MAX_IN_FLIGHT }) {
+            Object value = options.get(opt);
+            if (value != null)
+                config.put(opt, value);
+        }
         return config;
     }
 
@@ -60,6 +60,14 @@ public class SimplePublisherApp {
     private Map<String,Object> createKafkaConfig() {
         Map<String,Object> kafkaConfig = new HashMap<>();
         kafkaConfig.put("bootstrap.servers", props.get("bootstrap.servers"));
+        // optional producer batching configuration
+        for (String key : new String[] { "batch.size", "linger.ms",
+                "compression.type", "acks",
+                "max.in.flight.requests.per.connection" }) {
+            String value = props.getProperty(key);
+            if (value != null)
+                kafkaConfig.put(key, value);
+        }
         return kafkaConfig;
     }
     
@@ -77,10 +77,20 @@ public class SimpleSubscriberApp {
         
         // Create the Kafka Consumer broker connector
         Map<String,Object> kafkaConfig = createKafkaConfig();
-        KafkaConsumer kafka = new KafkaConsumer(t, () -> kafkaConfig);
+        TStream<String> msgs;
+        String workers = props.getProperty("workers");
+        if (workers != null) {
+            // Subscribe with a thread per group of partitions
+            kafkaConfig.put("bootstrap.servers", props.get("bootstrap.servers"));
+            msgs = PartitionedKafkaConsumer.subscribe(t, () -> kafkaConfig, topic,
+                    Integer.valueOf(workers), 1000, 5);
+        }
+        else {
+            KafkaConsumer kafka = new KafkaConsumer(t, () -> kafkaConfig);
         
-        // Subscribe to the topic and create a stream of messages
-        TStream<String> msgs = kafka.subscribe(rec -> rec.value(), topic);
+            // Subscribe to the topic and create a stream of messages
+            msgs = kafka.subscribe(rec -> rec.value(), topic);
+        }
         
         // Process the received msgs - just print them out
         msgs.sink(tuple -> System.out.println(
@@ -18,8 +18,10 @@ under the License.
 */
 package org.apache.edgent.samples.connectors.kafka;
 
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_BOOTSTRAP_SERVERS;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_GROUP_ID;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_TOPIC;
+import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_WORKERS;
 import static org.apache.edgent.samples.connectors.kafka.KafkaClient.OPT_ZOOKEEPER_CONNECT;
 
 import java.util.HashMap;
@@ -35,8 +37,13 @@ import org.apache.edgent.connectors.kafka.KafkaConsumer;
 
 /**
  * A Kafka consumer/subscriber topology application.
+ * <p>
+ * If the {@code workers} option is specified the topic's partitions are
+ * consumed in parallel by {@link PartitionedKafkaConsumer}.
  */
 public class SubscriberApp {
+    private static final long COMMIT_MSEC = 1000;
+    private static final long LAG_SEC = 5;
     private final TopologyProvider tp;
     private final Options options;
     private final String uniq = Util.simpleTS();
@@ -57,16 +64,27 @@ public class SubscriberApp {
     public Topology buildAppTopology() {
         Topology t = tp.newTopology("kafkaClientSubscriber");
 
-        // Create the KafkaConsumer broker connector
         Map<String,Object> config = newConfig(t);
-        KafkaConsumer kafka = new KafkaConsumer(t, () -> config);
-        
         System.out.println("Using Kafka consumer group.id "
                             + config.get(OPT_GROUP_ID));
         
-        // Subscribe to the topic and create a stream of messages
-        TStream<String> msgs = kafka.subscribe(rec -> rec.value(),
-                                                (String)options.get(OPT_TOPIC));
+        TStream<String> msgs;
+        Integer workers = options.get(OPT_WORKERS);
+        if (workers != null) {
+            // Subscribe with a thread per group of partitions, committing
+            // the offsets of the processed messages
+            config.put("bootstrap.servers", options.get(OPT_BOOTSTRAP_SERVERS));
+            msgs = PartitionedKafkaConsumer.subscribe(t, () -> config,
+                    options.get(OPT_TOPIC), workers, COMMIT_MSEC, LAG_SEC);
+        }
+        else {
+            // Create the KafkaConsumer broker connector
+            KafkaConsumer kafka = new KafkaConsumer(t, () -> config);
+        
+            // Subscribe to the topic and create a stream of messages
+            msgs = kafka.subscribe(rec -> rec.value(),
+                                    (String)options.get(OPT_TOPIC));
+        }
         
         // Process the received msgs - just print them out
         msgs.sink(tuple -> System.out.println(
@@ -40,6 +40,14 @@ import org.apache.edgent.samples.connectors.Options;
  * <p>
  * See the MQTT link above for information about setting up a MQTT broker.
  * <p>
+ * The {@code maxInflight} option publishes with {@link PipelinedMqttPublisher},
+ * which keeps up to that many QoS 1 or 2 messages awaiting acknowledgement.
+ * The {@code throughput} option also does so, publishing the messages as fast
+ * as possible and reporting the messages/sec, in-flight depth and ack latency.
+ * The {@code standIn} option runs a {@link StandInMqttBroker} in the process,
+ * which delays its acknowledgements by the specified milliseconds, and
+ * connects to it instead of {@code serverURI}.
+ * <p>
  * This may be executed as:
  * <UL>
  * <LI>
@@ -66,6 +74,8 @@ public class MqttClient {
             + "\n" + "[topic=<value>] [qos=<value>]"
             + "\n" + "[retain]"
             + "\n" + "[pubcnt=<value>]"
+            + "\n" + "[maxInflight=<value>] [throughput]"
+            + "\n" + "[standIn=<ackDelayMillis>]"
             + "\n" + "[cnTimeout=<value>]"
             + "\n" + "[actionTimeoutMillis=<value>]"
             + "\n" + "[idleTimeout=<value>]"
@@ -152,6 +162,9 @@ public class MqttClient {
     static final String OPT_PUB_CNT = "pubcnt";
     static final String OPT_IDLE_TIMEOUT_SEC = "idleTimeout";
     static final String OPT_IDLE_RECONNECT_INTERVAL_SEC = "idleReconnectInterval";
+    static final String OPT_MAX_INFLIGHT = "maxInflight";
+    static final String OPT_THROUGHPUT = "throughput";
+    static final String OPT_STAND_IN = "standIn";
     
     private static void initHandlers(Options opts) {
         // options for which we have a default
@@ -164,6 +177,7 @@ public class MqttClient {
         opts.addHandler(OPT_RETAIN, null, false);
         opts.addHandler(OPT_PUB_CNT, v -> Integer.valueOf(v), -1);
         opts.addHandler(OPT_QOS, v -> Integer.valueOf(v), 0);
+        opts.addHandler(OPT_THROUGHPUT, null, false);
 
         // optional options (no default value)
         opts.addHandler(OPT_CLIENT_ID, v -> v);
@@ -178,6 +192,8 @@ public class MqttClient {
         opts.addHandler(OPT_KEY_STORE_PASSWORD, v -> v);
         opts.addHandler(OPT_IDLE_TIMEOUT_SEC, v -> Integer.valueOf(v));
         opts.addHandler(OPT_IDLE_RECONNECT_INTERVAL_SEC, v -> Integer.valueOf(v));
+        opts.addHandler(OPT_MAX_INFLIGHT, v -> Integer.valueOf(v));
+        opts.addHandler(OPT_STAND_IN, v -> Long.valueOf(v));
     }
     
 }
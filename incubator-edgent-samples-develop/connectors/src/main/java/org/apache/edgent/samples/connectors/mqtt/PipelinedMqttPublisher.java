@@ -0,0 +1,434 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.edgent.connectors.mqtt.MqttConfig;
+import org.apache.edgent.function.Supplier;
+import org.apache.edgent.oplet.OpletContext;
+import org.apache.edgent.oplet.core.Sink;
+import org.apache.edgent.topology.TSink;
+import org.apache.edgent.topology.TStream;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * A sink that publishes a stream's tuples to a MQTT topic keeping up to
+ * {@code maxInflight} unacknowledged messages in flight.
+ * <p>
+ * {@link org.apache.edgent.connectors.mqtt.MqttStreams#publish(TStream, String, int, boolean)
+ * MqttStreams.publish()} waits for each QoS 1 or 2 message to be
+ * acknowledged, so its throughput is bounded by a broker round trip
+ * per message.  This sink publishes with an asynchronous client
+ * and tracks each message's delivery token with a listener.
+ * A tuple is only published once fewer than {@code maxInflight} messages
+ * are unacknowledged, otherwise the stream waits.
+ * <p>
+ * The client reconnects automatically.  Messages whose delivery fails,
+ * e.g., because the connection was lost, are kept in flight and
+ * published again once the client has reconnected.  A message whose
+ * delivery fails while the client is connected is published again after
+ * a delay and is dropped once it has failed {@value #MAX_RETRIES} more
+ * times.  The session is always clean, i.e., the broker's session
+ * state isn't used to redeliver.
+ * <p>
+ * Every {@code reportSec} seconds the published and acknowledged
+ * messages/sec, the in-flight depth, the recent ack latencies and the
+ * number of messages published again are printed.  The following metrics
+ * are registered with the job's {@code MetricRegistry}, if it has one,
+ * with the name {@code mqttPublisher.<topic>.<metric>}:
+ * <ul>
+ * <li>{@code published} - a meter of the messages published</li>
+ * <li>{@code inflight} - a gauge of the unacknowledged messages</li>
+ * <li>{@code ackLatency} - a timer of the messages' ack latency</li>
+ * <li>{@code resent} - a counter of the messages published again</li>
+ * <li>{@code dropped} - a counter of the messages dropped after
+ *     {@value #MAX_RETRIES} retries</li>
+ * </ul>
+ */
+public class PipelinedMqttPublisher extends Sink<String> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedMqttPublisher.class);
+    private static final long RECONNECT_MSEC = 1000;
+
+    /** The number of times a delivery failing while connected is retried. */
+    public static final int MAX_RETRIES = 3;
+
+    private final Supplier<MqttConfig> configFn;
+    private final String topic;
+    private final int qos;
+    private final boolean retain;
+    private final int maxInflight;
+    private final long reportSec;
+
+    private transient MqttAsyncClient client;
+    private transient MqttConnectOptions connectOptions;
+    private transient long closeTimeoutMsec;
+    private transient Semaphore window;
+    private transient IMqttActionListener deliveryListener;
+    private transient ScheduledExecutorService executor;
+    private transient ScheduledFuture<?> reporter;
+    private transient MetricRegistry registry;
+    private transient boolean ownRegistry;
+    private transient Meter publishedMeter;
+    private transient Timer ackTimer;
+    private transient Counter resentCounter;
+    private transient Counter droppedCounter;
+    private transient volatile boolean closing;
+
+    // guarded by this
+    private transient ArrayDeque<Message> resend;
+    private transient long lastReportTime;
+    private transient long lastPublished;
+    private transient long lastAcked;
+
+    private static class Message {
+        final byte[] payload;
+        long sendTime;
+        // failures while connected
+        int retries;
+
+        Message(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Publish a stream's tuples to a topic.
+     * The String tuple is the message payload.
+     *
+     * @param stream the stream
+     * @param configFn the MQTT connection configuration
+     * @param topic the topic
+     * @param qos the QoS of the messages
+     * @param retain retain the messages
+     * @param maxInflight the maximum number of unacknowledged messages
+     * @param reportSec the interval between throughput reports, 0 for none
+     * @return the sink
+     */
+    public static TSink<String> publish(TStream<String> stream,
+            Supplier<MqttConfig> configFn, String topic, int qos,
+            boolean retain, int maxInflight, long reportSec) {
+        return stream.sink(new PipelinedMqttPublisher(configFn, topic, qos,
+                retain, maxInflight, reportSec));
+    }
+
+    /**
+     * Create a publisher.
+     * @param configFn the MQTT connection configuration
+     * @param topic the topic
+     * @param qos the QoS of the messages
+     * @param retain retain the messages
+     * @param maxInflight the maximum number of unacknowledged messages
+     * @param reportSec the interval between throughput reports, 0 for none
+     */
+    public PipelinedMqttPublisher(Supplier<MqttConfig> configFn, String topic,
+            int qos, boolean retain, int maxInflight, long reportSec) {
+        if (qos < 0 || qos > 2)
+            throw new IllegalArgumentException("qos");
+        if (maxInflight < 1)
+            throw new IllegalArgumentException("maxInflight");
+        if (reportSec < 0)
+            throw new IllegalArgumentException("reportSec");
+        this.configFn = configFn;
+        this.topic = topic;
+        this.qos = qos;
+        this.retain = retain;
+        this.maxInflight = maxInflight;
+        this.reportSec = reportSec;
+        setSinker(this::publish);
+    }
+
+    @Override
+    public void initialize(OpletContext<String, Void> context) {
+        super.initialize(context);
+        executor = context.getService(ScheduledExecutorService.class);
+        registry = context.getService(MetricRegistry.class);
+        if (registry == null) {
+            registry = new MetricRegistry();
+            ownRegistry = true;
+        }
+        window = new Semaphore(maxInflight);
+        resend = new ArrayDeque<>();
+        publishedMeter = registry.meter(metricName("published"));
+        ackTimer = registry.timer(metricName("ackLatency"));
+        resentCounter = registry.counter(metricName("resent"));
+        droppedCounter = registry.counter(metricName("dropped"));
+        registry.register(metricName("inflight"),
+                (Gauge<Integer>) () -> maxInflight - window.availablePermits());
+
+        deliveryListener = new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken token) {
+                Message msg = (Message) token.getUserContext();
+                ackTimer.update(System.nanoTime() - msg.sendTime, TimeUnit.NANOSECONDS);
+                window.release();
+            }
+
+            @Override
+            public void onFailure(IMqttToken token, Throwable e) {
+                logger.trace("delivery to {} failed", topic, e);
+                failed((Message) token.getUserContext());
+            }
+        };
+
+        try {
+            MqttConfig config = configFn.get();
+            MqttClientPersistence persistence = config.getPersistence();
+            if (persistence == null)
+                persistence = new MemoryPersistence();
+            String clientId = config.getClientId();
+            if (clientId == null)
+                clientId = MqttAsyncClient.generateClientId();
+            client = new MqttAsyncClient(config.getServerURLs()[0], clientId, persistence);
+            connectOptions = (MqttConnectOptions) config.options();
+            connectOptions.setMaxInflight(maxInflight);
+            connectOptions.setAutomaticReconnect(true);
+            // failed messages are published again by this sink rather
+            // than redelivered from the client's session state
+            connectOptions.setCleanSession(true);
+            closeTimeoutMsec = config.getActionTimeToWaitMillis() > 0
+                    ? config.getActionTimeToWaitMillis() : 10000;
+        }
+        catch (MqttException e) {
+            throw new RuntimeException(e);
+        }
+        client.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                logger.info("connected to {}", serverURI);
+                resendFailed();
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                logger.info("connection lost: {}", String.valueOf(cause));
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+    }
+
+    private String metricName(String metric) {
+        return MetricRegistry.name("mqttPublisher", topic, metric);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        synchronized (this) {
+            lastReportTime = System.nanoTime();
+        }
+        connect();
+        if (reportSec > 0)
+            reporter = executor.scheduleAtFixedRate(this::report,
+                    reportSec, reportSec, TimeUnit.SECONDS);
+    }
+
+    private void connect() {
+        if (closing)
+            return;
+        try {
+            client.connect(connectOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    // reconnects are done by the client, see connectComplete
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    logger.error("Unable to connect to {}", client.getServerURI(), e);
+                    executor.schedule(() -> connect(), RECONNECT_MSEC, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+        catch (MqttException e) {
+            logger.error("Unable to connect to {}", client.getServerURI(), e);
+            executor.schedule(() -> connect(), RECONNECT_MSEC, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish(String tuple) {
+        try {
+            window.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        publishedMeter.mark();
+        send(new Message(tuple.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void send(Message msg) {
+        msg.sendTime = System.nanoTime();
+        try {
+            client.publish(topic, msg.payload, qos, retain, msg, deliveryListener);
+        }
+        catch (MqttException e) {
+            logger.trace("publish to {} failed", topic, e);
+            failed(msg);
+        }
+    }
+
+    /**
+     * The message remains in flight until it's published again,
+     * or is dropped once its retries are exhausted.
+     */
+    private void failed(Message msg) {
+        boolean connected;
+        synchronized (this) {
+            connected = client.isConnected();
+            if (!connected || ++msg.retries <= MAX_RETRIES)
+                resend.add(msg);
+        }
+        if (!connected)
+            return;
+        if (msg.retries > MAX_RETRIES) {
+            droppedCounter.inc();
+            logger.error("Dropping message to {} after {} retries", topic, MAX_RETRIES);
+            window.release();
+            return;
+        }
+        // a failure while connected isn't resolved by reconnecting
+        executor.schedule(() -> resendFailed(), RECONNECT_MSEC, TimeUnit.MILLISECONDS);
+    }
+
+    private void resendFailed() {
+        Message msg;
+        for (;;) {
+            synchronized (this) {
+                if (closing || !client.isConnected() || resend.isEmpty())
+                    return;
+                msg = resend.remove();
+            }
+            resentCounter.inc();
+            send(msg);
+        }
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double sec = (now - lastReportTime) / 1e9;
+        long published = publishedMeter.getCount();
+        long acked = ackTimer.getCount();
+        Snapshot latency = ackTimer.getSnapshot();
+        System.out.println(String.format(
+                "published %.0f/sec acked %.0f/sec in-flight %d"
+                + " ack latency msec p50=%.2f p99=%.2f max=%.2f"
+                + " resent %d dropped %d",
+                (published - lastPublished) / sec, (acked - lastAcked) / sec,
+                getInflight(),
+                latency.getMedian() / 1e6, latency.get99thPercentile() / 1e6,
+                latency.getMax() / 1e6, resentCounter.getCount(),
+                droppedCounter.getCount()));
+        lastReportTime = now;
+        lastPublished = published;
+        lastAcked = acked;
+    }
+
+    /**
+     * Get the number of unacknowledged messages.
+     * @return the count
+     */
+    public int getInflight() {
+        return maxInflight - window.availablePermits();
+    }
+
+    /**
+     * Get the number of messages acknowledged.
+     * @return the count
+     */
+    public long getAckedCount() {
+        return ackTimer.getCount();
+    }
+
+    /**
+     * Get the number of messages dropped after their retries were exhausted.
+     * @return the count
+     */
+    public long getDroppedCount() {
+        return droppedCounter.getCount();
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null)
+            reporter.cancel(false);
+        if (client != null) {
+            // wait for the in-flight messages to be acknowledged
+            try {
+                if (window.tryAcquire(maxInflight, closeTimeoutMsec, TimeUnit.MILLISECONDS))
+                    window.release(maxInflight);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closing = true;
+            if (reportSec > 0)
+                report();
+            try {
+                if (client.isConnected())
+                    client.disconnect().waitForCompletion(closeTimeoutMsec);
+            }
+            catch (MqttException e) {
+                logger.trace("disconnect failed", e);
+            }
+            try {
+                client.close();
+            }
+            catch (MqttException e) {
+                logger.trace("close failed", e);
+            }
+        }
+        if (!ownRegistry)
+            registry.removeMatching((metricName, metric) ->
+                    metricName.startsWith(MetricRegistry.name("mqttPublisher", topic) + "."));
+    }
+}
@@ -18,9 +18,11 @@ under the License.
 */
 package org.apache.edgent.samples.connectors.mqtt;
 
+import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_MAX_INFLIGHT;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_PUB_CNT;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_QOS;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_RETAIN;
+import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_THROUGHPUT;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_TOPIC;
 
 import java.util.concurrent.TimeUnit;
@@ -32,11 +34,17 @@ import org.apache.edgent.samples.connectors.Options;
 import org.apache.edgent.topology.TStream;
 import org.apache.edgent.topology.Topology;
 import org.apache.edgent.topology.TopologyProvider;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 
 /**
  * A MQTT publisher topology application.
+ * <p>
+ * With the {@code maxInflight} or {@code throughput} options the messages
+ * are published with {@link PipelinedMqttPublisher}.  In throughput mode
+ * the messages are generated as fast as possible.
  */
 public class PublisherApp {
+    private static final long REPORT_SEC = 5;
     private final TopologyProvider tp;
     private final Options options;
 
@@ -55,13 +63,32 @@ public class PublisherApp {
      */
     public Topology buildAppTopology() {
         Topology t = tp.newTopology("mqttClientPublisher");
+        boolean throughput = options.get(OPT_THROUGHPUT);
         
         // Create a sample stream of tuples to publish
-        TStream<String> msgs = t.poll(new MsgSupplier(options.get(OPT_PUB_CNT)),
-                                        1L, TimeUnit.SECONDS);
+        TStream<String> msgs;
+        if (throughput) {
+            // as fast as the publisher accepts them
+            int pubcnt = options.get(OPT_PUB_CNT);
+            msgs = t.source(() -> new MsgSupplier(pubcnt, false).iterable());
+        }
+        else {
+            msgs = t.poll(new MsgSupplier(options.get(OPT_PUB_CNT)),
+                            1L, TimeUnit.SECONDS);
+        }
 
-        // Create the MQTT broker connector
         MqttConfig config= Runner.newConfig(options);
+        if (throughput || options.get(OPT_MAX_INFLIGHT) != null) {
+            // Publish with up to maxInflight unacknowledged messages
+            int maxInflight = options.get(OPT_MAX_INFLIGHT,
+                    MqttConnectOptions.MAX_INFLIGHT_DEFAULT);
+            PipelinedMqttPublisher.publish(msgs, () -> config, options.get(OPT_TOPIC),
+                    options.get(OPT_QOS), options.get(OPT_RETAIN), maxInflight,
+                    throughput ? REPORT_SEC : 0);
+            return t;
+        }
+
+        // Create the MQTT broker connector
         MqttStreams mqtt = new MqttStreams(t, () -> config);
         
         // Publish the stream to the topic.  The String tuple is the message value.
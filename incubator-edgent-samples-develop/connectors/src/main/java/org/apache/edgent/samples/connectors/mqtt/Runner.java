@@ -29,13 +29,17 @@ import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_KEY_STORE
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_PASSWORD;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_PUB;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_SERVER_URI;
+import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_STAND_IN;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_TOPIC;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_TRUST_STORE;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_TRUST_STORE_PASSWORD;
 import static org.apache.edgent.samples.connectors.mqtt.MqttClient.OPT_USER_ID;
 
+import java.io.IOException;
+
 import org.apache.edgent.connectors.mqtt.MqttConfig;
 import org.apache.edgent.console.server.HttpServer;
+import org.apache.edgent.execution.Job;
 import org.apache.edgent.providers.development.DevelopmentProvider;
 import org.apache.edgent.samples.connectors.Options;
 import org.apache.edgent.topology.Topology;
@@ -53,6 +57,25 @@ public class Runner {
     public static void run(Options options) throws Exception {
         boolean isPub = options.get(OPT_PUB); 
 
+        StandInMqttBroker broker = null;
+        if (options.get(OPT_STAND_IN) != null) {
+            // Run a stand-in broker and connect to it
+            broker = new StandInMqttBroker(0, options.get(OPT_STAND_IN));
+            options.put(OPT_SERVER_URI, broker.getServerURI());
+        }
+        try {
+            run(options, isPub, broker);
+        }
+        catch (Exception e) {
+            if (broker != null)
+                broker.close();
+            throw e;
+        }
+    }
+
+    private static void run(Options options, boolean isPub,
+            StandInMqttBroker broker) throws Exception {
+
         // Get a topology runtime provider
         DevelopmentProvider tp = new DevelopmentProvider();
 
@@ -75,7 +98,33 @@ public class Runner {
                 + " to topic "+options.get(OPT_TOPIC));
         System.out.println("Console URL for the job: "
                 + tp.getServices().getService(HttpServer.class).getConsoleUrl());
-        tp.submit(top);
+        Job job = tp.submit(top).get();
+        if (broker != null)
+            closeWhenComplete(job, broker);
+    }
+
+    /**
+     * Close the stand-in broker once the job ends.
+     */
+    private static void closeWhenComplete(Job job, StandInMqttBroker broker) {
+        Thread closer = new Thread(() -> {
+            try {
+                job.complete();
+            }
+            catch (Exception e) {
+                // the job failed or was interrupted, it's ended either way
+            }
+            finally {
+                try {
+                    broker.close();
+                }
+                catch (IOException e) {
+                    System.err.println("stand-in broker close failed: " + e);
+                }
+            }
+        }, "standInMqttBroker-close");
+        closer.setDaemon(true);
+        closer.start();
     }
 
     /**
@@ -0,0 +1,249 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+package org.apache.edgent.samples.connectors.mqtt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process stand-in for a MQTT broker, for measuring a publisher.
+ * <p>
+ * The stand-in implements just enough of MQTT 3.1.1 for a client to
+ * connect, publish and subscribe.  Published messages are acknowledged,
+ * after {@code ackDelayMsec} to simulate the round trip to a remote broker,
+ * and then discarded, i.e., they are not delivered to subscribers.
+ */
+public class StandInMqttBroker implements AutoCloseable {
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    private static final int PUBREL = 6;
+    private static final int SUBSCRIBE = 8;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int PINGREQ = 12;
+    private static final int DISCONNECT = 14;
+
+    private final ServerSocket serverSocket;
+    private final long ackDelayMsec;
+    private final ScheduledExecutorService ackExecutor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Run the stand-in until the process is killed.
+     * @param args [port [ackDelayMsec]]
+     * @throws Exception on failure
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.valueOf(args[0]) : 1883;
+        long ackDelayMsec = args.length > 1 ? Long.valueOf(args[1]) : 0;
+        StandInMqttBroker broker = new StandInMqttBroker(port, ackDelayMsec);
+        System.out.println("Stand-in MQTT broker at " + broker.getServerURI()
+                + " ackDelayMsec=" + ackDelayMsec);
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Start a stand-in broker listening on the loopback address.
+     * @param port the port, 0 for any free port
+     * @param ackDelayMsec delay acknowledgements by this long
+     * @throws IOException if the port can't be opened
+     */
+    public StandInMqttBroker(int port, long ackDelayMsec) throws IOException {
+        this.ackDelayMsec = ackDelayMsec;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        ackExecutor = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "ack"));
+        daemon(this::accept, "accept").start();
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, "standInMqttBroker-" + name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Get the URI for clients to connect to.
+     * @return the URI
+     */
+    public String getServerURI() {
+        return "tcp://localhost:" + serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                if (closed) {
+                    // close() may have missed it
+                    closeQuietly(socket);
+                    return;
+                }
+                daemon(() -> serve(socket), "connection").start();
+            }
+            catch (IOException e) {
+                if (!closed)
+                    System.err.println("stand-in broker accept failed: " + e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            for (;;) {
+                int header = in.read();
+                if (header < 0)
+                    return;
+                byte[] body = new byte[remainingLength(in)];
+                in.readFully(body);
+                switch (header >>> 4) {
+                case CONNECT:
+                    // session not present, connection accepted
+                    send(out, 0x20, 0, 0);
+                    break;
+                case PUBLISH:
+                    int qos = (header >>> 1) & 0x3;
+                    int idOffset = 2 + u16(body, 0);
+                    if (qos == 1)
+                        ack(out, 0x40, body[idOffset], body[idOffset + 1]);
+                    else if (qos == 2)
+                        ack(out, 0x50, body[idOffset], body[idOffset + 1]);
+                    break;
+                case PUBREL:
+                    ack(out, 0x70, body[0], body[1]);
+                    break;
+                case SUBSCRIBE:
+                    send(out, 0x90, suback(body));
+                    break;
+                case UNSUBSCRIBE:
+                    send(out, 0xB0, body[0], body[1]);
+                    break;
+                case PINGREQ:
+                    send(out, 0xD0);
+                    break;
+                case DISCONNECT:
+                    return;
+                default:
+                    break;
+                }
+            }
+        }
+        catch (EOFException e) {
+            // the client went away
+        }
+        catch (IOException e) {
+            if (!closed)
+                System.err.println("stand-in broker connection failed: " + e);
+        }
+        finally {
+            connections.remove(socket);
+        }
+    }
+
+    private static int remainingLength(DataInputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            length += (b & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((b & 0x80) != 0);
+        return length;
+    }
+
+    private static int u16(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static int[] suback(byte[] body) {
+        // packet id, then the granted QoS of each topic filter
+        int count = 0;
+        for (int i = 2; i < body.length; i += 2 + u16(body, i) + 1)
+            count++;
+        int[] payload = new int[2 + count];
+        payload[0] = body[0];
+        payload[1] = body[1];
+        int n = 2;
+        for (int i = 2; i < body.length; i += 2 + u16(body, i) + 1)
+            payload[n++] = body[i + 2 + u16(body, i)] & 0x3;
+        return payload;
+    }
+
+    private void ack(OutputStream out, int header, int idMsb, int idLsb) throws IOException {
+        if (ackDelayMsec <= 0) {
+            send(out, header, idMsb, idLsb);
+            return;
+        }
+        ackExecutor.schedule(() -> {
+            try {
+                send(out, header, idMsb, idLsb);
+            }
+            catch (IOException e) {
+                // the connection is closed
+            }
+        }, ackDelayMsec, TimeUnit.MILLISECONDS);
+    }
+
+    private static void send(OutputStream out, int header, int... body) throws IOException {
+        synchronized (out) {
+            out.write(header);
+            out.write(body.length);
+            for (int b : body)
+                out.write(b);
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        ackExecutor.shutdownNow();
+        serverSocket.close();
+        // ends the connections' threads
+        for (Socket socket : connections)
+            closeQuietly(socket);
+        connections.clear();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            // already closed
+        }
+    }
+}